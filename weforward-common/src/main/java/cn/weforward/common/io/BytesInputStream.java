@@ -15,13 +15,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
+import cn.weforward.common.util.Bytes;
+
 /**
  * 扩展ByteArrayInputStream，实现InputStreamNio接口
  * 
  * @author zhangpengji
  *
  */
-public class BytesInputStream extends ByteArrayInputStream implements InputStreamNio {
+public class BytesInputStream extends ByteArrayInputStream
+		implements InputStreamNio, InputStreamBuffers {
 
 	public BytesInputStream(byte[] buf) {
 		super(buf);
@@ -46,6 +49,23 @@ public class BytesInputStream extends ByteArrayInputStream implements InputStrea
 		return new BytesInputStream(buf, pos, count - pos);
 	}
 
+	@Override
+	public ByteBuffer[] nioBuffers() {
+		return new ByteBuffer[] { ByteBuffer.wrap(buf, pos, count - pos).asReadOnlyBuffer() };
+	}
+
+	/**
+	 * 未读的内容（与流共享缓冲区，不拷贝）
+	 * 
+	 * @return 未读的内容
+	 */
+	synchronized public Bytes getBytes() {
+		if (pos >= count) {
+			return Bytes.empty();
+		}
+		return new Bytes(buf, pos, count - pos);
+	}
+
 	/**
 	 * 无内容流
 	 * 
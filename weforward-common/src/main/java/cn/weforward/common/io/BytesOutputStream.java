@@ -55,6 +55,46 @@ public class BytesOutputStream extends ByteArrayOutputStream implements OutputSt
 		in.close();
 	}
 
+	/**
+	 * 读取输入流的全部内容后关闭流。
+	 * <p>
+	 * 若输入流是{@linkplain BytesInputStream}直接返回其（共享的）内容；若是{@linkplain InputStreamBuffers}且内容已完整，
+	 * 则按总长度一次拷贝出其缓冲区的内容；否则按{@linkplain #BytesOutputStream(InputStream)}读取
+	 * 
+	 * @param in 内容输入流
+	 * @return 内容（可能与输入流共享，只读）
+	 * @throws IOException IO异常时抛出
+	 */
+	static public Bytes toBytes(InputStream in) throws IOException {
+		if (in instanceof BytesInputStream) {
+			Bytes bytes = ((BytesInputStream) in).getBytes();
+			in.close();
+			return bytes;
+		}
+		if (in instanceof InputStreamBuffers) {
+			ByteBuffer[] buffers = ((InputStreamBuffers) in).nioBuffers();
+			if (null != buffers) {
+				int size = 0;
+				for (ByteBuffer b : buffers) {
+					size += b.remaining();
+				}
+				byte[] data = new byte[size];
+				int offset = 0;
+				for (ByteBuffer b : buffers) {
+					int len = b.remaining();
+					b.get(data, offset, len);
+					offset += len;
+				}
+				in.close();
+				return (0 == size) ? Bytes.empty() : new Bytes(data);
+			}
+		}
+		BytesOutputStream bos = new BytesOutputStream(in);
+		Bytes bytes = bos.getBytes();
+		bos.close();
+		return bytes;
+	}
+
 	/**
 	 * 分离缓冲区内部数据
 	 * 
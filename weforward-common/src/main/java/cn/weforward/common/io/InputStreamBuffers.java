@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 内容已在内存缓冲区中的输入流，可直接访问其缓冲区（只读视图，不拷贝）
+ * <p>
+ * 视图只在流关闭前有效，流关闭后缓冲区可能已被回收
+ * 
+ * @author liangyi
+ *
+ */
+public interface InputStreamBuffers {
+	/**
+	 * 未读内容的只读视图，不改变流的读取位置
+	 * 
+	 * @return 缓冲区视图，内容还未完整时返回null
+	 * @throws IOException IO异常时抛出
+	 */
+	ByteBuffer[] nioBuffers() throws IOException;
+}
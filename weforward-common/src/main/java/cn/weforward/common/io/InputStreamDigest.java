@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.common.io;
+
+/**
+ * 接收内容时已同时计算摘要的输入流，使用者读取内容后不需要再扫描一遍内容计算摘要
+ * 
+ * @author liangyi
+ *
+ */
+public interface InputStreamDigest {
+	/**
+	 * 接收内容时计算的摘要
+	 * 
+	 * @param algorithm 摘要算法，如：SHA-256
+	 * @param length    使用者已读取的内容长度，与计算摘要的内容长度不一致时视为无效
+	 * @return 摘要，没有（有效的）摘要时返回null
+	 */
+	byte[] getDigest(String algorithm, long length);
+}
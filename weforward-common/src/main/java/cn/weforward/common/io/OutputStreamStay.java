@@ -57,6 +57,16 @@ public interface OutputStreamStay extends Flushable {
 			m_Out = out;
 		}
 
+		/**
+		 * 转为封装另一个输出流，沿用已分配的缓冲区
+		 * 
+		 * @param out 输出流
+		 */
+		public void reset(OutputStream out) {
+			m_Out = out;
+			m_Count = 0;
+		}
+
 		private void ensureCapacity(int minCapacity) {
 			int oldCapacity = 0;
 			if (null != m_Buffer) {
@@ -96,7 +106,7 @@ public interface OutputStreamStay extends Flushable {
 		@Override
 		public void write(int b) throws IOException {
 			if (isFlushed()) {
-				write(b);
+				m_Out.write(b);
 				return;
 			}
 			ensureCapacity(m_Count + 1);
@@ -107,7 +117,7 @@ public interface OutputStreamStay extends Flushable {
 		@Override
 		public void write(byte[] b, int off, int len) throws IOException {
 			if (isFlushed()) {
-				write(b, off, len);
+				m_Out.write(b, off, len);
 				return;
 			}
 			if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) - b.length > 0)) {
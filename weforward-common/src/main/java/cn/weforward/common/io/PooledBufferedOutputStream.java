@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.common.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import cn.weforward.common.util.Bytes;
+
+/**
+ * 使用池化字节数组作缓冲的输出流，减少逐字节写入下层流的调用。
+ * <p>
+ * 输出完成后须调用finish（不会flush/close下层流）把缓冲区归还到池，非线程安全
+ * 
+ * @author liangyi
+ *
+ */
+public class PooledBufferedOutputStream extends OutputStream {
+	protected OutputStream m_Out;
+	protected Bytes.Pool m_Pool;
+	protected byte[] m_Buffer;
+	protected int m_Count;
+
+	public PooledBufferedOutputStream(OutputStream out) {
+		this(out, Bytes.Pool._8k);
+	}
+
+	public PooledBufferedOutputStream(OutputStream out, Bytes.Pool pool) {
+		m_Out = out;
+		m_Pool = pool;
+	}
+
+	private byte[] openBuffer() {
+		byte[] buf = m_Buffer;
+		if (null == buf) {
+			buf = m_Pool.poll();
+			m_Buffer = buf;
+			m_Count = 0;
+		}
+		return buf;
+	}
+
+	protected void flushBuffer() throws IOException {
+		if (m_Count > 0) {
+			m_Out.write(m_Buffer, 0, m_Count);
+			m_Count = 0;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		byte[] buf = openBuffer();
+		if (m_Count >= buf.length) {
+			flushBuffer();
+		}
+		buf[m_Count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		byte[] buf = openBuffer();
+		if (len >= buf.length) {
+			// 比缓冲区还大，直接写入
+			flushBuffer();
+			m_Out.write(b, off, len);
+			return;
+		}
+		if (len > buf.length - m_Count) {
+			flushBuffer();
+		}
+		System.arraycopy(b, off, buf, m_Count, len);
+		m_Count += len;
+	}
+
+	/**
+	 * 写出缓冲区的内容并归还缓冲区
+	 * 
+	 * @throws IOException IO异常时抛出
+	 */
+	public void finish() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * （丢弃缓冲区的内容）归还缓冲区
+	 */
+	public void release() {
+		byte[] buf = m_Buffer;
+		if (null != buf) {
+			m_Buffer = null;
+			m_Count = 0;
+			m_Pool.offer(buf);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		m_Out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			m_Out.close();
+		}
+	}
+}
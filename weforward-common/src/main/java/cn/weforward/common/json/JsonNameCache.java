@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.common.json;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+import cn.weforward.common.util.NumberUtil;
+
+/**
+ * 常用属性名的输出缓存，缓存已转义并编码为UTF-8的<code>"name":</code>字节，输出时直接写入而不再逐字符转义及编码。
+ * <p>
+ * 登记的名称同时合并到{@linkplain JsonUtil#_NamePool}中，解析与输出共用同一个名称实例
+ * 
+ * @author liangyi
+ *
+ */
+public class JsonNameCache {
+	/** 缓存的名称数上限 */
+	public static final int MAX_SIZE = NumberUtil.toInt(System.getProperty("JsonNameCache.MAX_SIZE"), 4096);
+	/** 名称最大长度，超出的不缓存 */
+	static final int MAX_LENGTH = 100;
+
+	static final ConcurrentHashMap<String, byte[]> _Names = new ConcurrentHashMap<>();
+
+	/**
+	 * 登记属性名
+	 * 
+	 * @param name 属性名
+	 * @return 合并到名称池的实例
+	 */
+	public static String register(String name) {
+		if (null == name || name.length() > MAX_LENGTH) {
+			return name;
+		}
+		name = JsonUtil._NamePool.intern(name);
+		if (_Names.size() < MAX_SIZE && !_Names.containsKey(name)) {
+			_Names.putIfAbsent(name, encode(name));
+		}
+		return name;
+	}
+
+	/**
+	 * 登记多个属性名
+	 * 
+	 * @param names 属性名
+	 */
+	public static void register(String... names) {
+		for (String name : names) {
+			register(name);
+		}
+	}
+
+	/**
+	 * 取得已编码的<code>"name":</code>
+	 * 
+	 * @param name 属性名
+	 * @return UTF-8字节，未登记则返回null
+	 */
+	public static byte[] get(String name) {
+		return null == name ? null : _Names.get(name);
+	}
+
+	public static int size() {
+		return _Names.size();
+	}
+
+	private static byte[] encode(String name) {
+		StringBuilder builder = new StringBuilder(name.length() + 4);
+		builder.append('"');
+		try {
+			JsonUtil.escape(name, builder);
+		} catch (IOException e) {
+			// StringBuilder不会有IO异常
+			throw new IllegalStateException(e);
+		}
+		builder.append('"').append(':');
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
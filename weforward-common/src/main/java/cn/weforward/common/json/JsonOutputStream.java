@@ -57,6 +57,34 @@ public class JsonOutputStream implements JsonOutput {
 		return this;
 	}
 
+	/**
+	 * 直接写入已是UTF-8编码的JSON片段（如原样转发的报文）
+	 *
+	 * @param data   UTF-8字节
+	 * @param offset 开始位置
+	 * @param length 长度
+	 */
+	public void write(byte[] data, int offset, int length) throws IOException {
+		m_Output.write(data, offset, length);
+	}
+
+	/**
+	 * 输出属性名（<code>"name":</code>），已登记在{@linkplain JsonNameCache}的直接写入缓存的字节
+	 * 
+	 * @param name 属性名
+	 */
+	public void writeName(String name) throws IOException {
+		byte[] encoded = JsonNameCache.get(name);
+		if (null != encoded) {
+			m_Output.write(encoded, 0, encoded.length);
+			return;
+		}
+		m_Encoder.encode('"');
+		JsonUtil.escape(name, this);
+		m_Encoder.encode('"');
+		m_Encoder.encode(':');
+	}
+
 	@Override
 	public void close() throws IOException {
 		m_Output.close();
@@ -0,0 +1,519 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.common.json;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+
+import cn.weforward.common.execption.InvalidFormatException;
+
+/**
+ * 拉取方式（StAX风格）的JSON解析器，按需逐个读取记号（token），不构造节点树。
+ * <p>
+ * 字串及数值在读取时才解码，不读取则直接跳过，适合只需要大文档中部分属性或逐项处理超大数组的场景，内存占用与文档大小无关。
+ * 
+ * <pre>
+ * JsonReader reader = new JsonReader(new StringInput(json));
+ * reader.next(); // BEGIN_OBJECT
+ * while (JsonReader.Token.NAME == reader.next()) {
+ * 	if ("id".equals(reader.getName())) {
+ * 		reader.next();
+ * 		id = reader.getString();
+ * 	} else {
+ * 		reader.skipValue();
+ * 	}
+ * }
+ * </pre>
+ * 
+ * @author liangyi
+ *
+ */
+public class JsonReader implements Closeable {
+	/**
+	 * 记号类型
+	 */
+	public enum Token {
+		/** 对象开始“{” */
+		BEGIN_OBJECT,
+		/** 对象结束“}” */
+		END_OBJECT,
+		/** 数组开始“[” */
+		BEGIN_ARRAY,
+		/** 数组结束“]” */
+		END_ARRAY,
+		/** 对象的属性名 */
+		NAME,
+		/** 字串值 */
+		STRING,
+		/** 数值 */
+		NUMBER,
+		/** 布尔值 */
+		BOOLEAN,
+		/** null值 */
+		NULL,
+		/** 文档结束 */
+		END_DOCUMENT
+	}
+
+	static final char INVALID_CHAR = 0xffff;
+
+	/** 层状态 - 对象刚开始 */
+	static final byte SCOPE_OBJECT_BEGIN = 1;
+	/** 层状态 - 已读取属性名，等待值 */
+	static final byte SCOPE_OBJECT_NAME = 2;
+	/** 层状态 - 已读取属性值 */
+	static final byte SCOPE_OBJECT_VALUE = 3;
+	/** 层状态 - 数组刚开始 */
+	static final byte SCOPE_ARRAY_BEGIN = 4;
+	/** 层状态 - 已读取数组项 */
+	static final byte SCOPE_ARRAY_VALUE = 5;
+
+	protected JsonInput m_Input;
+	/** 由流读取过头的残余字符（若值不为INVALID_CHAR时） */
+	protected char m_Remain;
+	/** 各层的状态 */
+	protected byte[] m_Scopes;
+	protected int m_Depth;
+	/** 是否已开始读取根节点 */
+	protected boolean m_Started;
+	/** 当前记号 */
+	protected Token m_Token;
+	/** 当前属性名 */
+	protected String m_Name;
+	/** 字串值的引号或数值的首字符，值还未读取时有效 */
+	protected char m_Pending;
+	/** 已解码的字串/数值文本 */
+	protected String m_Text;
+	protected boolean m_Boolean;
+	protected StringBuilder m_Builder;
+
+	public JsonReader(JsonInput in) {
+		m_Input = in;
+		m_Remain = INVALID_CHAR;
+		m_Pending = INVALID_CHAR;
+		m_Scopes = new byte[16];
+		m_Builder = new StringBuilder();
+	}
+
+	/**
+	 * 读取下一个记号
+	 * 
+	 * @return 记号类型
+	 * @throws IOException IO异常或格式有误时抛出
+	 */
+	public Token next() throws IOException {
+		skipPending();
+		m_Text = null;
+		if (0 == m_Depth) {
+			if (m_Started) {
+				return m_Token = Token.END_DOCUMENT;
+			}
+			m_Started = true;
+			return m_Token = value(nextChar());
+		}
+		char ch;
+		int top = m_Depth - 1;
+		switch (m_Scopes[top]) {
+		case SCOPE_OBJECT_BEGIN:
+			ch = nextChar();
+			if ('}' == ch) {
+				--m_Depth;
+				return m_Token = Token.END_OBJECT;
+			}
+			return name(top, ch);
+		case SCOPE_OBJECT_NAME:
+			m_Scopes[top] = SCOPE_OBJECT_VALUE;
+			return m_Token = value(nextChar());
+		case SCOPE_OBJECT_VALUE:
+			ch = nextChar();
+			if (',' == ch) {
+				return name(top, nextChar());
+			}
+			if ('}' == ch) {
+				--m_Depth;
+				return m_Token = Token.END_OBJECT;
+			}
+			throw illegalFormat("不是预期的'" + ch + "'");
+		case SCOPE_ARRAY_BEGIN:
+			ch = nextChar();
+			if (']' == ch) {
+				--m_Depth;
+				return m_Token = Token.END_ARRAY;
+			}
+			m_Scopes[top] = SCOPE_ARRAY_VALUE;
+			return m_Token = value(ch);
+		case SCOPE_ARRAY_VALUE:
+			ch = nextChar();
+			if (',' == ch) {
+				return m_Token = value(nextChar());
+			}
+			if (']' == ch) {
+				--m_Depth;
+				return m_Token = Token.END_ARRAY;
+			}
+			throw illegalFormat("不是预期的'" + ch + "'");
+		}
+		throw new IllegalStateException("层状态有误：" + m_Scopes[top]);
+	}
+
+	/**
+	 * 当前记号
+	 */
+	public Token getToken() {
+		return m_Token;
+	}
+
+	/**
+	 * 当前所在的层（根对象/数组内为1）
+	 */
+	public int getDepth() {
+		return m_Depth;
+	}
+
+	/**
+	 * 当前（或最近读取的）属性名
+	 */
+	public String getName() {
+		return m_Name;
+	}
+
+	/**
+	 * 读取字串值，数值及布尔值返回其文本，null值返回null
+	 * 
+	 * @throws IOException IO异常时抛出
+	 */
+	public String getString() throws IOException {
+		switch (m_Token) {
+		case STRING:
+		case NUMBER:
+			return text();
+		case BOOLEAN:
+			return m_Boolean ? "true" : "false";
+		case NULL:
+			return null;
+		default:
+			throw new IllegalStateException("当前不是值：" + m_Token);
+		}
+	}
+
+	/**
+	 * 读取布尔值
+	 */
+	public boolean getBoolean() {
+		if (Token.BOOLEAN != m_Token) {
+			throw new IllegalStateException("当前不是布尔值：" + m_Token);
+		}
+		return m_Boolean;
+	}
+
+	/**
+	 * 读取数值（整数）
+	 * 
+	 * @throws IOException IO异常时抛出
+	 */
+	public int getInt() throws IOException {
+		long v = getLong();
+		if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+			throw new NumberFormatException("超出int范围：" + v);
+		}
+		return (int) v;
+	}
+
+	/**
+	 * 读取数值（长整数）
+	 * 
+	 * @throws IOException IO异常时抛出
+	 */
+	public long getLong() throws IOException {
+		String v = number();
+		int i = ('-' == v.charAt(0)) ? 1 : 0;
+		int len = v.length();
+		if (i < len && len - i < 19) {
+			// 不超过18位的整数直接逐位计算
+			long value = 0;
+			for (; i < len; i++) {
+				char ch = v.charAt(i);
+				if (ch < '0' || ch > '9') {
+					break;
+				}
+				value = value * 10 + (ch - '0');
+			}
+			if (i == len) {
+				return ('-' == v.charAt(0)) ? -value : value;
+			}
+		}
+		if (-1 != v.indexOf('.') || -1 != v.indexOf('e') || -1 != v.indexOf('E')) {
+			return (long) Double.parseDouble(v);
+		}
+		return Long.parseLong(v);
+	}
+
+	/**
+	 * 读取数值（浮点数）
+	 * 
+	 * @throws IOException IO异常时抛出
+	 */
+	public double getDouble() throws IOException {
+		return Double.parseDouble(number());
+	}
+
+	/**
+	 * 跳过当前值：当前为属性名时跳过其值；为对象/数组开始时跳到其结束（当前记号变为END_OBJECT/END_ARRAY）；其它值无需处理
+	 * 
+	 * @throws IOException IO异常或格式有误时抛出
+	 */
+	public void skipValue() throws IOException {
+		if (Token.NAME == m_Token) {
+			next();
+		}
+		if (Token.BEGIN_OBJECT == m_Token) {
+			skipContainer('{', '}');
+			m_Token = Token.END_OBJECT;
+		} else if (Token.BEGIN_ARRAY == m_Token) {
+			skipContainer('[', ']');
+			m_Token = Token.END_ARRAY;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		JsonInput in = m_Input;
+		if (null != in) {
+			m_Input = null;
+			in.close();
+		}
+	}
+
+	private Token name(int top, char quot) throws IOException {
+		StringBuilder builder = m_Builder;
+		builder.setLength(0);
+		char ch;
+		if ('"' != quot && '\'' != quot) {
+			// 没有引号开首
+			builder.append(quot);
+			quot = 0;
+		}
+		for (;;) {
+			ch = m_Input.readChar();
+			if ('\\' == ch) {
+				JsonUtil.unescape(m_Input, builder);
+				continue;
+			}
+			if (quot == ch) {
+				break;
+			} else if (':' == ch && 0 == quot) {
+				JsonUtil.rtrim(builder);
+				break;
+			}
+			builder.append(ch);
+		}
+		// 找到“:”分隔符
+		while (':' != ch) {
+			ch = m_Input.readChar();
+		}
+		m_Name = JsonUtil._NamePool.intern(builder);
+		m_Scopes[top] = SCOPE_OBJECT_NAME;
+		return m_Token = Token.NAME;
+	}
+
+	private Token value(char ch) throws IOException {
+		if ('{' == ch) {
+			push(SCOPE_OBJECT_BEGIN);
+			return Token.BEGIN_OBJECT;
+		}
+		if ('[' == ch) {
+			push(SCOPE_ARRAY_BEGIN);
+			return Token.BEGIN_ARRAY;
+		}
+		if ('"' == ch || '\'' == ch) {
+			m_Pending = ch;
+			return Token.STRING;
+		}
+		if ('t' == ch || 'T' == ch || 'f' == ch || 'F' == ch || 'n' == ch || 'N' == ch) {
+			String v = literal(ch);
+			if ("true".equalsIgnoreCase(v)) {
+				m_Boolean = true;
+				return Token.BOOLEAN;
+			}
+			if ("false".equalsIgnoreCase(v)) {
+				m_Boolean = false;
+				return Token.BOOLEAN;
+			}
+			if ("null".equalsIgnoreCase(v)) {
+				return Token.NULL;
+			}
+			throw illegalFormat("无效的值'" + v + "'");
+		}
+		if ('-' == ch || '+' == ch || '.' == ch || (ch >= '0' && ch <= '9')) {
+			m_Pending = ch;
+			return Token.NUMBER;
+		}
+		throw illegalFormat("不是预期的'" + ch + "'");
+	}
+
+	private void push(byte scope) {
+		if (m_Depth == m_Scopes.length) {
+			byte[] scopes = new byte[m_Depth * 2];
+			System.arraycopy(m_Scopes, 0, scopes, 0, m_Depth);
+			m_Scopes = scopes;
+		}
+		m_Scopes[m_Depth++] = scope;
+	}
+
+	private String number() throws IOException {
+		if (Token.NUMBER != m_Token) {
+			throw new IllegalStateException("当前不是数值：" + m_Token);
+		}
+		return text();
+	}
+
+	/**
+	 * 解码（还未读取的）字串或数值
+	 */
+	private String text() throws IOException {
+		char pending = m_Pending;
+		if (INVALID_CHAR == pending) {
+			return m_Text;
+		}
+		m_Pending = INVALID_CHAR;
+		if (Token.NUMBER == m_Token) {
+			m_Text = literal(pending);
+			return m_Text;
+		}
+		StringBuilder builder = m_Builder;
+		builder.setLength(0);
+		for (;;) {
+			char ch = m_Input.readChar();
+			if ('\\' == ch) {
+				JsonUtil.unescape(m_Input, builder);
+				continue;
+			}
+			if (pending == ch) {
+				break;
+			}
+			builder.append(ch);
+		}
+		m_Text = builder.toString();
+		return m_Text;
+	}
+
+	/**
+	 * 跳过未读取的字串或数值
+	 */
+	private void skipPending() throws IOException {
+		char pending = m_Pending;
+		if (INVALID_CHAR == pending) {
+			return;
+		}
+		m_Pending = INVALID_CHAR;
+		if (Token.NUMBER == m_Token) {
+			literal(pending);
+			return;
+		}
+		char ch;
+		while (pending != (ch = m_Input.readChar())) {
+			if ('\\' == ch) {
+				m_Input.readChar();
+			}
+		}
+	}
+
+	/**
+	 * 读取（不带引号的）数值、布尔及null文本，结束的分隔符放回残余字符
+	 */
+	private String literal(char ch) throws IOException {
+		StringBuilder builder = m_Builder;
+		builder.setLength(0);
+		for (;;) {
+			if (JsonUtil.isBlank(ch)) {
+				break;
+			}
+			if (',' == ch || '}' == ch || ']' == ch) {
+				m_Remain = ch;
+				break;
+			}
+			builder.append(ch);
+			if (0 == m_Depth && m_Input.available() < 0) {
+				// 根节点就是值且已到结尾
+				break;
+			}
+			try {
+				ch = m_Input.readChar();
+			} catch (EOFException e) {
+				if (0 != m_Depth) {
+					throw e;
+				}
+				// 根节点就是值，输入（如JsonInputStream）到结尾前不能由available()判断
+				break;
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * 跳过对象或数组（开始符已读取），并退出该层
+	 */
+	private void skipContainer(char begin, char end) throws IOException {
+		char quot = 0;
+		int depth = 1;
+		if (INVALID_CHAR != m_Remain) {
+			char ch = m_Remain;
+			m_Remain = INVALID_CHAR;
+			if (end == ch) {
+				--m_Depth;
+				return;
+			}
+			// 残余字符只可能是空白或分隔符
+			if (begin == ch) {
+				depth++;
+			}
+		}
+		for (;;) {
+			char ch = m_Input.readChar();
+			if (0 != quot) {
+				// 在引号中
+				if ('\\' == ch) {
+					m_Input.readChar();
+				} else if (quot == ch) {
+					quot = 0;
+				}
+				continue;
+			}
+			if ('"' == ch || '\'' == ch) {
+				quot = ch;
+			} else if (begin == ch) {
+				depth++;
+			} else if (end == ch && 0 == --depth) {
+				break;
+			}
+		}
+		--m_Depth;
+	}
+
+	private char nextChar() throws IOException {
+		char ch = m_Remain;
+		if (INVALID_CHAR != ch) {
+			m_Remain = INVALID_CHAR;
+			if (!JsonUtil.isBlank(ch)) {
+				return ch;
+			}
+		}
+		do {
+			ch = m_Input.readChar();
+		} while (JsonUtil.isBlank(ch));
+		return ch;
+	}
+
+	private InvalidFormatException illegalFormat(String errorMsg) {
+		return new InvalidFormatException(errorMsg + " " + m_Input);
+	}
+}
@@ -645,8 +645,18 @@ public class JsonUtil {
 		if (isEmpty(string)) {
 			return;
 		}
-		for (int i = 0; i < string.length(); i++) {
+		int len = string.length();
+		// 不需转义的连续字符整段输出
+		int run = 0;
+		for (int i = 0; i < len; i++) {
 			char ch = string.charAt(i);
+			if (ch >= 0x30 ? ch != 0x5C : (ch >= 0x20 && ch != '"' && ch != '/')) {
+				continue;
+			}
+			if (run < i) {
+				appender.append(string, run, i);
+			}
+			run = i + 1;
 			switch (ch) {
 			case '"':
 				appender.append("\\\"");
@@ -683,6 +693,11 @@ public class JsonUtil {
 				break;
 			}
 		}
+		if (0 == run) {
+			appender.append(string);
+		} else if (run < len) {
+			appender.append(string, run, len);
+		}
 	}
 
 	static public Appendable unescape(JsonInput in, Appendable builder) throws IOException {
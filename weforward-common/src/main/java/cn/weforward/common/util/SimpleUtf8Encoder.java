@@ -42,6 +42,19 @@ public class SimpleUtf8Encoder {
 		try {
 			for (; start < end; start++) {
 				char ch = csq.charAt(start);
+				if (ch < 0x80) {
+					// ANSI码（最常见），直接放入缓冲区
+					if (bufPos == buf.length) {
+						m_Output.write(buf, 0, bufPos);
+						bufPos = 0;
+					}
+					buf[bufPos++] = (byte) ch;
+					continue;
+				}
+				if (bufPos + 4 > buf.length) {
+					m_Output.write(buf, 0, bufPos);
+					bufPos = 0;
+				}
 				if (ch < 0 || ch > 0xFFFF) {
 					// 这是什么字符？:(
 					throw new UnsupportedEncodingException("不在字符集内\\X" + Hex.toHex16((short) ch));
@@ -100,10 +113,6 @@ public class SimpleUtf8Encoder {
 						}
 					}
 				}
-				if (bufPos + 4 > buf.length) {
-					m_Output.write(buf, 0, bufPos);
-					bufPos = 0;
-				}
 			}
 			m_HighSurrogateChar = hs;
 			if (bufPos > 0) {
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cn.weforward.common.json.JsonInputStream;
+import cn.weforward.common.json.JsonReader;
+import cn.weforward.common.json.JsonReader.Token;
+import cn.weforward.common.json.StringInput;
+
+public class JsonReaderTest {
+	static final String JSON = "{ \"id\":\"a\\\"b\\u4e2d\", \"skip\":{\"x\":[1,{\"y\":\"}]\"}],\"z\":null},"
+			+ " num : -123 , \"big\":12345678901234567890,\"d\":1.5e2,\"ok\":true,\"no\":false,"
+			+ "\"list\":[1, \"s\", [ ], {}, null],\"last\":\"x\"}";
+
+	@Test
+	public void tokens() throws IOException {
+		check(new JsonReader(new StringInput(JSON)));
+	}
+
+	private void check(JsonReader reader) throws IOException {
+		assertEquals(Token.BEGIN_OBJECT, reader.next());
+		assertEquals(Token.NAME, reader.next());
+		assertEquals("id", reader.getName());
+		assertEquals(Token.STRING, reader.next());
+		assertEquals("a\"b中", reader.getString());
+		assertEquals(Token.NAME, reader.next());
+		assertEquals("skip", reader.getName());
+		reader.skipValue();
+		assertEquals(Token.NAME, reader.next());
+		assertEquals("num", reader.getName());
+		assertEquals(Token.NUMBER, reader.next());
+		assertEquals(-123, reader.getInt());
+		assertEquals(Token.NAME, reader.next());
+		assertEquals(Token.NUMBER, reader.next());
+		assertEquals("12345678901234567890", reader.getString());
+		assertEquals(Token.NAME, reader.next());
+		assertEquals(Token.NUMBER, reader.next());
+		assertEquals(150, reader.getLong());
+		assertTrue(150d == reader.getDouble());
+		assertEquals(Token.NAME, reader.next());
+		assertEquals(Token.BOOLEAN, reader.next());
+		assertTrue(reader.getBoolean());
+		assertEquals(Token.NAME, reader.next());
+		assertEquals(Token.BOOLEAN, reader.next());
+		assertEquals("false", reader.getString());
+		assertEquals(Token.NAME, reader.next());
+		assertEquals("list", reader.getName());
+		assertEquals(Token.BEGIN_ARRAY, reader.next());
+		assertEquals(2, reader.getDepth());
+		// 不读取的值直接跳过
+		assertEquals(Token.NUMBER, reader.next());
+		assertEquals(Token.STRING, reader.next());
+		assertEquals(Token.BEGIN_ARRAY, reader.next());
+		assertEquals(Token.END_ARRAY, reader.next());
+		assertEquals(Token.BEGIN_OBJECT, reader.next());
+		reader.skipValue();
+		assertEquals(Token.END_OBJECT, reader.getToken());
+		assertEquals(Token.NULL, reader.next());
+		assertNull(reader.getString());
+		assertEquals(Token.END_ARRAY, reader.next());
+		assertEquals(Token.NAME, reader.next());
+		assertEquals("last", reader.getName());
+		assertEquals(Token.STRING, reader.next());
+		assertEquals(Token.END_OBJECT, reader.next());
+		assertEquals(0, reader.getDepth());
+		assertEquals(Token.END_DOCUMENT, reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void rootValue() throws IOException {
+		JsonReader reader = new JsonReader(new StringInput("[1,2,3]"));
+		assertEquals(Token.BEGIN_ARRAY, reader.next());
+		long sum = 0;
+		while (Token.NUMBER == reader.next()) {
+			sum += reader.getLong();
+		}
+		assertEquals(Token.END_ARRAY, reader.getToken());
+		assertEquals(6, sum);
+		assertEquals(Token.END_DOCUMENT, reader.next());
+
+		reader = new JsonReader(new StringInput(" 42"));
+		assertEquals(Token.NUMBER, reader.next());
+		assertEquals(42, reader.getInt());
+		assertEquals(Token.END_DOCUMENT, reader.next());
+
+		reader = new JsonReader(new JsonInputStream(new ByteArrayInputStream("42".getBytes("UTF-8"))));
+		assertEquals(Token.NUMBER, reader.next());
+		assertEquals(42, reader.getInt());
+		assertEquals(Token.END_DOCUMENT, reader.next());
+		reader = new JsonReader(new JsonInputStream(new ByteArrayInputStream("true".getBytes("UTF-8"))));
+		assertEquals(Token.BOOLEAN, reader.next());
+		assertTrue(reader.getBoolean());
+		assertEquals(Token.END_DOCUMENT, reader.next());
+	}
+}
@@ -10,6 +10,7 @@
  */
 package cn.weforward.common;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
@@ -23,11 +24,48 @@ import java.util.Random;
 import org.junit.Test;
 
 import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.common.json.JsonUtil;
 import cn.weforward.common.util.Bytes;
 import cn.weforward.common.util.SimpleUtf8Encoder;
 
 public class Utf8EncoderTest {
 
+	@Test
+	public void asciiRuns() throws IOException {
+		Random rd = new Random(1);
+		for (int l = 0; l < 200; l++) {
+			StringBuilder sb = new StringBuilder();
+			int len = rd.nextInt(3000);
+			for (int i = 0; i < len; i++) {
+				int r = rd.nextInt(100);
+				if (r < 90) {
+					sb.append((char) rd.nextInt(0x80));
+				} else if (r < 97) {
+					sb.append((char) (0x80 + rd.nextInt(0xD800 - 0x80)));
+				} else {
+					sb.appendCodePoint(0x10000 + rd.nextInt(0x10000));
+				}
+			}
+			String str = sb.toString();
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			new SimpleUtf8Encoder(output).encode(str);
+			assertTrue(Arrays.equals(str.getBytes("utf-8"), output.toByteArray()));
+		}
+	}
+
+	@Test
+	public void escape() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		JsonUtil.escape("abc\"d/e\\f\n\u0001中文", sb);
+		assertEquals("abc\\\"d\\/e\\\\f\\n\\u0001中文", sb.toString());
+		sb.setLength(0);
+		JsonUtil.escape("\"plain\"", sb);
+		assertEquals("\\\"plain\\\"", sb.toString());
+		sb.setLength(0);
+		JsonUtil.escape("plain", sb);
+		assertEquals("plain", sb.toString());
+	}
+
 	// @Test
 	public void pressure() throws IOException {
 		ByteArrayOutputStream output = new BytesOutputStream();
@@ -13,6 +13,7 @@ package cn.weforward.framework.ext;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -69,6 +70,17 @@ public class ReflectMethod extends AbstractApiMethod {
 	protected List<Integer> m_AllowRoles;
 	/** 不允许调用的角色 */
 	protected List<Integer> m_DisallowRoles;
+	/** 是否直接输出结果（序列化时才由Java对象直接输出为json，不构造中间的Dt对象树） */
+	protected boolean m_DirectResult = DIRECT_RESULT;
+	/** 是否流式输出列表结果（迭代器、集合及分页结果在序列化时才逐项读取输出） */
+	protected boolean m_StreamResult = STREAM_RESULT;
+
+	/** 默认是否直接输出结果，注意get方法将在序列化时才调用（已脱离方法调用时的会话等环境） */
+	public static final boolean DIRECT_RESULT = "true"
+			.equalsIgnoreCase(System.getProperty("ReflectMethod.DIRECT_RESULT"));
+	/** 默认是否流式输出列表结果，同样项的读取在序列化时才进行，数据源（如ResultPage）在输出完成后才关闭 */
+	public static final boolean STREAM_RESULT = "true"
+			.equalsIgnoreCase(System.getProperty("ReflectMethod.STREAM_RESULT"));
 
 	public static ArgsProvider _GLOBAL_PROVIDER = new ArgsProvider() {
 		@Override
@@ -129,6 +141,28 @@ public class ReflectMethod extends AbstractApiMethod {
 		m_ObjectMapperSet = m;
 	}
 
+	/**
+	 * 是否直接输出结果
+	 * 
+	 * @param enabled 为true时结果在序列化时才由Java对象直接输出为json
+	 */
+	public void setDirectResult(boolean enabled) {
+		m_DirectResult = enabled;
+	}
+
+	/**
+	 * 是否流式输出列表结果
+	 * 
+	 * <p>
+	 * 输出时对端接收慢会等待写出（见NettyHttpHandler.WRITABLE_WAIT_MILLIS），使内存占用有界；
+	 * 但{@link Header#AUTH_TYPE_SHA2}验证须在签名完成后才输出HTTP头，整个响应内容仍会先暂留在缓冲区
+	 * 
+	 * @param enabled 为true时迭代器、集合及分页结果在序列化时才逐项读取输出，不先构造整个列表
+	 */
+	public void setStreamResult(boolean enabled) {
+		m_StreamResult = enabled;
+	}
+
 	/**
 	 * 调用前方法
 	 * 
@@ -203,6 +237,8 @@ public class ReflectMethod extends AbstractApiMethod {
 		if (returnVal instanceof DtBase) {
 			return (DtBase) returnVal;
 		}
+		// 需要关闭的结果不能延后到序列化时再读取
+		boolean direct = m_DirectResult && !(returnVal instanceof AutoCloseable);
 		if (returnVal instanceof ResultPage<?>) {
 			ResultPage<?> rp = (ResultPage<?>) returnVal;
 			Integer pageSize = DocPageParams.tryGetInteger(params, "page_size");
@@ -217,6 +253,14 @@ public class ReflectMethod extends AbstractApiMethod {
 			}
 			returnVal = new PageData(rp);
 		}
+		if (m_StreamResult && (returnVal instanceof PageData || returnVal instanceof Iterable<?>
+				|| returnVal instanceof Iterator<?>)) {
+			// 由流式输出在完成后关闭
+			return MappedUtil.toStream(returnVal, m_ObjectMapperSet);
+		}
+		if (direct) {
+			return MappedUtil.toDirect(returnVal, m_ObjectMapperSet);
+		}
 		DtBase result = MappedUtil.toBase(returnVal, m_ObjectMapperSet);
 		if (returnVal instanceof AutoCloseable) {
 			try {
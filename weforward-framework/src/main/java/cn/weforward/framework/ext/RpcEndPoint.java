@@ -36,6 +36,7 @@ import cn.weforward.metrics.WeforwardMetrics;
 import cn.weforward.protocol.Access;
 import cn.weforward.protocol.Request;
 import cn.weforward.protocol.Response;
+import cn.weforward.protocol.client.util.MappedDtStream;
 import cn.weforward.protocol.datatype.DtBase;
 import cn.weforward.protocol.datatype.DtObject;
 import cn.weforward.protocol.exception.WeforwardException;
@@ -302,4 +303,23 @@ public class RpcEndPoint extends AbstractWeforwardEndPoint {
 		return m;
 	}
 
+	/**
+	 * 关闭结果中流式输出的内容（{@linkplain cn.weforward.protocol.client.util.MappedUtil#toStream}），响应完成后调用，使没有输出（如验证或序列化失败）的也能关闭数据源
+	 * 
+	 * @param result 结果
+	 */
+	protected static void closeResult(DtObject result) {
+		if (null == result) {
+			return;
+		}
+		DtBase content = result.getAttribute("content");
+		if (content instanceof SimpleDtObject) {
+			// 分页数据的项
+			content = ((SimpleDtObject) content).getAttribute("items");
+		}
+		if (content instanceof MappedDtStream) {
+			((MappedDtStream) content).close();
+		}
+	}
+
 }
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Executor;
+import java.util.function.ToDoubleFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +35,6 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
 import cn.weforward.common.Destroyable;
-import cn.weforward.common.io.OutputStreamStay;
 import cn.weforward.common.restful.RestfulRequest;
 import cn.weforward.common.restful.RestfulResponse;
 import cn.weforward.common.restful.RestfulService;
@@ -61,6 +61,7 @@ import cn.weforward.framework.exception.ForwardException;
 import cn.weforward.framework.util.HostUtil;
 import cn.weforward.framework.util.VersionUtil;
 import cn.weforward.metrics.RemoteMeterRegistry;
+import cn.weforward.metrics.WeforwardMetrics;
 import cn.weforward.protocol.Access;
 import cn.weforward.protocol.AccessLoader;
 import cn.weforward.protocol.AsyncResponse;
@@ -85,12 +86,15 @@ import cn.weforward.protocol.gateway.ServiceRegister;
 import cn.weforward.protocol.gateway.http.HttpServiceRegister;
 import cn.weforward.protocol.gateway.vo.ServiceVo;
 import cn.weforward.protocol.ops.trace.ServiceTraceToken;
+import cn.weforward.protocol.support.CachingAccessLoader;
+import cn.weforward.protocol.support.DeflateDictionary;
 import cn.weforward.protocol.support.SimpleAccess;
 import cn.weforward.protocol.support.SimpleProducer;
 import cn.weforward.protocol.support.SimpleResponse;
 import cn.weforward.protocol.support.datatype.FriendlyObject;
 import cn.weforward.trace.RemoteTraceRegistry;
 import cn.weforward.trace.TraceRegistry;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 
 /**
@@ -229,7 +233,10 @@ public class WeforwardService
 		m_HttpServer.setGzipEnabled(true);
 		m_StartTime = System.currentTimeMillis();
 		m_Host = genHost(host);
-		m_Producer = new SimpleProducer(this);
+		SimpleProducer producer = new SimpleProducer(this);
+		// 解压后的请求内容也不超过http内容的大小限制
+		producer.setMaxInflateSize(m_HttpServer.getMaxHttpSize());
+		m_Producer = producer;
 		m_RpcEndpoint = new RpcEndPoint();
 		m_RpcEndpoint.setBasePath(path);
 		m_StreamEndpoint = new StreamEndPoint();
@@ -293,6 +300,7 @@ public class WeforwardService
 		}
 		m_RpcEndpoint.setMeterRegistry(registry);
 		m_StreamEndpoint.setMeterRegistry(registry);
+		registerAccessLoaderMetrics();
 	}
 
 	/**
@@ -379,6 +387,9 @@ public class WeforwardService
 		if (null != m_HttpServer) {
 			m_HttpServer.setMaxHttpSize(maxHttpSize);
 		}
+		if (m_Producer instanceof SimpleProducer) {
+			((SimpleProducer) m_Producer).setMaxInflateSize(maxHttpSize);
+		}
 	}
 
 	/**
@@ -930,6 +941,36 @@ public class WeforwardService
 	 */
 	public void setAccessLoader(AccessLoader loader) {
 		m_AccessLoader = loader;
+		registerAccessLoaderMetrics();
+	}
+
+	/*
+	 * 带缓存的凭证加载器注册其命中率及加载耗时指标，指标按ID去重（同一注册表只注册一次），
+	 * 所以绑定的是当前服务而不是加载器，更换加载器后指标随之读取新的加载器
+	 */
+	private void registerAccessLoaderMetrics() {
+		MeterRegistry registry = m_RpcEndpoint.getMeterRegistry();
+		if (null == registry || !(m_AccessLoader instanceof CachingAccessLoader)) {
+			return;
+		}
+		Gauge.builder(WeforwardMetrics.ACCESS_CACHE_HIT_RATE_KEY, this,
+				s -> s.getCachingAccessLoaderMetric(CachingAccessLoader::getHitRate)).strongReference(true)
+				.register(registry);
+		Gauge.builder(WeforwardMetrics.ACCESS_LOAD_AVERAGE_KEY, this,
+				s -> s.getCachingAccessLoaderMetric(CachingAccessLoader::getLoadAverage)).strongReference(true)
+				.register(registry);
+		Gauge.builder(WeforwardMetrics.ACCESS_LOAD_MAX_KEY, this,
+				s -> s.getCachingAccessLoaderMetric(CachingAccessLoader::getLoadMax)).strongReference(true)
+				.register(registry);
+	}
+
+	/* 当前带缓存的凭证加载器的指标，已不是带缓存的加载器时为NaN */
+	private double getCachingAccessLoaderMetric(ToDoubleFunction<CachingAccessLoader> metric) {
+		AccessLoader loader = m_AccessLoader;
+		if (loader instanceof CachingAccessLoader) {
+			return metric.applyAsDouble((CachingAccessLoader) loader);
+		}
+		return Double.NaN;
 	}
 
 	@Override
@@ -1408,13 +1449,26 @@ public class WeforwardService
 			m_RestfulResponse = rsp;
 			// 补充header
 			Header respHeader = new Header(reqHeader.getService());
-			respHeader.setContentType(reqHeader.getContentType());
+			respHeader.setContentType(negotiateContentType(reqHeader));
 			respHeader.setCharset(reqHeader.getCharset());
 			respHeader.setAuthType(reqHeader.getAuthType());
 			respHeader.setAccessId(reqHeader.getAccessId());
+			respHeader.setContentEncoding(DeflateDictionary.negotiate(reqHeader.getAcceptEncoding()));
 			setHeader(respHeader);
 		}
 
+		/**
+		 * 请求方声明了可接受的内容格式且支持时以此格式响应（即向请求方确认支持，之后的请求可以此格式提交），否则与请求的格式一致
+		 */
+		private String negotiateContentType(Header reqHeader) {
+			String accept = reqHeader.getAcceptContentType();
+			if (!StringUtil.isEmpty(accept) && m_Producer instanceof SimpleProducer
+					&& ((SimpleProducer) m_Producer).isSupportContentType(accept)) {
+				return accept;
+			}
+			return reqHeader.getContentType();
+		}
+
 		public boolean isAsync() {
 			return m_Async;
 		}
@@ -1444,15 +1498,14 @@ public class WeforwardService
 		public void complete() throws IOException {
 			RestfulResponse rsp = m_RestfulResponse;
 			if (null == rsp) {
+				RpcEndPoint.closeResult(getServiceResult());
 				throw new EOFException(toString());
 			}
-			// 先使用暂留缓存输出序列化内容
-			OutputStream out = OutputStreamStay.Wrap.wrap(rsp.openOutput());
+			// 序列化内容直接经验证器写到响应输出流（签名完成前暂留在其缓冲区），完成签名后由验证器输出HTTP头
+			OutputStream out = rsp.openOutput();
 			try {
-				((OutputStreamStay) out).stay();
-				m_Producer.make(this, out);
-				// 然后输出HTTP头
-				HttpHeaderHelper.outHeaders(getHeader(), this);
+				m_ResponseOutput = out;
+				m_Producer.make(this, (Producer.Output) this);
 				// 再刷出内容
 				out.flush();
 			} catch (Throwable e) {
@@ -1468,7 +1521,10 @@ public class WeforwardService
 				if (null != out) {
 					out.close();
 				}
+				m_ResponseOutput = null;
 				m_RestfulResponse = null;
+				// 流式的结果无论是否已输出都关闭其数据源
+				RpcEndPoint.closeResult(getServiceResult());
 			}
 
 		}
@@ -61,6 +61,12 @@ public interface WeforwardMetrics {
 	String TRACE_END_TIME = "weforward.service.trace.end";
 	/** 追踪统计值 */
 	String TRACE_KEY = "weforward.service.trace";
+	/** 凭证缓存命中率（百分比） */
+	String ACCESS_CACHE_HIT_RATE_KEY = "weforward.service.access.cache.hitrate";
+	/** 凭证平均加载耗时（毫秒） */
+	String ACCESS_LOAD_AVERAGE_KEY = "weforward.service.access.load.average";
+	/** 凭证最大加载耗时（毫秒） */
+	String ACCESS_LOAD_MAX_KEY = "weforward.service.access.load.max";
 
 	/** 内存上限 */
 	String MEMORY_MAX = "weforward.service.memorymax";
@@ -35,6 +35,11 @@ public class Header implements Cloneable {
 
 	/** 内容格式 - json */
 	public static final String CONTENT_TYPE_JSON = "json";
+	/** 内容格式 - 紧凑二进制（weforward binary），用于服务间调用 */
+	public static final String CONTENT_TYPE_BINARY = "wfb";
+
+	/** 内容压缩 - 基于预置字典的deflate，见{@linkplain cn.weforward.protocol.support.DeflateDictionary} */
+	public static final String CONTENT_ENCODING_DICT = "wfd1";
 
 	/** 内容编码 - utf-8 */
 	public static final String CHARSET_UTF8 = "utf-8";
@@ -82,6 +87,9 @@ public class Header implements Cloneable {
 	protected String m_UserAgent;
 	protected String m_ServiceNo;
 	protected String m_MeshAuth;
+	protected String m_ContentEncoding;
+	protected String m_AcceptEncoding;
+	protected String m_AcceptContentType;
 
 	public Header(String serviceName) {
 		m_Service = serviceName;
@@ -291,6 +299,63 @@ public class Header implements Cloneable {
 		m_ContentSign = contentSign;
 	}
 
+	/**
+	 * 获取内容压缩方式
+	 * 
+	 * @return 内容压缩方式，如：{@linkplain #CONTENT_ENCODING_DICT}，为null表示不压缩
+	 */
+	public String getContentEncoding() {
+		return m_ContentEncoding;
+	}
+
+	/**
+	 * 设置内容压缩方式
+	 * 
+	 * @param encoding
+	 *            内容压缩方式
+	 */
+	public void setContentEncoding(String encoding) {
+		m_ContentEncoding = encoding;
+	}
+
+	/**
+	 * 获取（请求方）可接受的响应内容压缩方式
+	 * 
+	 * @return 以逗号分隔的压缩方式
+	 */
+	public String getAcceptEncoding() {
+		return m_AcceptEncoding;
+	}
+
+	/**
+	 * 设置（请求方）可接受的响应内容压缩方式
+	 * 
+	 * @param encoding
+	 *            以逗号分隔的压缩方式
+	 */
+	public void setAcceptEncoding(String encoding) {
+		m_AcceptEncoding = encoding;
+	}
+
+	/**
+	 * 获取（请求方）可接受的内容格式，对方支持时以此格式响应
+	 * 
+	 * @return 内容格式，如：{@linkplain #CONTENT_TYPE_BINARY}
+	 */
+	public String getAcceptContentType() {
+		return m_AcceptContentType;
+	}
+
+	/**
+	 * 设置（请求方）可接受的内容格式
+	 * 
+	 * @param contentType
+	 *            内容格式，如：{@linkplain #CONTENT_TYPE_BINARY}
+	 */
+	public void setAcceptContentType(String contentType) {
+		m_AcceptContentType = contentType;
+	}
+
 	/**
 	 * 输出详细信息，用于日志记录
 	 * 
@@ -266,4 +266,16 @@ public interface HttpConstants {
 	 * 网格认证信息
 	 */
 	public static final String WF_MESH_AUTH = Header.WEFORWARD_PREFIX + "-Mesh-Auth";
+	/**
+	 * 内容压缩方式（weforward协议层，在验证之前）
+	 */
+	public static final String WF_CONTENT_ENCODING = Header.WEFORWARD_PREFIX + "-Content-Encoding";
+	/**
+	 * 可接受的内容压缩方式（weforward协议层）
+	 */
+	public static final String WF_ACCEPT_ENCODING = Header.WEFORWARD_PREFIX + "-Accept-Encoding";
+	/**
+	 * 可接受的内容格式（weforward协议层）
+	 */
+	public static final String WF_ACCEPT_CONTENT_TYPE = Header.WEFORWARD_PREFIX + "-Accept-Content-Type";
 }
@@ -150,6 +150,18 @@ public class HttpHeaderHelper {
 		if (!StringUtil.isEmpty(meshSign)) {
 			out.put(HttpConstants.WF_MESH_AUTH, meshSign);
 		}
+		String contentEncoding = header.getContentEncoding();
+		if (!StringUtil.isEmpty(contentEncoding)) {
+			out.put(HttpConstants.WF_CONTENT_ENCODING, contentEncoding);
+		}
+		String acceptEncoding = header.getAcceptEncoding();
+		if (!StringUtil.isEmpty(acceptEncoding)) {
+			out.put(HttpConstants.WF_ACCEPT_ENCODING, acceptEncoding);
+		}
+		String acceptContentType = header.getAcceptContentType();
+		if (!StringUtil.isEmpty(acceptContentType)) {
+			out.put(HttpConstants.WF_ACCEPT_CONTENT_TYPE, acceptContentType);
+		}
 	}
 
 	/**
@@ -165,6 +177,8 @@ public class HttpHeaderHelper {
 			contentType = contentType.toLowerCase();
 			if (contentType.contains("json")) {
 				header.setContentType(Header.CONTENT_TYPE_JSON);
+			} else if (contentType.contains(Header.CONTENT_TYPE_BINARY)) {
+				header.setContentType(Header.CONTENT_TYPE_BINARY);
 			}
 			idx = contentType.indexOf("charset=");
 			if (-1 != idx) {
@@ -202,5 +216,11 @@ public class HttpHeaderHelper {
 		header.setServiceNo(serviceNo);
 		String meshSign = hs.get(HttpConstants.WF_MESH_AUTH);
 		header.setMeshAuth(meshSign);
+		String contentEncoding = hs.get(HttpConstants.WF_CONTENT_ENCODING);
+		header.setContentEncoding(contentEncoding);
+		String acceptEncoding = hs.get(HttpConstants.WF_ACCEPT_ENCODING);
+		header.setAcceptEncoding(acceptEncoding);
+		String acceptContentType = hs.get(HttpConstants.WF_ACCEPT_CONTENT_TYPE);
+		header.setAcceptContentType(acceptContentType);
 	}
 }
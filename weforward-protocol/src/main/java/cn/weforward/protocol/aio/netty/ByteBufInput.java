@@ -19,6 +19,8 @@ import java.nio.ByteBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cn.weforward.common.io.InputStreamBuffers;
+import cn.weforward.common.io.InputStreamDigest;
 import cn.weforward.common.io.InputStreamNio;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.CompositeByteBuf;
@@ -32,13 +34,16 @@ import io.netty.util.ResourceLeakTracker;
  * @author liangyi
  *
  */
-public class ByteBufInput extends InputStream implements InputStreamNio, ByteBufStream, Leakable {
+public class ByteBufInput extends InputStream
+		implements InputStreamNio, InputStreamBuffers, InputStreamDigest, ByteBufStream, Leakable {
 	static final Logger _Logger = LoggerFactory.getLogger(ByteBufInput.class);
 
 	/** 数据缓冲区 */
 	protected ByteBuf m_Buffer;
 	/** 数据是否完整 */
 	protected boolean m_Completed;
+	/** 边接收边计算的内容摘要 */
+	protected ReceivingDigest m_Digest;
 
 	ResourceLeakTracker<Leakable> m_Leak;
 
@@ -167,6 +172,27 @@ public class ByteBufInput extends InputStream implements InputStreamNio, ByteBuf
 		}
 	}
 
+	/**
+	 * 已完整接收内容的只读视图（直接引用Netty的缓冲区，流关闭时才释放）
+	 */
+	@Override
+	public ByteBuffer[] nioBuffers() throws IOException {
+		ByteBuf buf = getByteBuf();
+		synchronized (buf) {
+			if (!m_Completed) {
+				return null;
+			}
+			if (!buf.isReadable()) {
+				return new ByteBuffer[0];
+			}
+			ByteBuffer[] buffers = buf.nioBuffers(buf.readerIndex(), buf.readableBytes());
+			for (int i = 0; i < buffers.length; i++) {
+				buffers[i] = buffers[i].asReadOnlyBuffer();
+			}
+			return buffers;
+		}
+	}
+
 	/**
 	 * 通知有数据可读
 	 */
@@ -213,6 +239,21 @@ public class ByteBufInput extends InputStream implements InputStreamNio, ByteBuf
 		return m_Completed;
 	}
 
+	/**
+	 * 设置边接收边计算的内容摘要
+	 * 
+	 * @param digest 内容摘要
+	 */
+	public void setDigest(ReceivingDigest digest) {
+		m_Digest = digest;
+	}
+
+	@Override
+	public byte[] getDigest(String algorithm, long length) {
+		ReceivingDigest digest = m_Digest;
+		return (null == digest) ? null : digest.get(algorithm, length);
+	}
+
 	public void abort() {
 		end();
 	}
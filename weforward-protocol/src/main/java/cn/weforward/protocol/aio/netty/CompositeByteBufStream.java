@@ -28,6 +28,8 @@ import io.netty.util.ResourceLeakTracker;
 public class CompositeByteBufStream implements ByteBufStream, Leakable {
 	protected CompositeByteBuf m_Buffer;
 	protected boolean m_Completed;
+	/** 边接收边计算的内容摘要 */
+	protected ReceivingDigest m_Digest;
 
 	ResourceLeakTracker<Leakable> m_Leak;
 
@@ -82,6 +84,7 @@ public class CompositeByteBufStream implements ByteBufStream, Leakable {
 
 	synchronized public ByteBufInput detachToStream() {
 		ByteBufInput stream = new ByteBufInput(detach(), isCompleted());
+		stream.setDigest(m_Digest);
 		return stream;
 	}
 
@@ -89,6 +92,15 @@ public class CompositeByteBufStream implements ByteBufStream, Leakable {
 		return m_Completed;
 	}
 
+	/**
+	 * 设置边接收边计算的内容摘要，转为流（{@linkplain #detachToStream()}）时一并转交
+	 * 
+	 * @param digest 内容摘要
+	 */
+	public void setDigest(ReceivingDigest digest) {
+		m_Digest = digest;
+	}
+
 	/**
 	 * 快照当前缓冲区已有内容到流（很可能只有部分内容）
 	 */
@@ -14,6 +14,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -24,6 +25,7 @@ import cn.weforward.common.io.OutputStreamStay;
 import cn.weforward.common.io.StayException;
 import cn.weforward.common.util.StringBuilderPool;
 import cn.weforward.protocol.aio.ServerHandler;
+import cn.weforward.protocol.aio.http.HttpConstants;
 import cn.weforward.protocol.aio.http.HttpContext;
 import cn.weforward.protocol.aio.http.HttpHeaders;
 import cn.weforward.protocol.aio.http.QueryStringParser;
@@ -55,6 +57,11 @@ import io.netty.util.concurrent.ScheduledFuture;
  */
 public class NettyHttpContext implements HttpContext {
 	static final Logger _Logger = LoggerFactory.getLogger(NettyHttpContext.class);
+	/** 请求带有内容签名时是否边接收边计算内容摘要（默认启用） */
+	static final boolean CONTENT_DIGEST = !"false"
+			.equalsIgnoreCase(System.getProperty("NettyHttpContext.CONTENT_DIGEST"));
+	/** 内容签名的摘要算法 */
+	static final String CONTENT_DIGEST_ALGORITHM = "SHA-256";
 
 	/** HTTP Handler */
 	protected NettyHttpHandler m_HttpHandler;
@@ -71,6 +78,8 @@ public class NettyHttpContext implements HttpContext {
 	protected ByteBufStream m_RequestBody;
 	/** 镜像的请求内容流 */
 	protected ByteBufInput m_MirrorRequestBody;
+	/** 边接收边计算的请求内容摘要（请求带有内容签名时） */
+	protected ReceivingDigest m_ContentDigest;
 
 	/** 服务端业务处理器 */
 	protected ServerHandler m_Handler;
@@ -119,10 +128,28 @@ public class NettyHttpContext implements HttpContext {
 			}
 			body.abort();
 		}
-		m_RequestBody = new CompositeByteBufStream(m_HttpHandler.compositeBuffer());
+		CompositeByteBufStream bufStream = new CompositeByteBufStream(m_HttpHandler.compositeBuffer());
+		m_ContentDigest = openContentDigest();
+		bufStream.setDigest(m_ContentDigest);
+		m_RequestBody = bufStream;
 		handler.requestHeader();
 	}
 
+	/**
+	 * 请求带有内容签名时，创建边接收边计算的内容摘要，使验证时不需要再扫描一遍内容
+	 */
+	private ReceivingDigest openContentDigest() {
+		if (!CONTENT_DIGEST || !m_Request.headers().contains(HttpConstants.WF_CONTENT_SIGN)) {
+			return null;
+		}
+		try {
+			return new ReceivingDigest(CONTENT_DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			_Logger.warn(e.toString(), e);
+			return null;
+		}
+	}
+
 	/**
 	 * 收到调用请求的数据体
 	 * 
@@ -161,6 +188,10 @@ public class NettyHttpContext implements HttpContext {
 			// 不转传则写入缓冲区
 			body = m_RequestBody;
 			if (null != body) {
+				ReceivingDigest digest = m_ContentDigest;
+				if (null != digest) {
+					digest.update(data);
+				}
 				body.readable(data);
 			}
 		}
@@ -184,6 +215,10 @@ public class NettyHttpContext implements HttpContext {
 			body.abort();
 		}
 		m_RequestBody = ByteBufInput._aborted;
+		if (null != m_ContentDigest) {
+			m_ContentDigest.cancel();
+			m_ContentDigest = null;
+		}
 
 		if (null != m_MirrorRequestBody) {
 			m_MirrorRequestBody.end();
@@ -211,6 +246,12 @@ public class NettyHttpContext implements HttpContext {
 			}
 
 			m_RequestTransferTo = null;
+			ReceivingDigest digest = m_ContentDigest;
+			if (null != digest) {
+				// 在标记完成前得出摘要，读取者等到完成时摘要已可用
+				digest.finish();
+				m_ContentDigest = null;
+			}
 			// 请求内容流标记为完成
 			if (null == m_RequestBody) {
 				m_RequestBody = ByteBufInput._completed;
@@ -555,6 +596,11 @@ public class NettyHttpContext implements HttpContext {
 			}
 			bufStream.skipBytes(skipBytes);
 		}
+		// 内容改为转传，不再计算摘要
+		if (null != m_ContentDigest) {
+			m_ContentDigest.cancel();
+			m_ContentDigest = null;
+		}
 		// 包装转传器
 		m_RequestTransferTo = NettyOutputStream.wrap(writer);
 		// 写入已接收到缓冲区的数据
@@ -589,6 +635,9 @@ public class NettyHttpContext implements HttpContext {
 		return m_MirrorRequestBody;
 	}
 
+	/**
+	 * 请求内容的流，同时实现{@linkplain cn.weforward.common.io.InputStreamBuffers}，请求完整接收后可直接访问Netty缓冲区的只读视图（流关闭时释放）
+	 */
 	@Override
 	synchronized public InputStream getRequestStream() throws IOException {
 		ensureRequestStream();
@@ -879,6 +928,10 @@ public class NettyHttpContext implements HttpContext {
 			// if (isHead()) {
 			// throw new StayException("已输出HTTP头");
 			// }
+			if (null != m_StayBuffers) {
+				// 已在暂留中
+				return;
+			}
 			m_StayBuffers = m_HttpHandler.compositeBuffer();
 		}
 
@@ -911,8 +964,10 @@ public class NettyHttpContext implements HttpContext {
 			if (buf.isReadable()) {
 				buf = buf.retain();
 				m_BodyLength += buf.readableBytes();
-				m_HttpHandler.writeAndFlush(buf);
+				ChannelFuture future = m_HttpHandler.writeAndFlush(buf);
 				calcBsp();
+				// 对端接收慢时等待写出，避免（如流式输出大结果时）内容堆积在写缓冲
+				m_HttpHandler.awaitWritable(future);
 			}
 		}
 
@@ -11,6 +11,7 @@
 package cn.weforward.protocol.aio.netty;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.util.concurrent.TimeUnit;
 
@@ -45,6 +46,7 @@ import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.FastThreadLocalThread;
 import io.netty.util.concurrent.ScheduledFuture;
 import io.netty.util.internal.OutOfDirectMemoryError;
 
@@ -56,6 +58,9 @@ import io.netty.util.internal.OutOfDirectMemoryError;
  */
 public class NettyHttpHandler extends ChannelInboundHandlerAdapter {
 	static final Logger _Logger = LoggerFactory.getLogger(NettyHttpHandler.class);
+	/** 通道不可写（写缓冲超过高水位）时，输出线程等待写出的最长时间（毫秒），默认30秒，小于等于0则不等待 */
+	static final int WRITABLE_WAIT_MILLIS = NumberUtil
+			.toInt(System.getProperty("NettyHttpHandler.WRITABLE_WAIT_MILLIS"), 30 * 1000);
 
 	/** HTTP server */
 	protected final NettyHttpServer m_Server;
@@ -489,6 +494,36 @@ public class NettyHttpHandler extends ChannelInboundHandlerAdapter {
 		return m_Ctx.writeAndFlush(msg);
 	}
 
+	/**
+	 * 通道不可写（对端接收跟不上，写缓冲已超过高水位）时，（非IO线程）等待最近一次的写出完成，使持续输出大量内容时内存占用有界。
+	 * <p>
+	 * WRITABLE_WAIT_MILLIS小于等于0时不等待；在任何netty的IO线程（如转发其它通道的响应时）都不等待，以免阻塞该线程上的所有通道
+	 * 
+	 * @param future 最近一次写的结果
+	 * @throws IOException 等待超时或被中断时抛出
+	 */
+	public void awaitWritable(ChannelFuture future) throws IOException {
+		ChannelHandlerContext ctx = m_Ctx;
+		if (null == ctx || WRITABLE_WAIT_MILLIS <= 0 || ctx.channel().isWritable() || isIoThread(ctx)) {
+			return;
+		}
+		try {
+			if (!future.await(WRITABLE_WAIT_MILLIS)) {
+				throw new IOException(formatMessage("等待写出超时"));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(formatMessage("等待写出被中断"));
+		}
+	}
+
+	/**
+	 * 当前是否为netty的IO线程（各EventLoopGroup都由DefaultThreadFactory创建FastThreadLocalThread）
+	 */
+	private static boolean isIoThread(ChannelHandlerContext ctx) {
+		return ctx.executor().inEventLoop() || Thread.currentThread() instanceof FastThreadLocalThread;
+	}
+
 	// public void flush() {
 	// m_Ctx.flush();
 	// }
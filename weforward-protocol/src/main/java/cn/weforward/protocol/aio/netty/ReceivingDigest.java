@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.aio.netty;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 边接收请求内容边计算的摘要，在内容接收完整时即已得出结果
+ * 
+ * @author liangyi
+ *
+ */
+public class ReceivingDigest {
+	/** 摘要算法 */
+	protected final String m_Algorithm;
+	protected MessageDigest m_Digest;
+	/** 已计算的内容长度 */
+	protected long m_Length;
+	/** 摘要结果 */
+	protected volatile byte[] m_Result;
+
+	public ReceivingDigest(String algorithm) throws NoSuchAlgorithmException {
+		m_Algorithm = algorithm;
+		m_Digest = MessageDigest.getInstance(algorithm);
+	}
+
+	/**
+	 * 收到数据（不改变其读取位置）
+	 * 
+	 * @param data 收到的数据
+	 */
+	public void update(ByteBuf data) {
+		MessageDigest digest = m_Digest;
+		if (null == digest) {
+			return;
+		}
+		int len = data.readableBytes();
+		if (1 == data.nioBufferCount()) {
+			digest.update(data.nioBuffer(data.readerIndex(), len));
+		} else {
+			for (ByteBuffer b : data.nioBuffers(data.readerIndex(), len)) {
+				digest.update(b);
+			}
+		}
+		m_Length += len;
+	}
+
+	/**
+	 * 内容已接收完整，得出摘要
+	 */
+	public void finish() {
+		MessageDigest digest = m_Digest;
+		if (null != digest) {
+			m_Digest = null;
+			m_Result = digest.digest();
+		}
+	}
+
+	/**
+	 * 放弃计算（如内容改为转传）
+	 */
+	public void cancel() {
+		m_Digest = null;
+	}
+
+	/**
+	 * 获取摘要
+	 * 
+	 * @param algorithm 摘要算法
+	 * @param length    使用者读取的内容长度
+	 * @return 算法及长度一致且已得出结果时返回摘要，否则返回null
+	 */
+	public byte[] get(String algorithm, long length) {
+		byte[] result = m_Result;
+		if (null == result || length != m_Length || !m_Algorithm.equalsIgnoreCase(algorithm)) {
+			return null;
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "{alg:" + m_Algorithm + ",len:" + m_Length + ",done:" + (null != m_Result) + "}";
+	}
+}
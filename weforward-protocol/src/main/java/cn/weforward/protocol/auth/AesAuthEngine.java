@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import cn.weforward.common.util.StringUtil;
+import cn.weforward.protocol.Header;
+import cn.weforward.protocol.exception.AuthException;
+import cn.weforward.protocol.exception.WeforwardException;
+
+/**
+ * {@link Header#AUTH_TYPE_AES}的验证引擎
+ * <p>
+ * 头信息的签名与{@link Header#AUTH_TYPE_SHA2}相同（内容签名位置固定为验证类型名），内容使用AES-GCM加密，
+ * 签名作为附加验证数据（AAD）。加密与完整性校验在一次处理内完成，不再另外计算内容签名。
+ * <p>
+ * 密钥由access key经HKDF（HMAC-SHA256，noise作为info）导出；IV每次加密随机生成，放在密文之前一并传输，
+ * 即内容为：IV(12字节) + 密文 + 验证标签(16字节)
+ * 
+ * @author zhangpengji
+ *
+ */
+public class AesAuthEngine implements AuthEngine {
+	/** 加密算法 */
+	public static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	/** GCM验证标签的位数 */
+	public static final int TAG_BITS = 128;
+	/** 密钥字节数（AES-128，不依赖JCE无限制策略） */
+	static final int KEY_LENGTH = 16;
+	/** IV字节数 */
+	public static final int IV_LENGTH = 12;
+	/** 导出密钥的HMAC算法 */
+	static final String HMAC = "HmacSHA256";
+	/** 导出密钥的salt */
+	static final byte[] SALT = Header.AUTH_TYPE_AES.getBytes(StandardCharsets.US_ASCII);
+
+	/** 生成IV的随机数发生器 */
+	static final SecureRandom _Random = new SecureRandom();
+
+	/** 当前线程的加密器 */
+	static final ThreadLocal<Cipher> _Cipher = new ThreadLocal<Cipher>() {
+		@Override
+		protected Cipher initialValue() {
+			return newCipher();
+		}
+	};
+
+	/** 当前线程导出密钥的HMAC */
+	static final ThreadLocal<Mac> _Mac = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance(HMAC);
+			} catch (GeneralSecurityException e) {
+				// JCE都有此实现
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	/** 防重放，为null则不检查 */
+	protected ReplayGuard m_ReplayGuard = ReplayGuard.getDefault();
+
+	/**
+	 * 指定解码时使用的防重放，为null则不检查
+	 * 
+	 * @param guard 防重放
+	 */
+	public void setReplayGuard(ReplayGuard guard) {
+		m_ReplayGuard = guard;
+	}
+
+	@Override
+	public String getType() {
+		return Header.AUTH_TYPE_AES;
+	}
+
+	@Override
+	public Output encode(Input in) throws AuthException {
+		if (StringUtil.isEmpty(in.accessId)) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "access id值不能为空");
+		}
+		if (null == in.accessKey || 0 == in.accessKey.length) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "access key值不能为空");
+		}
+		// 每次加密都使用新的noise（不沿用in.noise），以免重复
+		String noise = NoiseGenerator.next();
+		String sign = sign(in.serviceName, in.accessId, in.accessKey, noise, in.tag, in.channel);
+		byte[] iv = newIv();
+		Cipher cipher = _Cipher.get();
+		init(cipher, Cipher.ENCRYPT_MODE, in.accessKey, noise, iv, 0, sign);
+		byte[] data = new byte[IV_LENGTH + cipher.getOutputSize(in.dataLength)];
+		System.arraycopy(iv, 0, data, 0, IV_LENGTH);
+		int size;
+		try {
+			size = cipher.doFinal(in.data, in.dataOffset, in.dataLength, data, IV_LENGTH);
+		} catch (GeneralSecurityException e) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, e);
+		}
+		Output out = new Output();
+		out.noise = noise;
+		out.sign = sign;
+		out.data = data;
+		out.dataOffset = 0;
+		out.dataLength = IV_LENGTH + size;
+		return out;
+	}
+
+	@Override
+	public Output decode(Input in) throws AuthException {
+		if (StringUtil.isEmpty(in.accessId)) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "access id值不能为空");
+		}
+		if (null == in.accessKey || 0 == in.accessKey.length) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "access key值不能为空");
+		}
+		if (StringUtil.isEmpty(in.noise)) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "Noise值不能为空");
+		}
+		if (StringUtil.isEmpty(in.sign)) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "Sign值不能为空");
+		}
+		String sign = sign(in.serviceName, in.accessId, in.accessKey, in.noise, in.tag, in.channel);
+		if (!sign.equals(in.sign)) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "签名不一致");
+		}
+		if (in.dataLength < IV_LENGTH + TAG_BITS / 8) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "内容不完整");
+		}
+		Cipher cipher = _Cipher.get();
+		init(cipher, Cipher.DECRYPT_MODE, in.accessKey, in.noise, in.data, in.dataOffset, sign);
+		Output out = new Output();
+		out.noise = in.noise;
+		out.sign = sign;
+		try {
+			out.data = cipher.doFinal(in.data, in.dataOffset + IV_LENGTH, in.dataLength - IV_LENGTH);
+		} catch (AEADBadTagException e) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "内容验证失败");
+		} catch (GeneralSecurityException e) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, e);
+		}
+		// 内容验证通过后才登记noise（同Sha2AuthEngine）
+		if (null != m_ReplayGuard && !m_ReplayGuard.check(in.accessId, in.noise)) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "Noise值过期或重复（重放）:" + in.noise);
+		}
+		out.dataOffset = 0;
+		out.dataLength = out.data.length;
+		return out;
+	}
+
+	/**
+	 * 生成随机的IV
+	 */
+	static byte[] newIv() {
+		byte[] iv = new byte[IV_LENGTH];
+		_Random.nextBytes(iv);
+		return iv;
+	}
+
+	/**
+	 * 计算头信息的签名
+	 */
+	static String sign(String service, String accessId, byte[] accessKey, String noise, String tag, String channel)
+			throws AuthException {
+		try {
+			// 内容签名的位置放验证类型，使此签名不能用于WF-SHA2（其内容签名是内容的摘要）
+			return Sha2Signer.sign(service, accessId, accessKey, noise, tag, channel, Header.AUTH_TYPE_AES);
+		} catch (Exception e) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, e);
+		}
+	}
+
+	static Cipher newCipher() {
+		try {
+			return Cipher.getInstance(TRANSFORMATION);
+		} catch (GeneralSecurityException e) {
+			// Java 8起JCE都有此实现
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 以access key及noise导出的密钥与指定的IV初始化加密器
+	 * 
+	 * @param cipher    加密器
+	 * @param mode      Cipher.ENCRYPT_MODE或Cipher.DECRYPT_MODE
+	 * @param accessKey access key
+	 * @param noise     noise
+	 * @param iv        IV所在的数组
+	 * @param ivOffset  IV在数组中的位置（长度为{@linkplain #IV_LENGTH}）
+	 * @param sign      头信息的签名，作为附加验证数据
+	 */
+	static void init(Cipher cipher, int mode, byte[] accessKey, String noise, byte[] iv, int ivOffset, String sign)
+			throws AuthException {
+		try {
+			cipher.init(mode, deriveKey(accessKey, noise), new GCMParameterSpec(TAG_BITS, iv, ivOffset, IV_LENGTH));
+			cipher.updateAAD(sign.getBytes(StandardCharsets.US_ASCII));
+		} catch (GeneralSecurityException e) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, e);
+		}
+	}
+
+	/**
+	 * HKDF（RFC 5869）导出密钥：PRK = HMAC(salt, access key)，key = HMAC(PRK, noise + 0x01)的前16字节
+	 */
+	static SecretKeySpec deriveKey(byte[] accessKey, String noise) throws GeneralSecurityException {
+		Mac mac = _Mac.get();
+		// extract
+		mac.init(new SecretKeySpec(SALT, HMAC));
+		byte[] prk = mac.doFinal(accessKey);
+		// expand（只需一块）
+		mac.init(new SecretKeySpec(prk, HMAC));
+		mac.update(noise.getBytes(StandardCharsets.UTF_8));
+		mac.update((byte) 1);
+		return new SecretKeySpec(mac.doFinal(), 0, KEY_LENGTH, "AES");
+	}
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+
+import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.common.util.Bytes;
+import cn.weforward.common.util.StringUtil;
+import cn.weforward.protocol.Access;
+import cn.weforward.protocol.Header;
+import cn.weforward.protocol.exception.AuthException;
+
+/**
+ * {@link Header#AUTH_TYPE_AES}验证器
+ * <p>
+ * 签名只涉及头信息，编码时头信息可先于内容输出；内容先输出随机的IV，再边写边加密，验证标签在finish时输出。
+ * 解码时由内容开头的IV初始化解密器，JCE的GCM实现须在校验验证标签后才输出明文，因此明文在finish时才转发
+ * 
+ * @author zhangpengji
+ *
+ */
+public class AesOutputStream extends AutherOutputStream {
+
+	protected Cipher m_Cipher;
+	/** 加/解密输出的缓冲区 */
+	protected byte[] m_Buffer;
+	/** IV（编码时待输出，解码时由内容开头读入） */
+	protected byte[] m_Iv;
+	/** 编码时IV是否已输出，解码时已读入IV的字节数 */
+	protected int m_IvSize;
+	/** 解码时读入IV后初始化解密器所需的参数 */
+	protected byte[] m_AccessKey;
+	/** 解码时内容验证通过后检查重放所需的access id及noise */
+	protected String m_AccessId;
+	protected String m_Noise;
+	protected String m_Sign;
+	/** 单字节写入的缓冲区 */
+	protected byte[] m_One;
+
+	@Override
+	protected Header authHeader(Header header) throws AuthException {
+		if (MODE_DECODE == m_Mode) {
+			decodeHeader(header);
+		} else {
+			encodeHeader(header);
+		}
+		return header;
+	}
+
+	void decodeHeader(Header header) throws AuthException {
+		String service = header.getService();
+		if (StringUtil.isEmpty(service)) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "缺少'service'");
+		}
+		String accessId = header.getAccessId();
+		if (StringUtil.isEmpty(accessId)) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "缺少'access id'");
+		}
+		String noise = header.getNoise();
+		if (StringUtil.isEmpty(noise)) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "缺少'noise'");
+		}
+		String sign = header.getSign();
+		if (StringUtil.isEmpty(sign)) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "缺少'sign'");
+		}
+		Access access = m_AccessLoader.getValidAccess(accessId);
+		if (null == access) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "'access id'无效:" + accessId);
+		}
+		String sign2 = AesAuthEngine.sign(service, accessId, access.getAccessKey(), noise, header.getTag(),
+				header.getChannel());
+		if (!sign2.equals(sign)) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "签名不一致");
+		}
+		// 解密器在读入内容开头的IV后才能初始化
+		m_Cipher = AesAuthEngine.newCipher();
+		m_AccessKey = access.getAccessKey();
+		m_AccessId = accessId;
+		m_Noise = noise;
+		m_Sign = sign;
+		m_Iv = new byte[AesAuthEngine.IV_LENGTH];
+		m_IvSize = 0;
+	}
+
+	void encodeHeader(Header header) throws AuthException {
+		String service = header.getService();
+		if (StringUtil.isEmpty(service)) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "缺少'service'");
+		}
+		String accessId = header.getAccessId();
+		if (StringUtil.isEmpty(accessId)) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "缺少'access id'");
+		}
+		Access access = m_AccessLoader.getValidAccess(accessId);
+		if (null == access) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "'access id'无效");
+		}
+		String noise = NoiseGenerator.next();
+		header.setNoise(noise);
+		String sign = AesAuthEngine.sign(service, accessId, access.getAccessKey(), noise, header.getTag(),
+				header.getChannel());
+		header.setSign(sign);
+		m_Cipher = AesAuthEngine.newCipher();
+		m_Iv = AesAuthEngine.newIv();
+		m_IvSize = 0;
+		AesAuthEngine.init(m_Cipher, Cipher.ENCRYPT_MODE, access.getAccessKey(), noise, m_Iv, 0, sign);
+	}
+
+	/**
+	 * 编码时在密文前输出IV（只一次）
+	 */
+	private void writeIv() throws IOException {
+		if (0 == m_IvSize) {
+			m_IvSize = m_Iv.length;
+			forward(m_Iv, 0, m_Iv.length);
+		}
+	}
+
+	/**
+	 * 解码时由内容开头读入IV，读满后初始化解密器
+	 * 
+	 * @return 读入的字节数
+	 */
+	private int readIv(byte[] data, int off, int len) throws AuthException {
+		int count = Math.min(len, m_Iv.length - m_IvSize);
+		System.arraycopy(data, off, m_Iv, m_IvSize, count);
+		m_IvSize += count;
+		if (m_IvSize == m_Iv.length) {
+			AesAuthEngine.init(m_Cipher, Cipher.DECRYPT_MODE, m_AccessKey, m_Noise, m_Iv, 0, m_Sign);
+			m_AccessKey = null;
+		}
+		return count;
+	}
+
+	@Override
+	protected boolean isIgnoreContent() {
+		// 内容是密文，不能忽略
+		return false;
+	}
+
+	@Override
+	protected void doFinal() throws AuthException, IOException {
+		if (isMode(MODE_DECODE)) {
+			if (m_IvSize < m_Iv.length) {
+				throw new AuthException(AuthException.CODE_AUTH_FAIL, "内容不完整");
+			}
+		} else {
+			writeIv();
+		}
+		int size;
+		try {
+			size = m_Cipher.doFinal(openBuffer(0), 0);
+		} catch (AEADBadTagException e) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "内容验证失败");
+		} catch (GeneralSecurityException e) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, e);
+		}
+		if (isMode(MODE_DECODE)) {
+			// 明文在此才转发，内容验证通过后再检查重放，篡改了内容的请求不会占用noise
+			ReplayGuard guard = m_ReplayGuard;
+			if (null != guard && !guard.check(m_AccessId, m_Noise)) {
+				throw new AuthException(AuthException.CODE_AUTH_FAIL, "'noise'过期或重复（重放）:" + m_Noise);
+			}
+		}
+		forward(m_Buffer, 0, size);
+		m_Buffer = null;
+		if (isMode(MODE_ENCODE) && null != m_Forward) {
+			m_Forward.flush();
+		}
+	}
+
+	/**
+	 * 取足够容纳加/解密len字节输出的缓冲区
+	 */
+	private byte[] openBuffer(int len) {
+		int size = m_Cipher.getOutputSize(len);
+		if (null == m_Buffer || m_Buffer.length < size) {
+			m_Buffer = new byte[Math.max(size, 1024)];
+		}
+		return m_Buffer;
+	}
+
+	@Override
+	protected void update(byte[] data, int off, int len) throws AuthException, IOException {
+		if (len <= 0) {
+			return;
+		}
+		if (isMode(MODE_DECODE)) {
+			if (m_IvSize < m_Iv.length) {
+				int n = readIv(data, off, len);
+				off += n;
+				len -= n;
+				if (len <= 0) {
+					return;
+				}
+			}
+		} else {
+			writeIv();
+		}
+		int size;
+		try {
+			size = m_Cipher.update(data, off, len, openBuffer(len), 0);
+		} catch (GeneralSecurityException e) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, e);
+		}
+		if (size > 0) {
+			forward(m_Buffer, 0, size);
+		}
+	}
+
+	@Override
+	protected void update(int b) throws AuthException, IOException {
+		byte[] one = m_One;
+		if (null == one) {
+			one = new byte[1];
+			m_One = one;
+		}
+		one[0] = (byte) b;
+		update(one, 0, 1);
+	}
+
+	@Override
+	protected int update(ByteBuffer src) throws IOException, AuthException {
+		int count = src.remaining();
+		if (src.hasArray()) {
+			update(src.array(), src.arrayOffset() + src.position(), count);
+			src.position(src.limit());
+			return count;
+		}
+		byte[] buf = Bytes.Pool._8k.poll();
+		try {
+			while (src.hasRemaining()) {
+				int len = Math.min(buf.length, src.remaining());
+				src.get(buf, 0, len);
+				update(buf, 0, len);
+			}
+		} finally {
+			Bytes.Pool._8k.offer(buf);
+		}
+		return count;
+	}
+
+	@Override
+	protected int update(InputStream src, int count) throws IOException, AuthException {
+		return BytesOutputStream.transfer(src, this, count);
+	}
+}
@@ -56,6 +56,8 @@ public interface AuthEngine {
 		public byte[] data;
 		public int dataOffset;
 		public int dataLength;
+		/** 接收内容时已计算的SHA-256摘要，为null时由data计算 */
+		public byte[] contentDigest;
 	}
 
 	/**
@@ -19,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.common.io.InputStreamDigest;
 import cn.weforward.common.util.Bytes;
 import cn.weforward.protocol.Access;
 import cn.weforward.protocol.AccessLoader;
@@ -70,6 +71,8 @@ public class Auther {
 				e = new Sha2AuthEngine();
 			} else if (Header.AUTH_TYPE_SIGN.equals(type) || type.endsWith("-Sign")) {
 				e = new SignAuthEngine();
+			} else if (Header.AUTH_TYPE_AES.equals(type)) {
+				e = new AesAuthEngine();
 			}
 			if (null != e) {
 				putEngine(e);
@@ -96,10 +99,7 @@ public class Auther {
 		if (null == engine) {
 			throw new AuthException(WeforwardException.CODE_AUTH_TYPE_INVALID, "无效的auth_type:" + authType);
 		}
-		BytesOutputStream bos = new BytesOutputStream(input.input);
-		Bytes bytes = bos.getBytes();
-		bos.close();
-		bos = null;
+		Bytes bytes = BytesOutputStream.toBytes(input.input);
 		AuthEngine.Input in = new AuthEngine.Input();
 		Access acc = getAccess(input);
 		if (null != acc) {
@@ -115,6 +115,10 @@ public class Auther {
 		in.data = bytes.getBytes();
 		in.dataOffset = bytes.getOffset();
 		in.dataLength = bytes.getSize();
+		if (!encode && input.input instanceof InputStreamDigest) {
+			// 接收时已计算的内容摘要
+			in.contentDigest = ((InputStreamDigest) input.input).getDigest("SHA-256", in.dataLength);
+		}
 		bytes = null;
 
 		AuthEngine.Output out;
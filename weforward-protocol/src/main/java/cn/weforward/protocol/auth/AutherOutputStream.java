@@ -47,6 +47,8 @@ public abstract class AutherOutputStream extends OutputStream implements OutputS
 	protected Header m_Header;
 	protected HeaderOutput m_HeaderOutput;
 	protected OutputStream m_Forward;
+	/** 解码时使用的防重放，为null则不检查 */
+	protected ReplayGuard m_ReplayGuard = ReplayGuard.getDefault();
 
 	public static final AutherOutputStream getInstance(String authType) {
 		if (Header.AUTH_TYPE_NONE.equals(authType)) {
@@ -58,6 +60,9 @@ public abstract class AutherOutputStream extends OutputStream implements OutputS
 		if (Header.AUTH_TYPE_SIGN.equals(authType)) {
 			return new SignOutputStream();
 		}
+		if (Header.AUTH_TYPE_AES.equals(authType)) {
+			return new AesOutputStream();
+		}
 		return null;
 	}
 
@@ -85,10 +90,24 @@ public abstract class AutherOutputStream extends OutputStream implements OutputS
 		m_Mode = mode;
 		m_AccessLoader = loader;
 		m_IgnoreContent = ignoreContent;
+		// 可能是重复使用
+		m_Cancel = false;
+		m_Header = null;
+		m_HeaderOutput = null;
+		m_Forward = null;
 
 		onInit();
 	}
 
+	/**
+	 * 指定解码时使用的防重放（默认为{@linkplain ReplayGuard#getDefault()}），为null则不检查
+	 * 
+	 * @param guard 防重放
+	 */
+	public void setReplayGuard(ReplayGuard guard) {
+		m_ReplayGuard = guard;
+	}
+
 	protected void onInit() {
 		// 子类可重载
 	}
@@ -102,6 +121,16 @@ public abstract class AutherOutputStream extends OutputStream implements OutputS
 		return mode == m_Mode;
 	}
 
+	/**
+	 * 是否支持指定模式
+	 * 
+	 * @param mode 模式，如：MODE_ENCODE
+	 */
+	public boolean isSupportMode(int mode) {
+		// 子类可重载
+		return MODE_ENCODE == mode || MODE_DECODE == mode;
+	}
+
 	/**
 	 * 验证头信息。
 	 * <p>
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.auth;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.weforward.common.crypto.Hex;
+
+/**
+ * noise生成器
+ * <p>
+ * 格式保持为“毫秒时间戳&lt;&lt;20 | 低20位”，低20位分为线程标识（高8位）及计数（低12位）：
+ * 线程标识在线程首次生成时依次分配，使同一毫秒内不同线程的noise不会相同（超过256个线程时才会复用标识）；
+ * 计数在每毫秒开始时取（当前线程的）随机值，同一毫秒内递增，溢出时借用下一毫秒。
+ * 因此同一线程生成的noise严格递增不重复，且生成时不需要竞争共享的Random
+ * 
+ * @author zhangpengji
+ *
+ */
+public class NoiseGenerator {
+	/** 低位的位数 */
+	static final int LOW_BITS = 20;
+	/** 低位中计数的位数 */
+	static final int COUNTER_BITS = 12;
+	/** 计数的掩码 */
+	static final int COUNTER_MASK = (1 << COUNTER_BITS) - 1;
+
+	/** 分配线程标识的序号 */
+	static final AtomicInteger _Threads = new AtomicInteger(ThreadLocalRandom.current().nextInt());
+
+	static final ThreadLocal<State> _State = new ThreadLocal<State>() {
+		@Override
+		protected State initialValue() {
+			return new State(_Threads.getAndIncrement() & ((1 << (LOW_BITS - COUNTER_BITS)) - 1));
+		}
+	};
+
+	private NoiseGenerator() {
+	}
+
+	/**
+	 * 生成noise
+	 * 
+	 * @return 64位值
+	 */
+	public static long nextLong() {
+		State state = _State.get();
+		long mills = System.currentTimeMillis();
+		long lastMills = state.last >>> LOW_BITS;
+		int counter;
+		if (mills > lastMills) {
+			// 新的一毫秒，计数取随机值，只用计数的一半空间以留出递增的余量
+			counter = ThreadLocalRandom.current().nextInt(1 << (COUNTER_BITS - 1));
+		} else {
+			// 同一毫秒（或时钟回拨），在上一个值上递增，溢出时借用下一毫秒
+			mills = lastMills;
+			counter = (int) (state.last & COUNTER_MASK) + 1;
+			if (counter > COUNTER_MASK) {
+				mills++;
+				counter = 0;
+			}
+		}
+		long n = (mills << LOW_BITS) | state.prefix | counter;
+		state.last = n;
+		return n;
+	}
+
+	/**
+	 * 生成noise
+	 * 
+	 * @return 16个字符的HEX串
+	 */
+	public static String next() {
+		return Hex.toHex64(nextLong());
+	}
+
+	/**
+	 * 线程的生成状态
+	 */
+	static final class State {
+		/** 线程标识（已移到计数之上） */
+		final int prefix;
+		/** 上一个noise */
+		long last;
+
+		State(int id) {
+			prefix = id << COUNTER_BITS;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.auth;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import cn.weforward.common.util.NumberUtil;
+
+/**
+ * 防重放：记录最近出现过的(accessId, noise)，在时间窗口内重复出现的视为重放
+ * <p>
+ * noise须是{@linkplain NoiseGenerator}的格式（16个字符的HEX，高位为毫秒时间戳），其时间不在[当前-窗口, 当前+时钟偏差]内的直接拒绝，
+ * 因此超出窗口的旧noise也不能重放。
+ * <p>
+ * 按时间分为若干个桶，每个桶是一个固定大小的布隆过滤器（位图由AtomicLongArray以CAS置位），
+ * 新的时间段直接替换最旧的桶，因此内存固定且不需要锁。
+ * 布隆过滤器有一定的误判率（把未出现过的误判为重放，被拒绝的请求方使用新的noise重试即可），
+ * 另外同一(accessId, noise)同时并发到达时有极小的机会都通过
+ * 
+ * @author zhangpengji
+ *
+ */
+public class ReplayGuard {
+	/** 是否启用默认的防重放（解码时校验） */
+	public static final boolean ENABLED = "true".equalsIgnoreCase(System.getProperty("ReplayGuard.ENABLED"));
+	/** 默认的时间窗口（秒） */
+	public static final int WINDOW = NumberUtil.toInt(System.getProperty("ReplayGuard.WINDOW"), 60);
+	/** 默认允许的时钟偏差（秒），noise的时间最多比当前时间晚这么多 */
+	public static final int SKEW = NumberUtil.toInt(System.getProperty("ReplayGuard.SKEW"), 10);
+	/** 默认每个桶的位数（2的幂） */
+	public static final int BITS = NumberUtil.toInt(System.getProperty("ReplayGuard.BITS"), 1 << 22);
+
+	/** 桶数 */
+	static final int BUCKETS = 4;
+	/** 每项使用的位数（哈希函数个数） */
+	static final int HASHES = 4;
+
+	static ReplayGuard _Default;
+
+	/** 时间桶 */
+	final AtomicReferenceArray<Bucket> m_Buckets;
+	/** 每个桶覆盖的毫秒数 */
+	final long m_BucketMills;
+	/** 时间窗口（毫秒） */
+	final long m_WindowMills;
+	/** 允许的时钟偏差（毫秒） */
+	final long m_SkewMills;
+	/** 位图掩码 */
+	final int m_Mask;
+	/** 哈希种子，使外部难以构造冲突 */
+	final long m_Seed;
+
+	/**
+	 * 构造，允许的时钟偏差为{@linkplain #SKEW}
+	 * 
+	 * @param window 时间窗口（秒），此时间内重复的noise都能识别
+	 * @param bits   每个桶的位数，将修正为2的幂，越大误判率越低
+	 */
+	public ReplayGuard(int window, int bits) {
+		this(window, SKEW, bits);
+	}
+
+	/**
+	 * 构造
+	 * 
+	 * @param window 时间窗口（秒），此时间内重复的noise都能识别，更早的noise直接拒绝
+	 * @param skew   允许的时钟偏差（秒），时间晚于当前加此偏差的noise直接拒绝
+	 * @param bits   每个桶的位数，将修正为2的幂，越大误判率越低
+	 */
+	public ReplayGuard(int window, int skew, int bits) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("window须大于0：" + window);
+		}
+		if (skew < 0) {
+			throw new IllegalArgumentException("skew不能小于0：" + skew);
+		}
+		m_WindowMills = window * 1000L;
+		m_SkewMills = skew * 1000L;
+		int size = 64;
+		while (size < bits && size < (1 << 30)) {
+			size <<= 1;
+		}
+		m_Mask = size - 1;
+		// 当前桶加上之前的桶须覆盖整个窗口（及时钟偏差，noise最多在其时间前这么久就已到达）
+		m_BucketMills = (m_WindowMills + m_SkewMills + BUCKETS - 2) / (BUCKETS - 1);
+		m_Buckets = new AtomicReferenceArray<Bucket>(BUCKETS);
+		m_Seed = ThreadLocalRandom.current().nextLong();
+	}
+
+	/**
+	 * 默认的防重放（未启用时返回null）
+	 */
+	public static ReplayGuard getDefault() {
+		if (!ENABLED) {
+			return null;
+		}
+		ReplayGuard guard = _Default;
+		if (null == guard) {
+			synchronized (ReplayGuard.class) {
+				guard = _Default;
+				if (null == guard) {
+					guard = new ReplayGuard(WINDOW, BITS);
+					_Default = guard;
+				}
+			}
+		}
+		return guard;
+	}
+
+	/**
+	 * 检查并记录(accessId, noise)
+	 * 
+	 * @param accessId access id
+	 * @param noise    noise
+	 * @return 首次出现返回true，在窗口内已出现过（重放）或noise的时间不在窗口内返回false
+	 */
+	public boolean check(String accessId, String noise) {
+		return check(accessId, noise, System.currentTimeMillis());
+	}
+
+	/**
+	 * 以指定的当前时间检查并记录(accessId, noise)
+	 * 
+	 * @param accessId access id
+	 * @param noise    noise
+	 * @param now      当前时间（毫秒）
+	 * @return 首次出现返回true，在窗口内已出现过（重放）或noise的时间不在窗口内返回false
+	 */
+	public boolean check(String accessId, String noise, long now) {
+		long time = timeOf(noise);
+		if (time < now - m_WindowMills || time > now + m_SkewMills) {
+			// 过期、来自未来或格式不对
+			return false;
+		}
+		long h1 = hash(accessId, noise, m_Seed);
+		long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+		long epoch = now / m_BucketMills;
+		// 之前的桶
+		for (int i = 1; i < BUCKETS; i++) {
+			Bucket b = m_Buckets.get((int) ((epoch - i) % BUCKETS));
+			if (null != b && b.epoch == epoch - i && b.contains(h1, h2, m_Mask)) {
+				return false;
+			}
+		}
+		return !openBucket(epoch).add(h1, h2, m_Mask);
+	}
+
+	/**
+	 * 取当前时间段的桶，过期的桶直接替换
+	 */
+	private Bucket openBucket(long epoch) {
+		int idx = (int) (epoch % BUCKETS);
+		for (;;) {
+			Bucket b = m_Buckets.get(idx);
+			if (null != b && b.epoch >= epoch) {
+				return b;
+			}
+			Bucket fresh = new Bucket(epoch, m_Mask + 1);
+			if (m_Buckets.compareAndSet(idx, b, fresh)) {
+				return fresh;
+			}
+		}
+	}
+
+	/**
+	 * 由noise取得其生成的时间
+	 * 
+	 * @param noise noise
+	 * @return 毫秒时间戳，格式不对时返回-1
+	 */
+	static long timeOf(String noise) {
+		if (null == noise || 16 != noise.length()) {
+			return -1;
+		}
+		long n = 0;
+		for (int i = 0; i < 16; i++) {
+			int d = Character.digit(noise.charAt(i), 16);
+			if (d < 0) {
+				return -1;
+			}
+			n = (n << 4) | d;
+		}
+		return n >>> NoiseGenerator.LOW_BITS;
+	}
+
+	static long hash(String accessId, String noise, long seed) {
+		long h = seed;
+		if (null != accessId) {
+			for (int i = 0; i < accessId.length(); i++) {
+				h = (h ^ accessId.charAt(i)) * 0x100000001b3L;
+			}
+		}
+		h = (h ^ '@') * 0x100000001b3L;
+		for (int i = 0; i < noise.length(); i++) {
+			h = (h ^ noise.charAt(i)) * 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	/** 64位混淆（MurmurHash3的fmix64） */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return "{bits:" + (m_Mask + 1) + ",buckets:" + BUCKETS + ",bucket-mills:" + m_BucketMills + ",window:"
+				+ m_WindowMills + ",skew:" + m_SkewMills + "}";
+	}
+
+	/**
+	 * 时间桶（布隆过滤器）
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	static class Bucket {
+		final long epoch;
+		final AtomicLongArray bits;
+
+		Bucket(long epoch, int size) {
+			this.epoch = epoch;
+			this.bits = new AtomicLongArray(size >>> 6);
+		}
+
+		boolean contains(long h1, long h2, int mask) {
+			for (int i = 0; i < HASHES; i++) {
+				int pos = (int) ((h1 + i * h2) & mask);
+				if (0 == (bits.get(pos >>> 6) & (1L << pos))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * 置位
+		 * 
+		 * @return 之前是否已全部置位（即已存在）
+		 */
+		boolean add(long h1, long h2, int mask) {
+			boolean exists = true;
+			for (int i = 0; i < HASHES; i++) {
+				int pos = (int) ((h1 + i * h2) & mask);
+				int idx = pos >>> 6;
+				long bit = 1L << pos;
+				for (;;) {
+					long word = bits.get(idx);
+					if (0 != (word & bit)) {
+						break;
+					}
+					if (bits.compareAndSet(idx, word, word | bit)) {
+						exists = false;
+						break;
+					}
+				}
+			}
+			return exists;
+		}
+	}
+}
@@ -10,11 +10,7 @@
  */
 package cn.weforward.protocol.auth;
 
-import java.util.Random;
-
 import cn.weforward.common.crypto.Base64;
-import cn.weforward.common.crypto.Hex;
-import cn.weforward.common.util.StringBuilderPool;
 import cn.weforward.common.util.StringUtil;
 import cn.weforward.protocol.Header;
 import cn.weforward.protocol.exception.AuthException;
@@ -28,12 +24,22 @@ import cn.weforward.protocol.exception.WeforwardException;
  */
 public class Sha2AuthEngine implements AuthEngine {
 
-	protected Random m_Random = new Random();
+	/** 防重放，为null则不检查 */
+	protected ReplayGuard m_ReplayGuard = ReplayGuard.getDefault();
 
 	public Sha2AuthEngine() {
 
 	}
 
+	/**
+	 * 指定解码时使用的防重放，为null则不检查
+	 * 
+	 * @param guard 防重放
+	 */
+	public void setReplayGuard(ReplayGuard guard) {
+		m_ReplayGuard = guard;
+	}
+
 	@Override
 	public String getType() {
 		return Header.AUTH_TYPE_SHA2;
@@ -49,43 +55,15 @@ public class Sha2AuthEngine implements AuthEngine {
 		}
 		String noise = in.noise;
 		if (StringUtil.isEmpty(noise)) {
-			// XXX 不能保证不重复
-			long n = System.currentTimeMillis() << 20;
-			int i = m_Random.nextInt();
-			n |= (i & 0xfffff);
-			noise = Hex.toHex64(n);
+			noise = NoiseGenerator.next();
 		}
 		// XXX 识别通信是否安全（例如已使用https），不生成内容签名
 		String dataSign;
 		String sign;
 		try {
-			java.security.MessageDigest md;
-			StringBuilder sb = StringBuilderPool._8k.poll();
-			try {
-				sb.append(in.serviceName);
-				sb.append(in.accessId);
-				sb.append(Base64.encode(in.accessKey));
-				sb.append(noise);
-				if (!StringUtil.isEmpty(in.tag)) {
-					sb.append(in.tag);
-				}
-				if (!StringUtil.isEmpty(in.channel)) {
-					sb.append(in.channel);
-				}
-
-				md = java.security.MessageDigest.getInstance("SHA-256");
-				if (in.dataLength > 0) {
-					md.update(in.data, in.dataOffset, in.dataLength);
-				}
-				dataSign = Base64.encode(md.digest());
-				sb.append(dataSign);
-
-				md.reset();
-				md.update(sb.toString().getBytes("utf-8"));
-			} finally {
-				StringBuilderPool._8k.offer(sb);
-			}
-			sign = Base64.encode(md.digest());
+			dataSign = Sha2Signer.contentSign(in.data, in.dataOffset, in.dataLength);
+			sign = Sha2Signer.sign(in.serviceName, in.accessId, in.accessKey, noise, in.tag, in.channel,
+					dataSign);
 		} catch (Exception e) {
 			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, e);
 		}
@@ -119,29 +97,8 @@ public class Sha2AuthEngine implements AuthEngine {
 		}
 		String sign;
 		try {
-			java.security.MessageDigest md;
-			StringBuilder sb = StringBuilderPool._8k.poll();
-			try {
-				sb.append(in.serviceName);
-				sb.append(in.accessId);
-				// sb.append(Base64.encode(in.accessKey));
-				Base64.encode(sb, in.accessKey, 0, in.accessKey.length);
-				sb.append(in.noise);
-				if (!StringUtil.isEmpty(in.tag)) {
-					sb.append(in.tag);
-				}
-				if (!StringUtil.isEmpty(in.channel)) {
-					sb.append(in.channel);
-				}
-				if (!StringUtil.isEmpty(in.contentSign)) {
-					sb.append(in.contentSign);
-				}
-				md = java.security.MessageDigest.getInstance("SHA-256");
-				md.update(sb.toString().getBytes("utf-8"));
-			} finally {
-				StringBuilderPool._8k.offer(sb);
-			}
-			sign = Base64.encode(md.digest());
+			sign = Sha2Signer.sign(in.serviceName, in.accessId, in.accessKey, in.noise, in.tag, in.channel,
+					in.contentSign);
 		} catch (Exception e) {
 			// _Logger.error(e.toString(), e);
 			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, e);
@@ -152,11 +109,14 @@ public class Sha2AuthEngine implements AuthEngine {
 		}
 		String contentSign = null;
 		if (!StringUtil.isEmpty(in.contentSign)) {
-			// 校验内容签名
+			// 校验内容签名（接收时已计算摘要则直接使用）
 			try {
-				java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
-				md.update(in.data, in.dataOffset, in.dataLength);
-				contentSign = Base64.encode(md.digest());
+				byte[] digest = in.contentDigest;
+				if (null == digest) {
+					contentSign = Sha2Signer.contentSign(in.data, in.dataOffset, in.dataLength);
+				} else {
+					contentSign = Base64.encode(digest);
+				}
 			} catch (Exception e) {
 				throw new AuthException(WeforwardException.CODE_AUTH_FAIL, e);
 			}
@@ -165,6 +125,10 @@ public class Sha2AuthEngine implements AuthEngine {
 						"内容签名不一致：" + contentSign + " != " + in.contentSign);
 			}
 		}
+		// 签名（含内容签名）都校验通过后才登记noise，以免篡改内容的请求占用了noise使原请求被当成重放
+		if (null != m_ReplayGuard && !m_ReplayGuard.check(in.accessId, in.noise)) {
+			throw new AuthException(WeforwardException.CODE_AUTH_FAIL, "Noise值过期或重复（重放）:" + in.noise);
+		}
 		Output out = new Output();
 		out.sign = sign;
 		out.contentSign = contentSign;
@@ -16,31 +16,37 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Random;
 
 import cn.weforward.common.crypto.Base64;
-import cn.weforward.common.crypto.Hex;
 import cn.weforward.common.io.BytesOutputStream;
 import cn.weforward.common.io.OutputStreamStay;
-import cn.weforward.common.util.SimpleUtf8Encoder;
 import cn.weforward.common.util.StringUtil;
 import cn.weforward.protocol.Access;
+import cn.weforward.protocol.AccessLoader;
 import cn.weforward.protocol.Header;
 import cn.weforward.protocol.Header.HeaderOutput;
 import cn.weforward.protocol.exception.AuthException;
 
 /**
  * {@link Header#AUTH_TYPE_SHA2}验证器
+ * <p>
+ * 可重复初始化后用于下一个内容，此时摘要、签名前缀（相同service及accessId时）与暂留缓冲区都会沿用
  * 
  * @author zhangpengji
  *
  */
 public class Sha2OutputStream extends AutherOutputStream {
 
-	protected static final Random RANDOM = new Random();
-
 	protected String m_ContentSign;
 	protected MessageDigest m_ContentDigest;
+	/** 上次使用的access */
+	protected Access m_Access;
+	/** 上次使用的access所属的加载器 */
+	protected AccessLoader m_AccessFrom;
+	/** 上次使用的签名前缀 */
+	protected Sha2Signer.Prefix m_SignPrefix;
+	/** 内容暂留的缓冲 */
+	protected OutputStreamStay.Wrap m_Stay;
 
 	@Override
 	protected Header authHeader(Header header) throws AuthException {
@@ -82,28 +88,8 @@ public class Sha2OutputStream extends AutherOutputStream {
 		}
 		String sign2;
 		try {
-			final MessageDigest md = MessageDigest.getInstance("SHA-256");
-			SimpleUtf8Encoder utf8Encoder = new SimpleUtf8Encoder(new OutputStream() {
-
-				@Override
-				public void write(int b) throws IOException {
-					md.update((byte) b);
-				}
-			});
-			utf8Encoder.encode(service);
-			utf8Encoder.encode(accessId);
-			utf8Encoder.encode(access.getAccessKeyBase64());
-			utf8Encoder.encode(noise);
-			if (!StringUtil.isEmpty(header.getTag())) {
-				utf8Encoder.encode(header.getTag());
-			}
-			if (!StringUtil.isEmpty(header.getChannel())) {
-				utf8Encoder.encode(header.getChannel());
-			}
-			if (!StringUtil.isEmpty(contentSign)) {
-				utf8Encoder.encode(contentSign);
-			}
-			sign2 = Base64.encode(md.digest());
+			sign2 = Sha2Signer.sign(openPrefix(service, access), noise, header.getTag(), header.getChannel(),
+					contentSign);
 		} catch (Exception e) {
 			// _Logger.error(e.toString(), e);
 			throw new AuthException(AuthException.CODE_AUTH_FAIL, e);
@@ -111,6 +97,12 @@ public class Sha2OutputStream extends AutherOutputStream {
 		if (!sign2.equals(sign)) {
 			throw new AuthException(AuthException.CODE_AUTH_FAIL, "签名不一致：" + sign2 + " != " + sign);
 		}
+		// 注意：此处顺序不能改为内容签名通过后再检查重放（与Sha2AuthEngine不同），流式解码边校验边转出内容，
+		// 内容签名要到doFinal才校验完，那时内容已交给下游处理，重放再拒绝就晚了；代价是篡改了内容的请求也会占用noise
+		ReplayGuard guard = m_ReplayGuard;
+		if (null != guard && !guard.check(accessId, noise)) {
+			throw new AuthException(AuthException.CODE_AUTH_FAIL, "'noise'过期或重复（重放）:" + noise);
+		}
 
 		if (!isIgnoreContent()) {
 			m_ContentSign = contentSign;
@@ -119,8 +111,13 @@ public class Sha2OutputStream extends AutherOutputStream {
 	}
 
 	MessageDigest openMessageDigest() throws AuthException {
+		if (null != m_ContentDigest) {
+			// 沿用上次的
+			m_ContentDigest.reset();
+			return m_ContentDigest;
+		}
 		try {
-			return MessageDigest.getInstance("SHA-256");
+			return MessageDigest.getInstance(Sha2Signer.ALGORITHM);
 		} catch (NoSuchAlgorithmException e) {
 			// 应该不会发生
 			throw new AuthException(AuthException.CODE_AUTH_FAIL, e);
@@ -137,13 +134,7 @@ public class Sha2OutputStream extends AutherOutputStream {
 			throw new AuthException(AuthException.CODE_AUTH_FAIL, "缺少'access id'");
 		}
 
-		String noise;
-		// XXX 不能保证不重复
-		long n = System.currentTimeMillis() << 20;
-		int i = RANDOM.nextInt();
-		n |= (i & 0xfffff);
-		noise = Hex.toHex64(n);
-		header.setNoise(noise);
+		header.setNoise(NoiseGenerator.next());
 
 		if (isIgnoreContent()) {
 			String sign = genSign(header);
@@ -155,44 +146,50 @@ public class Sha2OutputStream extends AutherOutputStream {
 	}
 
 	protected String genSign(Header header) throws AuthException {
-		Access access = m_AccessLoader.getValidAccess(header.getAccessId());
-		if (null == access) {
-			throw new AuthException(AuthException.CODE_AUTH_FAIL, "'access id'无效");
+		String accessId = header.getAccessId();
+		Access access = m_Access;
+		// 沿用的access期间可能已被吊销或过期，失效了则重新获取
+		if (null == access || m_AccessFrom != m_AccessLoader || !access.getAccessId().equals(accessId)
+				|| !access.isValid()) {
+			access = m_AccessLoader.getValidAccess(accessId);
+			if (null == access) {
+				throw new AuthException(AuthException.CODE_AUTH_FAIL, "'access id'无效");
+			}
+			// 编码时同一个验证器的多个内容通常是同一个access
+			m_Access = access;
+			m_AccessFrom = m_AccessLoader;
 		}
 		try {
-			final java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
-			SimpleUtf8Encoder utf8Encoder = new SimpleUtf8Encoder(new OutputStream() {
-
-				@Override
-				public void write(int b) throws IOException {
-					md.update((byte) b);
-				}
-			});
-			utf8Encoder.encode(header.getService());
-			utf8Encoder.encode(access.getAccessId());
-			utf8Encoder.encode(Base64.encode(access.getAccessKey()));
-			utf8Encoder.encode(header.getNoise());
-			if (!StringUtil.isEmpty(header.getTag())) {
-				utf8Encoder.encode(header.getTag());
-			}
-			if (!StringUtil.isEmpty(header.getChannel())) {
-				utf8Encoder.encode(header.getChannel());
-			}
-			if (!StringUtil.isEmpty(header.getContentSign())) {
-				utf8Encoder.encode(header.getContentSign());
-			}
-			return Base64.encode(md.digest());
+			return Sha2Signer.sign(openPrefix(header.getService(), access), header.getNoise(), header.getTag(),
+					header.getChannel(), header.getContentSign());
 		} catch (Exception e) {
 			throw new AuthException(AuthException.CODE_AUTH_FAIL, e);
 		}
 	}
 
+	private Sha2Signer.Prefix openPrefix(String service, Access access) {
+		Sha2Signer.Prefix prefix = m_SignPrefix;
+		if (null == prefix || !prefix.isMatch(service, access.getAccessId(), access.getAccessKey())) {
+			prefix = Sha2Signer.prefix(service, access.getAccessId(), access.getAccessKey());
+			m_SignPrefix = prefix;
+		}
+		return prefix;
+	}
+
 	@Override
 	public void setTransferTo(HeaderOutput headerOutput, OutputStream forward) throws IOException {
 		if (isMode(MODE_ENCODE)) {
-			OutputStream stay = OutputStreamStay.Wrap.wrap(forward);
-			((OutputStreamStay) stay).stay();
-			forward = stay;
+			if (forward instanceof OutputStreamStay) {
+				((OutputStreamStay) forward).stay();
+			} else {
+				// 沿用上次的暂留缓冲
+				if (null == m_Stay) {
+					m_Stay = new OutputStreamStay.Wrap(forward);
+				} else {
+					m_Stay.reset(forward);
+				}
+				forward = m_Stay;
+			}
 		}
 		super.setTransferTo(headerOutput, forward);
 	}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import cn.weforward.common.crypto.Base64;
+import cn.weforward.common.sys.GcCleaner;
+import cn.weforward.common.util.LruCache;
+import cn.weforward.common.util.NumberUtil;
+import cn.weforward.common.util.StringUtil;
+
+/**
+ * {@link cn.weforward.protocol.Header#AUTH_TYPE_SHA2}签名的计算。
+ * <p>
+ * 签名为SHA-256(service+access id+base64(access key)+noise+tag+channel+content sign)，其前三项对同一访问凭证是固定的，
+ * 按(service, access id)缓存已吸收这部分前缀的摘要状态，每次签名只需在其副本上补充noise等变化的部分；
+ * 内容摘要使用当前线程（重复使用）的摘要实例
+ * 
+ * @author zhangpengji
+ *
+ */
+public class Sha2Signer {
+	/** 摘要算法 */
+	public static final String ALGORITHM = "SHA-256";
+	/** 缓存的前缀摘要状态数 */
+	static final int CACHE_CAPACITY = NumberUtil.toInt(System.getProperty("Sha2Signer.CACHE_CAPACITY"), 1024);
+
+	/** 已吸收前缀的摘要状态 */
+	static final LruCache<String, Prefix> _Prefixes;
+	static {
+		_Prefixes = new LruCache<String, Prefix>(CACHE_CAPACITY, "sha2-sign-prefix");
+		GcCleaner.register(_Prefixes);
+	}
+
+	/** 当前线程的内容摘要 */
+	static final ThreadLocal<MessageDigest> _ContentDigest = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			return newDigest();
+		}
+	};
+
+	/** 当前线程编码（ASCII）字串的缓冲区 */
+	static final ThreadLocal<byte[]> _Ascii = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[128];
+		}
+	};
+
+	/**
+	 * 计算签名
+	 * 
+	 * @param service     服务名
+	 * @param accessId    access id
+	 * @param accessKey   access key
+	 * @param noise       noise
+	 * @param tag         回源标签，可为null
+	 * @param channel     信道，可为null
+	 * @param contentSign 内容签名，可为null
+	 * @return 签名（base64）
+	 */
+	public static String sign(String service, String accessId, byte[] accessKey, String noise, String tag,
+			String channel, String contentSign) {
+		return sign(prefix(service, accessId, accessKey), noise, tag, channel, contentSign);
+	}
+
+	/**
+	 * 由已准备的前缀计算签名，同一前缀的一批签名只需准备一次前缀
+	 * 
+	 * @param prefix      由{@link #prefix(String, String, byte[])}取得的前缀
+	 * @param noise       noise
+	 * @param tag         回源标签，可为null
+	 * @param channel     信道，可为null
+	 * @param contentSign 内容签名，可为null
+	 * @return 签名（base64）
+	 */
+	public static String sign(Prefix prefix, String noise, String tag, String channel, String contentSign) {
+		MessageDigest md = prefix.open();
+		update(md, noise);
+		if (!StringUtil.isEmpty(tag)) {
+			update(md, tag);
+		}
+		if (!StringUtil.isEmpty(channel)) {
+			update(md, channel);
+		}
+		if (!StringUtil.isEmpty(contentSign)) {
+			update(md, contentSign);
+		}
+		return Base64.encode(md.digest());
+	}
+
+	/**
+	 * 计算内容签名（使用当前线程的摘要实例）
+	 * 
+	 * @param data   内容
+	 * @param offset 内容开始位置
+	 * @param length 内容长度
+	 * @return 内容签名（base64）
+	 */
+	public static String contentSign(byte[] data, int offset, int length) {
+		MessageDigest md = _ContentDigest.get();
+		md.reset();
+		if (length > 0) {
+			md.update(data, offset, length);
+		}
+		return Base64.encode(md.digest());
+	}
+
+	/**
+	 * 取（缓存的）前缀摘要状态
+	 * 
+	 * @param service   服务名
+	 * @param accessId  access id
+	 * @param accessKey access key
+	 * @return 前缀
+	 */
+	public static Prefix prefix(String service, String accessId, byte[] accessKey) {
+		// 带上accessId的长度，避免不同的(service, accessId)拼接出相同的键（如"a@b"+"c"与"a"+"b@c"）
+		String key = (null == accessId ? -1 : accessId.length()) + ":" + accessId + '@' + service;
+		Prefix prefix = _Prefixes.get(key);
+		if (null == prefix || !prefix.isMatch(service, accessId, accessKey)) {
+			// 首次或access key已变化
+			prefix = new Prefix(service, accessId, accessKey.clone());
+			_Prefixes.put(key, prefix);
+		}
+		return prefix;
+	}
+
+	/**
+	 * 以UTF-8编码更新摘要，字串是ASCII时避免产生临时的byte[]。
+	 * <p>
+	 * 与原来以StringBuilder拼接一致，null按"null"计算
+	 */
+	static void update(MessageDigest md, String str) {
+		if (null == str) {
+			str = "null";
+		}
+		int len = str.length();
+		byte[] buf = _Ascii.get();
+		if (len > buf.length) {
+			md.update(str.getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		for (int i = 0; i < len; i++) {
+			char ch = str.charAt(i);
+			if (ch >= 0x80) {
+				md.update(str.getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			buf[i] = (byte) ch;
+		}
+		md.update(buf, 0, len);
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// 应该不会发生
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 已吸收前缀（service、accessId、accessKey）的摘要状态（只用于复制，本身不再更新）
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	public static final class Prefix {
+		final String service;
+		final String accessId;
+		final byte[] accessKey;
+		final MessageDigest digest;
+
+		Prefix(String service, String accessId, byte[] accessKey) {
+			this.service = service;
+			this.accessId = accessId;
+			this.accessKey = accessKey;
+			this.digest = newPrefix();
+		}
+
+		/**
+		 * 是否与指定的service、accessId、accessKey相符（缓存命中后仍须逐项核对，不能只依赖缓存键）
+		 */
+		public boolean isMatch(String service, String accessId, byte[] accessKey) {
+			return StringUtil.eq(this.service, service) && StringUtil.eq(this.accessId, accessId)
+					&& Arrays.equals(this.accessKey, accessKey);
+		}
+
+		private MessageDigest newPrefix() {
+			MessageDigest md = newDigest();
+			update(md, service);
+			update(md, accessId);
+			update(md, Base64.encode(accessKey));
+			return md;
+		}
+
+		/**
+		 * 产生前缀摘要状态的副本
+		 */
+		MessageDigest open() {
+			try {
+				return (MessageDigest) digest.clone();
+			} catch (CloneNotSupportedException e) {
+				// 摘要实现不支持复制，只能每次重新计算
+				return newPrefix();
+			}
+		}
+	}
+}
@@ -10,8 +10,6 @@
  */
 package cn.weforward.protocol.auth;
 
-import java.util.Random;
-
 import cn.weforward.common.crypto.Base64;
 import cn.weforward.common.crypto.Hex;
 import cn.weforward.common.util.StringUtil;
@@ -27,8 +25,6 @@ import cn.weforward.protocol.exception.WeforwardException;
  */
 public class SignAuthEngine implements AuthEngine {
 
-	protected Random m_Random = new Random();
-
 	public SignAuthEngine() {
 
 	}
@@ -42,11 +38,7 @@ public class SignAuthEngine implements AuthEngine {
 	public Output encode(Input in) throws AuthException {
 		String noise = in.noise;
 		if (StringUtil.isEmpty(noise)) {
-			// XXX 不能保证不重复
-			long n = System.currentTimeMillis() << 20;
-			int i = m_Random.nextInt();
-			n |= (i & 0xfffff);
-			noise = Hex.toHex64(n);
+			noise = NoiseGenerator.next();
 		}
 		String sign;
 		try {
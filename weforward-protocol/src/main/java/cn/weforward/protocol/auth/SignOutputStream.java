@@ -38,6 +38,11 @@ public class SignOutputStream extends AutherOutputStream {
 	byte[] m_AccessKey;
 	MessageDigest m_MessageDigest;
 
+	@Override
+	public boolean isSupportMode(int mode) {
+		return MODE_DECODE == mode;
+	}
+
 	@Override
 	protected void onInit() {
 		if (isMode(MODE_ENCODE)) {
@@ -17,7 +17,9 @@ import cn.weforward.protocol.RequestConstants;
 import cn.weforward.protocol.Response;
 import cn.weforward.protocol.client.execption.ServiceInvokeException;
 import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.exception.WeforwardException;
 import cn.weforward.protocol.ops.trace.ServiceTraceToken;
+import cn.weforward.protocol.support.DeflateDictionary;
 import cn.weforward.protocol.support.SimpleRequest;
 import cn.weforward.protocol.support.datatype.SimpleDtObject;
 import cn.weforward.protocol.support.datatype.SimpleDtString;
@@ -29,6 +31,10 @@ import cn.weforward.protocol.support.datatype.SimpleDtString;
  *
  */
 public abstract class AbstractServiceInvoker implements ServiceInvoker {
+	/** 对方已确认支持的内容压缩方式（收到过以此方式压缩的响应），之后的请求内容也以此方式压缩 */
+	protected volatile String m_ContentEncoding;
+	/** 对方已确认支持的（非json）内容格式（收到过此格式的响应），之后的请求内容才以此格式提交 */
+	protected volatile String m_AcceptedContentType;
 
 	protected abstract String getServiceName();
 
@@ -75,10 +81,22 @@ public abstract class AbstractServiceInvoker implements ServiceInvoker {
 
 	protected Request createRequest(DtObject invokeInfo, String serviceName) {
 		Header header = new Header(serviceName);
-		header.setContentType(getContentType());
+		String contentType = getContentType();
+		if (!StringUtil.isEmpty(contentType) && !Header.CONTENT_TYPE_JSON.equals(contentType)) {
+			// 声明可接受的格式，对方以此格式响应（确认支持）前仍以json提交
+			header.setAcceptContentType(contentType);
+			if (!contentType.equals(m_AcceptedContentType)) {
+				contentType = Header.CONTENT_TYPE_JSON;
+			}
+		}
+		header.setContentType(contentType);
 		header.setAuthType(getAuthType());
 		header.setCharset(getCharset());
 		header.setAccessId(getAccessId());
+		if (DeflateDictionary.ENABLED) {
+			header.setAcceptEncoding(DeflateDictionary.ENCODING);
+			header.setContentEncoding(m_ContentEncoding);
+		}
 
 		Request request = new SimpleRequest();
 		request.setHeader(header);
@@ -89,4 +107,88 @@ public abstract class AbstractServiceInvoker implements ServiceInvoker {
 		request.setServiceInvoke(invokeInfo);
 		return request;
 	}
+
+	/**
+	 * 由响应的头信息确认对方支持的内容压缩方式。
+	 * <p>
+	 * 请求内容已压缩，而响应未再确认支持时，之后的请求不再压缩；若响应为序列化错误，视为对方不支持，需以不压缩的方式重试
+	 * 
+	 * @param request  请求
+	 * @param response 响应
+	 * @return 是否需要以不压缩的方式重试（请求头已清除压缩方式）
+	 */
+	protected boolean negotiateEncoding(Request request, Response response) {
+		Header header = response.getHeader();
+		String accepted = (null == header) ? null : header.getContentEncoding();
+		if (!DeflateDictionary.isSupport(accepted)) {
+			accepted = null;
+		}
+		Header reqHeader = request.getHeader();
+		if (null == reqHeader || StringUtil.isEmpty(reqHeader.getContentEncoding())) {
+			if (null == m_ContentEncoding && null != accepted) {
+				m_ContentEncoding = accepted;
+			}
+			return false;
+		}
+		if (null == accepted) {
+			// 对方（或中间节点）不再确认支持
+			m_ContentEncoding = null;
+		}
+		if (WeforwardException.CODE_SERIAL_ERROR == response.getResponseCode()) {
+			m_ContentEncoding = null;
+			reqHeader.setContentEncoding(null);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 由响应的内容格式确认对方支持的（请求方声明可接受的）内容格式。
+	 * <p>
+	 * 请求已是此格式，而响应不再是时，之后的请求改回json；若响应为序列化错误，视为对方不支持，需以json重试
+	 * 
+	 * @param request  请求
+	 * @param response 响应
+	 * @return 是否需要以json重试（请求头已改为json）
+	 */
+	protected boolean negotiateContentType(Request request, Response response) {
+		Header reqHeader = request.getHeader();
+		String accept = (null == reqHeader) ? null : reqHeader.getAcceptContentType();
+		if (StringUtil.isEmpty(accept)) {
+			return false;
+		}
+		Header header = response.getHeader();
+		if (null != header && accept.equals(header.getContentType())) {
+			m_AcceptedContentType = accept;
+			return false;
+		}
+		if (!accept.equals(reqHeader.getContentType())) {
+			// 以json提交的请求，对方未确认支持
+			return false;
+		}
+		// 对方（或中间节点）不再确认支持
+		m_AcceptedContentType = null;
+		if (WeforwardException.CODE_SERIAL_ERROR == response.getResponseCode()) {
+			reqHeader.setContentType(Header.CONTENT_TYPE_JSON);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 对方以HTTP 400（旧版本的服务解析不了请求时只响应400且内容为空）拒绝非json格式的请求，视为不支持此格式
+	 * 
+	 * @param request 请求
+	 * @return 是否需要以json重试（请求头已改为json）
+	 */
+	protected boolean rejectContentType(Request request) {
+		Header reqHeader = request.getHeader();
+		String contentType = (null == reqHeader) ? null : reqHeader.getContentType();
+		if (StringUtil.isEmpty(contentType) || Header.CONTENT_TYPE_JSON.equals(contentType)) {
+			return false;
+		}
+		m_AcceptedContentType = null;
+		reqHeader.setContentType(Header.CONTENT_TYPE_JSON);
+		return true;
+	}
 }
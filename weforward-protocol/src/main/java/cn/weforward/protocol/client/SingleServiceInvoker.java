@@ -159,21 +159,30 @@ public class SingleServiceInvoker extends AbstractServiceInvoker {
 				// throw new UnavailableException(responseCode + "/" +
 				// conn.getResponseMessage());
 				// }
-				throw new HttpTransportException(responseCode, conn.getResponseMessage());
+				if (HttpURLConnection.HTTP_BAD_REQUEST != responseCode || !rejectContentType(request)) {
+					throw new HttpTransportException(responseCode, conn.getResponseMessage());
+				}
+				// 对方（旧版本的服务）解析不了请求的内容格式，以json重试
+			} else {
+				in = conn.getInputStream();
+				String service = request.getHeader().getService();
+				Response res;
+				res = m_Producer.fetchResponse(
+						new SimpleProducerInput(toDictionary(conn.getHeaderFields()), in, service));
+				in.close();
+				boolean uncompressed = negotiateEncoding(request, res);
+				if (!negotiateContentType(request, res) && !uncompressed) {
+					return res;
+				}
 			}
-			in = conn.getInputStream();
-			String service = request.getHeader().getService();
-			Response res;
-			res = m_Producer.fetchResponse(
-					new SimpleProducerInput(toDictionary(conn.getHeaderFields()), in, service));
-			in.close();
-			return res;
 		} catch (Exception e) {
 			throw new ServiceInvokeException(e);
 		} finally {
 			close(out);
 			close(in);
 		}
+		// 对方不支持请求的内容格式或压缩方式，重试
+		return invoke(request);
 	}
 
 	protected HttpURLConnection createConnection() throws IOException {
@@ -13,6 +13,7 @@ package cn.weforward.protocol.client.netty;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 
 import cn.weforward.protocol.Header;
 import cn.weforward.protocol.Request;
@@ -29,6 +30,7 @@ import cn.weforward.protocol.datatype.DtObject;
 import cn.weforward.protocol.exception.AuthException;
 import cn.weforward.protocol.exception.SerialException;
 import cn.weforward.protocol.ext.Producer;
+import cn.weforward.protocol.support.SimpleProducer;
 import cn.weforward.protocol.support.SimpleProducer.SimpleProducerInput;
 import cn.weforward.protocol.support.SimpleProducer.SimpleProducerOutput;
 import cn.weforward.protocol.support.datatype.SimpleDtObject;
@@ -122,9 +124,46 @@ public abstract class AbstractNettyServiceInvoker extends AbstractServiceInvoker
 
 	@Override
 	public void invoke(Request request, Listener listener) throws ServiceInvokeException {
+		invoke(new InvokeHandler(request, listener, null));
+	}
+
+	/**
+	 * 批量调用，适用于同一服务的一批（如通知）请求，签名的准备工作由整批共享。
+	 * <p>
+	 * 请求在各自的连接建立后才生成（整批轮流使用同一个生成器），因此同时暂存的只是正在提交的请求。
+	 * 每个请求独立回调listener，生成或提交失败的请求也是：--&gt;fail--&gt;complete
+	 * 
+	 * @param requests 调用请求
+	 * @param listener 监听器
+	 */
+	public void invoke(List<Request> requests, Listener listener) {
+		if (!(m_Producer instanceof SimpleProducer)) {
+			for (Request request : requests) {
+				try {
+					invoke(request, listener);
+				} catch (ServiceInvokeException e) {
+					listener.fail(request, e);
+					listener.complete(request);
+				}
+			}
+			return;
+		}
+		// 整批共享签名的准备工作，各请求在连接建立后才生成
+		SimpleProducer.Batch batch = ((SimpleProducer) m_Producer).openBatch();
+		for (Request request : requests) {
+			try {
+				invoke(new InvokeHandler(request, listener, batch));
+			} catch (ServiceInvokeException e) {
+				listener.fail(request, e);
+				listener.complete(request);
+			}
+		}
+	}
+
+	private void invoke(InvokeHandler handler) throws ServiceInvokeException {
+		Request request = handler.m_Request;
 		ClientContext client = null;
 		try {
-			InvokeHandler handler = new InvokeHandler(request, listener);
 			String serviceName = request.getHeader().getService();
 			client = open().request(handler, getServiceUrl(serviceName), HttpConstants.METHOD_POST);
 			client.setTimeout(getReadTimeout());
@@ -149,10 +188,13 @@ public abstract class AbstractNettyServiceInvoker extends AbstractServiceInvoker
 		ClientContext m_Client;
 		Request m_Request;
 		Listener m_Listener;
+		/** 批量调用时共享的生成器（非线程安全，使用时须同步） */
+		SimpleProducer.Batch m_Batch;
 
-		InvokeHandler(Request request, Listener listener) {
+		InvokeHandler(Request request, Listener listener, SimpleProducer.Batch batch) {
 			m_Listener = listener;
 			m_Request = request;
+			m_Batch = batch;
 		}
 
 		@Override
@@ -167,7 +209,17 @@ public abstract class AbstractNettyServiceInvoker extends AbstractServiceInvoker
 			OutputStream out = null;
 			try {
 				out = m_Client.openRequestWriter();
-				m_Producer.make(m_Request, new SimpleProducerOutput(m_Client, out));
+				SimpleProducer.Batch batch = m_Batch;
+				if (null == batch) {
+					m_Producer.make(m_Request, new SimpleProducerOutput(m_Client, out));
+				} else {
+					// 只在生成时占用共享的生成器，输出在锁外进行
+					SimpleProducer.Prepared prepared;
+					synchronized (batch) {
+						prepared = batch.prepare(m_Request);
+					}
+					prepared.writeTo(new SimpleProducerOutput(m_Client, out));
+				}
 				out.close();
 				out = null;
 			} catch (SerialException | AuthException | IOException e) {
@@ -200,10 +252,17 @@ public abstract class AbstractNettyServiceInvoker extends AbstractServiceInvoker
 		@Override
 		public void responseCompleted() {
 			Response response;
+			boolean uncompressed;
+			boolean rejected;
 			try {
 				int responseCode;
 				responseCode = m_Client.getResponseCode();
 				if (HttpConstants.OK != responseCode) {
+					if (HttpConstants.BAD_REQUEST == responseCode && rejectContentType(m_Request)) {
+						// 对方（旧版本的服务）解析不了请求的内容格式，以json重试
+						retry();
+						return;
+					}
 					fail(new ServiceInvokeException("响应异常:" + responseCode));
 					return;
 				}
@@ -212,10 +271,17 @@ public abstract class AbstractNettyServiceInvoker extends AbstractServiceInvoker
 				response = m_Producer
 						.fetchResponse(new SimpleProducerInput(m_Client.getResponseHeaders(), in, service));
 				in.close();
+				uncompressed = negotiateEncoding(m_Request, response);
+				rejected = negotiateContentType(m_Request, response);
 			} catch (SerialException | AuthException | IOException e) {
 				fail(e);
 				return;
 			}
+			if (rejected || uncompressed) {
+				// 对方不支持请求的内容格式或压缩方式，重试
+				retry();
+				return;
+			}
 			Listener listener = m_Listener;
 			if (null == listener) {
 				return;
@@ -225,6 +291,23 @@ public abstract class AbstractNettyServiceInvoker extends AbstractServiceInvoker
 			listener.complete(m_Request);
 		}
 
+		/**
+		 * 以（已修正了头信息的）请求重新调用
+		 */
+		private void retry() {
+			Listener listener = m_Listener;
+			if (null == listener) {
+				return;
+			}
+			m_Listener = null;
+			try {
+				AbstractNettyServiceInvoker.this.invoke(m_Request, listener);
+			} catch (ServiceInvokeException e) {
+				listener.fail(m_Request, e);
+				listener.complete(m_Request);
+			}
+		}
+
 		@Override
 		public void responseTimeout() {
 			fail(null);
@@ -0,0 +1,429 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.client.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.weforward.common.execption.InvalidFormatException;
+import cn.weforward.common.json.JsonUtil;
+import cn.weforward.common.json.StringInput;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtDate;
+import cn.weforward.protocol.ext.ObjectMapper;
+import cn.weforward.protocol.ext.ObjectMapperSet;
+import cn.weforward.protocol.serial.JsonDtList;
+import cn.weforward.protocol.serial.JsonDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtBoolean;
+import cn.weforward.protocol.support.datatype.SimpleDtNumber;
+import cn.weforward.protocol.support.datatype.SimpleDtString;
+
+/**
+ * 由Json串直接绑定为Java对象（按目标类型驱动解析，不构造中间的DtBase），转换规则与
+ * {@linkplain MappedUtil#fromBase(Class, Class, DtBase, ObjectMapperSet)}一致
+ * 
+ * @author daibo
+ *
+ */
+class JsonBeanBinder {
+	static final int SKIP_BLANK_LIMIT = 100;
+	static final char INVALID_CHAR = 0xffff;
+
+	final StringInput m_Input;
+	final ObjectMapperSet m_MapperSet;
+	/** 读取过头的残余字符（若值不为INVALID_CHAR时） */
+	char m_Remain;
+	StringBuilder m_Builder;
+
+	JsonBeanBinder(StringInput in, ObjectMapperSet set) {
+		m_Input = in;
+		m_MapperSet = set;
+		m_Remain = INVALID_CHAR;
+		m_Builder = new StringBuilder();
+	}
+
+	/**
+	 * 由Json对象串绑定为Java对象
+	 * 
+	 * @param in    Json对象串
+	 * @param clazz 对象类
+	 * @param set   映射器集合
+	 * @return 对象
+	 * @throws IOException 格式有误时抛出
+	 */
+	static Object bind(StringInput in, Class<?> clazz, ObjectMapperSet set) throws IOException {
+		JsonBeanBinder binder = new JsonBeanBinder(in, set);
+		char first = binder.next();
+		if ('{' != first) {
+			throw new InvalidFormatException("不是预期的'" + first + "' " + in);
+		}
+		return binder.readBean(clazz, in.position() - 1);
+	}
+
+	private char next() throws IOException {
+		char ch = m_Remain;
+		if (INVALID_CHAR != ch) {
+			m_Remain = INVALID_CHAR;
+			return ch;
+		}
+		return JsonUtil.skipBlank(m_Input, SKIP_BLANK_LIMIT);
+	}
+
+	/**
+	 * 读取值并转换为指定类型，值为null时返回null
+	 */
+	private Object read(Class<?> clazz, Class<?> component) throws IOException {
+		char first = next();
+		int begin = m_Input.position() - 1;
+		if ('"' == first || '\'' == first) {
+			String str = readString(first);
+			if (DtBase.class.isAssignableFrom(clazz)) {
+				return SimpleDtString.valueOf(str);
+			}
+			return fromString(clazz, str);
+		}
+		if ('{' == first) {
+			if (DtBase.class.isAssignableFrom(clazz)) {
+				return new JsonDtObject(m_Input.getString(), begin, skipContainer('{', '}') - begin);
+			}
+			if (Map.class.isAssignableFrom(clazz)) {
+				return readMap(component);
+			}
+			if (isScalar(clazz) || List.class.isAssignableFrom(clazz)) {
+				// 类型不符，交由fromBase抛出异常
+				return mismatch(clazz, new JsonDtObject(m_Input.getString(), begin, skipContainer('{', '}') - begin));
+			}
+			return readBean(clazz, begin);
+		}
+		if ('[' == first) {
+			if (DtBase.class.isAssignableFrom(clazz)) {
+				return new JsonDtList(m_Input.getString(), begin, skipContainer('[', ']') - begin);
+			}
+			if (!List.class.isAssignableFrom(clazz)) {
+				return mismatch(clazz, new JsonDtList(m_Input.getString(), begin, skipContainer('[', ']') - begin));
+			}
+			return readList(component);
+		}
+		String v = readLiteral(first);
+		if ("null".equals(v)) {
+			return null;
+		}
+		return fromLiteral(clazz, v);
+	}
+
+	private Object readBean(Class<?> clazz, int begin) throws IOException {
+		if (null != m_MapperSet) {
+			@SuppressWarnings("unchecked")
+			ObjectMapper<Object> mapper = (ObjectMapper<Object>) m_MapperSet.getObjectMapper(clazz);
+			if (null != mapper) {
+				// 有指定的映射器，只能交由它从DtObject转换
+				int end = skipContainer('{', '}');
+				return mapper.fromDtObject(new JsonDtObject(m_Input.getString(), begin, end - begin));
+			}
+		}
+		MappedUtil.JavaBeanMapper beanMapper = MappedUtil.getJavaBeanMapper(clazz);
+		Object object = beanMapper.newInstance();
+		char ch = next();
+		if ('}' == ch) {
+			return object;
+		}
+		for (;;) {
+			String name = readName(ch);
+			MappedUtil.Setter setter = beanMapper.getSetter(name);
+			if (null == setter) {
+				skipValue();
+			} else {
+				Object v = read(setter.resourceType, setter.component);
+				if (null != v) {
+					setter.set(object, v);
+				}
+			}
+			ch = next();
+			if (',' == ch) {
+				ch = next();
+				continue;
+			}
+			if ('}' == ch) {
+				return object;
+			}
+			throw new InvalidFormatException("不是预期的'" + ch + "' " + m_Input);
+		}
+	}
+
+	private Object readList(Class<?> component) throws IOException {
+		if (null == component) {
+			throw new UnsupportedOperationException("请使用@ResourceExt(component=xxx)指定");
+		}
+		char ch = next();
+		if (']' == ch) {
+			return Arrays.asList();
+		}
+		m_Remain = ch;
+		List<Object> elements = new ArrayList<>();
+		for (;;) {
+			Object v = read(component, null);
+			if (null == v) {
+				v = MappedUtil.fromBase(component, null, null, m_MapperSet);
+			}
+			elements.add(v);
+			ch = next();
+			if (',' == ch) {
+				continue;
+			}
+			if (']' == ch) {
+				return Arrays.asList(elements.toArray());
+			}
+			throw new InvalidFormatException("不是预期的'" + ch + "' " + m_Input);
+		}
+	}
+
+	private Object readMap(Class<?> component) throws IOException {
+		if (null == component) {
+			throw new UnsupportedOperationException("请使用@ResourceExt(component=xxx)指定");
+		}
+		HashMap<String, Object> map = new HashMap<>();
+		char ch = next();
+		if ('}' == ch) {
+			return map;
+		}
+		for (;;) {
+			String name = readName(ch);
+			Object v = read(component, null);
+			if (null == v) {
+				v = MappedUtil.fromBase(component, null, null, m_MapperSet);
+			}
+			map.put(name, v);
+			ch = next();
+			if (',' == ch) {
+				ch = next();
+				continue;
+			}
+			if ('}' == ch) {
+				return map;
+			}
+			throw new InvalidFormatException("不是预期的'" + ch + "' " + m_Input);
+		}
+	}
+
+	private static boolean isScalar(Class<?> clazz) {
+		return clazz.isPrimitive() || String.class == clazz || Number.class.isAssignableFrom(clazz)
+				|| Boolean.class == clazz || Date.class.isAssignableFrom(clazz);
+	}
+
+	private static Object fromString(Class<?> clazz, String str) {
+		if (String.class.isAssignableFrom(clazz)) {
+			return str;
+		}
+		if (Date.class.isAssignableFrom(clazz)) {
+			try {
+				return DtDate.Formater.parse(str);
+			} catch (ParseException e) {
+				return mismatch(clazz, SimpleDtString.valueOf(str));
+			}
+		}
+		if (Boolean.class.isAssignableFrom(clazz) || boolean.class.isAssignableFrom(clazz)) {
+			if ("true".equalsIgnoreCase(str)) {
+				return Boolean.TRUE;
+			}
+			if ("false".equalsIgnoreCase(str)) {
+				return Boolean.FALSE;
+			}
+			return mismatch(clazz, SimpleDtString.valueOf(str));
+		}
+		if (BigInteger.class.isAssignableFrom(clazz)) {
+			return new BigInteger(str);
+		}
+		if (BigDecimal.class.isAssignableFrom(clazz)) {
+			return new BigDecimal(str);
+		}
+		return mismatch(clazz, SimpleDtString.valueOf(str));
+	}
+
+	private static Object fromLiteral(Class<?> clazz, String v) {
+		if ("true".equals(v) || "false".equals(v)) {
+			boolean b = "true".equals(v);
+			if (DtBase.class.isAssignableFrom(clazz)) {
+				return SimpleDtBoolean.valueOf(b);
+			}
+			if (Boolean.class.isAssignableFrom(clazz) || boolean.class.isAssignableFrom(clazz)) {
+				return b;
+			}
+			return mismatch(clazz, SimpleDtBoolean.valueOf(b));
+		}
+		// 是数值
+		Number num;
+		if (-1 != v.indexOf('.')) {
+			num = Double.parseDouble(v);
+		} else {
+			num = Long.parseLong(v);
+		}
+		if (DtBase.class.isAssignableFrom(clazz)) {
+			return SimpleDtNumber.valueOf(num);
+		}
+		if (Short.class.isAssignableFrom(clazz) || short.class.isAssignableFrom(clazz)) {
+			return (short) num.intValue();
+		}
+		if (Integer.class.isAssignableFrom(clazz) || int.class.isAssignableFrom(clazz)) {
+			return num.intValue();
+		}
+		if (Double.class.isAssignableFrom(clazz) || double.class.isAssignableFrom(clazz)) {
+			return num.doubleValue();
+		}
+		if (Long.class.isAssignableFrom(clazz) || long.class.isAssignableFrom(clazz)) {
+			return num.longValue();
+		}
+		if (BigInteger.class.isAssignableFrom(clazz)) {
+			return BigInteger.valueOf(num.longValue());
+		}
+		if (BigDecimal.class.isAssignableFrom(clazz)) {
+			return BigDecimal.valueOf(num.doubleValue());
+		}
+		return mismatch(clazz, SimpleDtNumber.valueOf(num));
+	}
+
+	/**
+	 * 类型不符时交由{@linkplain MappedUtil#fromBase}处理，使异常（及其信息）与之完全一致
+	 */
+	private static Object mismatch(Class<?> clazz, DtBase value) {
+		return MappedUtil.fromBase(clazz, null, value, null);
+	}
+
+	private String readName(char ch) throws IOException {
+		StringBuilder builder = m_Builder;
+		builder.setLength(0);
+		char quot = ch;
+		if ('"' != quot && '\'' != quot) {
+			// 没有引号开首
+			builder.append(quot);
+			quot = 0;
+		}
+		for (;;) {
+			ch = m_Input.readChar();
+			if ('\\' == ch) {
+				JsonUtil.unescape(m_Input, builder);
+				continue;
+			}
+			if (quot == ch) {
+				break;
+			} else if (':' == ch && 0 == quot) {
+				JsonUtil.rtrim(builder);
+				break;
+			}
+			builder.append(ch);
+		}
+		// 找到“:”分隔符
+		while (':' != ch) {
+			ch = m_Input.readChar();
+		}
+		return JsonUtil._NamePool.intern(builder);
+	}
+
+	private String readString(char quot) throws IOException {
+		int begin = m_Input.position();
+		StringBuilder builder = null;
+		for (;;) {
+			char ch = m_Input.readChar();
+			if ('\\' == ch) {
+				if (null == builder) {
+					builder = m_Builder;
+					builder.setLength(0);
+					builder.append(m_Input.getString(), begin, m_Input.position() - 1);
+				}
+				JsonUtil.unescape(m_Input, builder);
+				continue;
+			}
+			if (quot == ch) {
+				break;
+			}
+			if (null != builder) {
+				builder.append(ch);
+			}
+		}
+		if (null == builder) {
+			// 没有转义符，直接截取原串
+			return m_Input.getString().substring(begin, m_Input.position() - 1);
+		}
+		return builder.toString();
+	}
+
+	private String readLiteral(char ch) throws IOException {
+		StringBuilder builder = m_Builder;
+		builder.setLength(0);
+		for (;;) {
+			if (JsonUtil.isBlank(ch)) {
+				break;
+			}
+			if (',' == ch || '}' == ch || ']' == ch) {
+				// 分隔符，要把它放回残余字符供上游读取
+				m_Remain = ch;
+				break;
+			}
+			builder.append(Character.toLowerCase(ch));
+			ch = m_Input.readChar();
+		}
+		return builder.toString();
+	}
+
+	private void skipValue() throws IOException {
+		char first = next();
+		if ('"' == first || '\'' == first) {
+			char ch;
+			while (first != (ch = m_Input.readChar())) {
+				if ('\\' == ch) {
+					m_Input.readChar();
+				}
+			}
+		} else if ('{' == first) {
+			skipContainer('{', '}');
+		} else if ('[' == first) {
+			skipContainer('[', ']');
+		} else {
+			readLiteral(first);
+		}
+	}
+
+	/**
+	 * 跳过对象或数组（开始符已读取）
+	 * 
+	 * @return 结束符之后的位置
+	 */
+	private int skipContainer(char begin, char end) throws IOException {
+		char quot = 0;
+		int depth = 1;
+		for (;;) {
+			char ch = m_Input.readChar();
+			if (0 != quot) {
+				// 在引号中
+				if ('\\' == ch) {
+					m_Input.readChar();
+				} else if (quot == ch) {
+					quot = 0;
+				}
+				continue;
+			}
+			if ('"' == ch || '\'' == ch) {
+				quot = ch;
+			} else if (begin == ch) {
+				depth++;
+			} else if (end == ch && 0 == --depth) {
+				return m_Input.position();
+			}
+		}
+	}
+}
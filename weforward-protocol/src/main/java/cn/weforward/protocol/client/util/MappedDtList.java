@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.client.util;
+
+import java.io.IOException;
+
+import cn.weforward.common.json.JsonOutput;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtList;
+import cn.weforward.protocol.ext.ObjectMapperSet;
+import cn.weforward.protocol.serial.JsonSerialEngine;
+import cn.weforward.protocol.serial.JsonWritable;
+import cn.weforward.protocol.support.datatype.AbstractDtList;
+
+/**
+ * 包装Java集合的DtList，序列化为json时由{@linkplain MappedUtil#toJson(Object, ObjectMapperSet, JsonOutput)}直接输出，
+ * 只在按DtList访问时才转换
+ * 
+ * @author daibo
+ *
+ */
+public class MappedDtList extends AbstractDtList implements JsonWritable {
+	protected final Object m_Value;
+	protected final ObjectMapperSet m_Mappers;
+	protected volatile DtList m_List;
+
+	public MappedDtList(Object value, ObjectMapperSet mappers) {
+		m_Value = value;
+		m_Mappers = mappers;
+	}
+
+	/**
+	 * 包装的Java集合
+	 */
+	public Object getValue() {
+		return m_Value;
+	}
+
+	protected DtList getList() {
+		DtList list = m_List;
+		if (null == list) {
+			list = (DtList) MappedUtil.toBase(m_Value, m_Mappers);
+			m_List = list;
+		}
+		return list;
+	}
+
+	@Override
+	public int size() {
+		return getList().size();
+	}
+
+	@Override
+	protected DtBase getItemInner(int index) {
+		return getList().getItem(index);
+	}
+
+	@Override
+	public void writeJson(JsonOutput output) throws IOException {
+		DtList list = m_List;
+		if (null != list) {
+			JsonSerialEngine.formatList(list, output);
+			return;
+		}
+		MappedUtil.toJson(m_Value, m_Mappers, output);
+	}
+
+	@Override
+	public String toString() {
+		return type().toString() + ' ' + m_Value;
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.client.util;
+
+import java.io.IOException;
+import java.util.Enumeration;
+
+import cn.weforward.common.json.JsonOutput;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.ext.ObjectMapperSet;
+import cn.weforward.protocol.serial.JsonSerialEngine;
+import cn.weforward.protocol.serial.JsonWritable;
+import cn.weforward.protocol.support.datatype.AbstractDtObject;
+
+/**
+ * 包装Java对象的DtObject，序列化为json时由{@linkplain MappedUtil#toJson(Object, ObjectMapperSet, JsonOutput)}直接输出，
+ * 只在按DtObject访问时才转换
+ * 
+ * @author daibo
+ *
+ */
+public class MappedDtObject extends AbstractDtObject implements JsonWritable {
+	protected final Object m_Value;
+	protected final ObjectMapperSet m_Mappers;
+	protected volatile DtObject m_Object;
+
+	public MappedDtObject(Object value, ObjectMapperSet mappers) {
+		m_Value = value;
+		m_Mappers = mappers;
+	}
+
+	/**
+	 * 包装的Java对象
+	 */
+	public Object getValue() {
+		return m_Value;
+	}
+
+	protected DtObject getObject() {
+		DtObject obj = m_Object;
+		if (null == obj) {
+			obj = (DtObject) MappedUtil.toBase(m_Value, m_Mappers);
+			m_Object = obj;
+		}
+		return obj;
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return getObject().getAttributeNames();
+	}
+
+	@Override
+	protected DtBase getAttributeInner(String name) {
+		return getObject().getAttribute(name);
+	}
+
+	@Override
+	public int getAttributeSize() {
+		return getObject().getAttributeSize();
+	}
+
+	@Override
+	public void writeJson(JsonOutput output) throws IOException {
+		DtObject obj = m_Object;
+		if (null != obj) {
+			JsonSerialEngine.formatObject(obj, output);
+			return;
+		}
+		MappedUtil.toJson(m_Value, m_Mappers, output);
+	}
+
+	@Override
+	public String toString() {
+		return type().toString() + ' ' + m_Value;
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.client.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.weforward.common.json.JsonOutput;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtList;
+import cn.weforward.protocol.ext.ObjectMapperSet;
+import cn.weforward.protocol.serial.JsonSerialEngine;
+import cn.weforward.protocol.serial.JsonWritable;
+import cn.weforward.protocol.support.datatype.AbstractDtList;
+import cn.weforward.protocol.support.datatype.SimpleDtList;
+
+/**
+ * 流式输出的DtList，序列化为json时才逐项由迭代器取出并直接输出，不需要先把整个列表读入内存。
+ * <p>
+ * 迭代器只能遍历一次，输出完成（或失败）后关闭数据源；若在输出前按DtList访问，则先完整读取转换（失去流式的作用）。
+ * 若最终没有输出（如验证或序列化失败），须由使用方调用{@linkplain #close()}关闭数据源
+ * 
+ * @author daibo
+ *
+ */
+public class MappedDtStream extends AbstractDtList implements JsonWritable, Closeable {
+	private static final Logger _Logger = LoggerFactory.getLogger(MappedDtStream.class);
+
+	protected final ObjectMapperSet m_Mappers;
+	protected Iterator<?> m_Items;
+	/** 输出完成后要关闭的数据源（可空） */
+	protected AutoCloseable m_Source;
+	protected volatile DtList m_List;
+	/** 是否正在流式输出 */
+	protected boolean m_Writing;
+
+	/**
+	 * 构造
+	 * 
+	 * @param items   项迭代器
+	 * @param mappers 映射器集合
+	 * @param source  输出完成后要关闭的数据源，可空
+	 */
+	public MappedDtStream(Iterator<?> items, ObjectMapperSet mappers, AutoCloseable source) {
+		m_Items = items;
+		m_Mappers = mappers;
+		m_Source = source;
+	}
+
+	protected synchronized DtList getList() {
+		DtList list = m_List;
+		if (null == list) {
+			Iterator<?> it = m_Items;
+			if (null == it) {
+				throw new IllegalStateException(m_Writing ? "流正在输出，不能同时再访问" : "已输出或关闭的流不能再访问");
+			}
+			m_Items = null;
+			List<DtBase> items = new ArrayList<>();
+			try {
+				while (it.hasNext()) {
+					items.add(MappedUtil.toBase(it.next(), m_Mappers));
+				}
+			} finally {
+				close();
+			}
+			list = SimpleDtList.valueOf(items);
+			m_List = list;
+		}
+		return list;
+	}
+
+	@Override
+	public int size() {
+		return getList().size();
+	}
+
+	@Override
+	protected DtBase getItemInner(int index) {
+		return getList().getItem(index);
+	}
+
+	@Override
+	public void writeJson(JsonOutput output) throws IOException {
+		DtList list = m_List;
+		if (null != list) {
+			JsonSerialEngine.formatList(list, output);
+			return;
+		}
+		Iterator<?> it;
+		synchronized (this) {
+			it = m_Items;
+			if (null == it) {
+				if (null == m_List) {
+					throw new IllegalStateException(m_Writing ? "流正在输出，不能同时再输出" : "已输出或关闭的流不能再输出");
+				}
+			} else {
+				m_Items = null;
+				m_Writing = true;
+			}
+		}
+		if (null == it) {
+			// 被并发访问转换了
+			JsonSerialEngine.formatList(m_List, output);
+			return;
+		}
+		try {
+			output.append('[');
+			boolean first = true;
+			while (it.hasNext()) {
+				if (first) {
+					first = false;
+				} else {
+					output.append(',');
+				}
+				MappedUtil.toJson(it.next(), m_Mappers, output);
+			}
+			output.append(']');
+		} finally {
+			synchronized (this) {
+				m_Writing = false;
+			}
+			close();
+		}
+	}
+
+	/**
+	 * 关闭数据源，未输出的项不再输出（之后不能再输出或访问）
+	 */
+	@Override
+	public void close() {
+		AutoCloseable source;
+		synchronized (this) {
+			source = m_Source;
+			m_Source = null;
+			if (!m_Writing) {
+				m_Items = null;
+			}
+		}
+		if (null != source) {
+			try {
+				source.close();
+			} catch (Exception e) {
+				_Logger.warn("忽略关闭异常", e);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return type().toString() + " stream";
+	}
+}
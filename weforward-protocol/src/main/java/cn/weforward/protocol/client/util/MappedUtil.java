@@ -10,6 +10,7 @@
  */
 package cn.weforward.protocol.client.util;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -20,15 +21,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Resource;
 
+import cn.weforward.common.execption.InvalidFormatException;
+import cn.weforward.common.json.JsonNameCache;
+import cn.weforward.common.json.JsonOutput;
+import cn.weforward.common.json.JsonUtil;
+import cn.weforward.common.json.StringInput;
 import cn.weforward.common.util.ClassUtil;
 import cn.weforward.common.util.StringUtil;
 import cn.weforward.protocol.datatype.DtBase;
@@ -38,11 +46,15 @@ import cn.weforward.protocol.datatype.DtList;
 import cn.weforward.protocol.datatype.DtNumber;
 import cn.weforward.protocol.datatype.DtObject;
 import cn.weforward.protocol.datatype.DtString;
+import cn.weforward.protocol.datatype.VisitableDtObject;
 import cn.weforward.protocol.exception.ObjectMappingException;
 import cn.weforward.protocol.ext.ObjectMapper;
 import cn.weforward.protocol.ext.ObjectMapperSet;
+import cn.weforward.protocol.serial.JsonDtObject;
+import cn.weforward.protocol.serial.JsonSerialEngine;
 import cn.weforward.protocol.support.NamingConverter;
 import cn.weforward.protocol.support.PageData;
+import cn.weforward.protocol.support.datatype.AbstractDtObject;
 import cn.weforward.protocol.support.datatype.SimpleDtBoolean;
 import cn.weforward.protocol.support.datatype.SimpleDtDate;
 import cn.weforward.protocol.support.datatype.SimpleDtList;
@@ -59,6 +71,9 @@ import cn.weforward.protocol.support.datatype.SimpleDtString;
 public class MappedUtil {
 	/** 映射表 */
 	private static ConcurrentHashMap<Class<?>, JavaBeanMapper> MAPPER = new ConcurrentHashMap<>();
+	/** 是否由未解析的Json串直接绑定为Java对象 */
+	public static final boolean STREAM_BINDING = "true"
+			.equalsIgnoreCase(System.getProperty("MappedUtil.STREAM_BINDING"));
 
 	/**
 	 * 从参数中解析出对象
@@ -208,12 +223,16 @@ public class MappedUtil {
 					throw new UnsupportedOperationException("请使用@ResourceExt(component=xxx)指定");
 				}
 				DtObject object = (DtObject) params;
-				HashMap<String, Object> map = new HashMap<>();
-				Enumeration<String> e = object.getAttributeNames();
-				while (e.hasMoreElements()) {
-					String name = e.nextElement();
-					map.put(name, fromBase(component, null, object.getAttribute(name), set));
-				}
+				final HashMap<String, Object> map = new HashMap<>();
+				final Class<?> type = component;
+				final ObjectMapperSet mappers = set;
+				AbstractDtObject.forEach(object, new VisitableDtObject.AttributeVisitor<RuntimeException>() {
+
+					@Override
+					public void visit(String name, DtBase value) {
+						map.put(name, fromBase(type, null, value, mappers));
+					}
+				});
 				return map;
 			} else {
 				throw new UnsupportedOperationException("不支持的类型转换:" + params + "=>" + clazz);
@@ -233,14 +252,10 @@ public class MappedUtil {
 					}
 				}
 			}
-			JavaBeanMapper mapper = MAPPER.get(clazz);
-			if (null == mapper) {
-				mapper = new JavaBeanMapper(clazz);
-				JavaBeanMapper old = MAPPER.putIfAbsent(clazz, mapper);
-				if (null != old) {
-					mapper = old;
-				}
+			if (STREAM_BINDING && params instanceof JsonDtObject) {
+				return fromJson(clazz, (JsonDtObject) params, set);
 			}
+			JavaBeanMapper mapper = getJavaBeanMapper(clazz);
 			DtObject dtobject = (DtObject) params;
 			return mapper.formBase(dtobject, set);
 
@@ -248,6 +263,28 @@ public class MappedUtil {
 
 	}
 
+	/**
+	 * 由未解析的Json对象直接绑定为JavaBean，不构造中间的DtBase（不受{@linkplain #STREAM_BINDING}控制）。
+	 * <p>
+	 * 已解析过的Json对象按{@linkplain JavaBeanMapper}转换，结果（包括类型不符时的异常）与fromBase一致
+	 * 
+	 * @param clazz  JavaBean类
+	 * @param params 参数
+	 * @param set    映射器集合
+	 * @return 对象
+	 */
+	public static Object fromJson(Class<?> clazz, JsonDtObject params, ObjectMapperSet set) {
+		StringInput in = params.openJsonInput();
+		if (null == in) {
+			return getJavaBeanMapper(clazz).formBase(params, set);
+		}
+		try {
+			return JsonBeanBinder.bind(in, clazz, set);
+		} catch (IOException | NumberFormatException e) {
+			throw new InvalidFormatException("Json串格式不正确", e);
+		}
+	}
+
 	/**
 	 * 将对象转换成数据
 	 * 
@@ -353,6 +390,188 @@ public class MappedUtil {
 		}
 	}
 
+	/**
+	 * 将对象转换成数据，与{@linkplain #toBase(Object, ObjectMapperSet)}一致，但对象/列表只是包装起来，
+	 * 在序列化为json时才直接输出，不构造中间的Dt对象树
+	 * 
+	 * @param val 值对象
+	 * @param set 映射器集合
+	 * @return 数据
+	 */
+	public static DtBase toDirect(Object val, ObjectMapperSet set) {
+		if (null == val || val instanceof DtBase || val instanceof Boolean || val instanceof String
+				|| val instanceof Number || val instanceof Date || val instanceof Iterator<?>) {
+			return toBase(val, set);
+		}
+		if (val instanceof Iterable<?>) {
+			return new MappedDtList(val, set);
+		}
+		return new MappedDtObject(val, set);
+	}
+
+	/**
+	 * 将对象转换成数据，与{@linkplain #toDirect(Object, ObjectMapperSet)}一致，但迭代器、集合及分页数据的项在序列化时才逐项读取输出（
+	 * {@linkplain MappedDtStream}），输出完成后关闭（若支持）对象
+	 *
+	 * @param val 值对象
+	 * @param set 映射器集合
+	 * @return 数据
+	 */
+	public static DtBase toStream(Object val, ObjectMapperSet set) {
+		AutoCloseable source = (val instanceof AutoCloseable) ? (AutoCloseable) val : null;
+		if (val instanceof PageData) {
+			PageData data = (PageData) val;
+			SimpleDtObject object = new SimpleDtObject();
+			object.put("count", data.getCount());
+			object.put("page", data.getPage());
+			object.put("page_size", data.getPageSize());
+			object.put("page_count", data.getPageCount());
+			object.put("pos", data.getPos());
+			object.put("items", new MappedDtStream(data.getItems().iterator(), set, source));
+			return object;
+		}
+		if (val instanceof Iterator<?>) {
+			return new MappedDtStream((Iterator<?>) val, set, source);
+		}
+		if (val instanceof Iterable<?>) {
+			return new MappedDtStream(((Iterable<?>) val).iterator(), set, source);
+		}
+		return toDirect(val, set);
+	}
+
+	/**
+	 * 将对象直接输出为json，结果与先{@linkplain #toBase(Object, ObjectMapperSet)}再序列化一致。
+	 * <p>
+	 * 例外是Map：键为null的项被忽略；多个键（toString并转换属性名后）相同时只输出首个（而不是toBase的后者覆盖前者）
+	 * 
+	 * @param val 值对象
+	 * @param set 映射器集合
+	 * @param out 输出
+	 * @throws IOException IO异常时抛出
+	 */
+	public static void toJson(Object val, ObjectMapperSet set, JsonOutput out) throws IOException {
+		if (null == val) {
+			out.append("null");
+		} else if (val instanceof DtBase) {
+			JsonSerialEngine.formatValue((DtBase) val, out);
+		} else if (val instanceof Boolean) {
+			out.append(((Boolean) val) ? "true" : "false");
+		} else if (val instanceof String) {
+			writeString((String) val, out);
+		} else if (val instanceof Short || val instanceof Integer) {
+			out.append(String.valueOf(((Number) val).intValue()));
+		} else if (val instanceof Long) {
+			out.append(String.valueOf(((Long) val).longValue()));
+		} else if (val instanceof Float || val instanceof Double) {
+			double d = ((Number) val).doubleValue();
+			if (0 == d || 1 == d || 2 == d) {
+				// 与SimpleDtNumber.valueOf(double)一致
+				out.append(String.valueOf((int) d));
+			} else {
+				out.append(String.valueOf(d));
+			}
+		} else if (val instanceof Date) {
+			writeString(DtDate.Formater.formatDateTime((Date) val), out);
+		} else if (val instanceof BigInteger || val instanceof BigDecimal) {
+			writeString(val.toString(), out);
+		} else if (val instanceof Iterable<?>) {
+			out.append('[');
+			boolean first = true;
+			for (Object v : (Iterable<?>) val) {
+				if (first) {
+					first = false;
+				} else {
+					out.append(',');
+				}
+				toJson(v, set, out);
+			}
+			out.append(']');
+		} else if (val instanceof Iterator<?>) {
+			out.append('[');
+			Iterator<?> it = (Iterator<?>) val;
+			boolean first = true;
+			while (it.hasNext()) {
+				if (first) {
+					first = false;
+				} else {
+					out.append(',');
+				}
+				toJson(it.next(), set, out);
+			}
+			out.append(']');
+		} else if (val instanceof Map<?, ?>) {
+			out.append('{');
+			Set<String> names = new HashSet<String>();
+			for (Map.Entry<?, ?> e : ((Map<?, ?>) val).entrySet()) {
+				Object k = e.getKey();
+				if (null == k) {
+					// json属性名不能为null
+					continue;
+				}
+				// 与toBase的SimpleDtObject一样转换属性名
+				String name = NamingConverter.camelToWf(k.toString());
+				if (!names.add(name)) {
+					// 不同的键转换后相同，只输出首个
+					continue;
+				}
+				if (names.size() > 1) {
+					out.append(',');
+				}
+				writeName(name, out);
+				toJson(e.getValue(), set, out);
+			}
+			out.append('}');
+		} else if (val instanceof PageData) {
+			PageData data = (PageData) val;
+			out.append('{');
+			writeName("count", out);
+			out.append(String.valueOf(data.getCount())).append(',');
+			writeName("page", out);
+			out.append(String.valueOf(data.getPage())).append(',');
+			writeName("page_size", out);
+			out.append(String.valueOf(data.getPageSize())).append(',');
+			writeName("page_count", out);
+			out.append(String.valueOf(data.getPageCount())).append(',');
+			writeName("pos", out);
+			out.append(String.valueOf(data.getPos())).append(',');
+			writeName("items", out);
+			toJson(data.getItems(), set, out);
+			out.append('}');
+		} else {
+			if (null != set) {
+				@SuppressWarnings("unchecked")
+				ObjectMapper<Object> mapper = (ObjectMapper<Object>) set.getObjectMapper(val.getClass());
+				if (null != mapper) {
+					JsonSerialEngine.formatObject(mapper.toDtObject(val), out);
+					return;
+				}
+			}
+			getJavaBeanMapper(val.getClass()).toJson(val, set, out);
+		}
+	}
+
+	private static void writeString(String str, JsonOutput out) throws IOException {
+		out.append('"');
+		JsonUtil.escape(str, out);
+		out.append('"');
+	}
+
+	private static void writeName(String name, JsonOutput out) throws IOException {
+		JsonSerialEngine.formatName(name, out);
+	}
+
+	static JavaBeanMapper getJavaBeanMapper(Class<?> clazz) {
+		JavaBeanMapper mapper = MAPPER.get(clazz);
+		if (null == mapper) {
+			mapper = new JavaBeanMapper(clazz);
+			JavaBeanMapper old = MAPPER.putIfAbsent(clazz, mapper);
+			if (null != old) {
+				mapper = old;
+			}
+		}
+		return mapper;
+	}
+
 	/**
 	 * 装箱
 	 * 
@@ -458,22 +677,7 @@ public class MappedUtil {
 
 		public Object formBase(DtObject dtobject, ObjectMapperSet set) {
 			Method[] ms = m_Clazz.getMethods();
-			Constructor<?> c;
-			try {
-				c = m_Clazz.getDeclaredConstructor();
-			} catch (NoSuchMethodException | SecurityException e) {
-				throw new UnsupportedOperationException(m_Clazz + "无空构造");
-			}
-			Object object;
-			try {
-				if (!c.isAccessible()) {
-					c.setAccessible(true);
-				}
-				object = c.newInstance();
-			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-					| InvocationTargetException e) {
-				throw new RuntimeException("构造异常", e);
-			}
+			Object object = newInstance();
 			for (int i = 0; i < ms.length; i++) {
 				Method m = ms[i];
 				if (m.getParameterTypes().length != 1) {
@@ -518,6 +722,133 @@ public class MappedUtil {
 			return object;
 		}
 
+		public Object newInstance() {
+			Constructor<?> c;
+			try {
+				c = m_Clazz.getDeclaredConstructor();
+			} catch (NoSuchMethodException | SecurityException e) {
+				throw new UnsupportedOperationException(m_Clazz + "无空构造");
+			}
+			try {
+				if (!c.isAccessible()) {
+					c.setAccessible(true);
+				}
+				return c.newInstance();
+			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
+					| InvocationTargetException e) {
+				throw new RuntimeException("构造异常", e);
+			}
+		}
+
+		/** 缓存的属性设置方法（按属性名） */
+		protected volatile Map<String, Setter> m_Setters;
+
+		public Setter getSetter(String name) {
+			Map<String, Setter> setters = m_Setters;
+			if (null == setters) {
+				setters = new HashMap<>();
+				for (Method m : m_Clazz.getMethods()) {
+					if (m.getParameterTypes().length != 1 || !m.getName().startsWith("set")) {
+						continue;
+					}
+					String n = m.getName();
+					Class<?> resourceType = null;
+					Resource res = m.getAnnotation(Resource.class);
+					if (null != res) {
+						resourceType = res.type();
+					}
+					Class<?> methodType = m.getParameterTypes()[0];
+					if (resourceType == null || resourceType == Object.class) {
+						resourceType = methodType;
+					}
+					Class<?> methodComponent;
+					if (List.class.isAssignableFrom(methodType)) {
+						methodComponent = ClassUtil.find(m.getGenericParameterTypes()[0], 0);
+					} else if (Map.class.isAssignableFrom(methodType)) {
+						methodComponent = ClassUtil.find(m.getGenericParameterTypes()[0], 1);
+					} else {
+						methodComponent = null;
+					}
+					n = NamingConverter.camelToWf(Character.toLowerCase(n.charAt(3)) + n.substring(4));
+					setters.put(n, new Setter(m, methodType, resourceType, methodComponent));
+				}
+				m_Setters = setters;
+			}
+			return setters.get(name);
+		}
+
+		/** 缓存的属性读取方法（toJson用） */
+		protected volatile Getter[] m_Getters;
+
+		private Getter[] getGetters() {
+			Getter[] getters = m_Getters;
+			if (null != getters) {
+				return getters;
+			}
+			// 同名的（如getX与isX）与toBase一致：位置取首个，方法取后者
+			Map<String, Getter> map = new LinkedHashMap<>();
+			for (Method m : m_Clazz.getMethods()) {
+				if (m.getParameterTypes().length > 0) {
+					continue;// 有参数
+				}
+				String name = m.getName();
+				if (StringUtil.eq(name, "getClass")) {
+					continue;
+				}
+				if (name.startsWith("get")) {
+					name = NamingConverter.camelToWf(Character.toLowerCase(name.charAt(3)) + name.substring(4));
+				} else if (name.startsWith("is")) {
+					name = NamingConverter.camelToWf(Character.toLowerCase(name.charAt(2)) + name.substring(3));
+				} else {
+					continue;
+				}
+				Class<?> resourceType = null;
+				Resource res = m.getAnnotation(Resource.class);
+				if (null != res) {
+					resourceType = res.type();
+				}
+				Class<?> returnType = m.getReturnType();
+				if (resourceType == null || resourceType == Object.class) {
+					resourceType = returnType;
+				}
+				map.put(name, new Getter(JsonNameCache.register(name), m, returnType, resourceType));
+			}
+			getters = map.values().toArray(new Getter[map.size()]);
+			m_Getters = getters;
+			return getters;
+		}
+
+		public void toJson(Object val, ObjectMapperSet set, JsonOutput out) throws IOException {
+			out.append('{');
+			boolean first = true;
+			for (Getter g : getGetters()) {
+				Object v;
+				try {
+					v = g.method.invoke(val);
+					if (g.returnType != g.resourceType) {
+						v = unboxing(v, g.returnType, g.resourceType);
+					}
+				} catch (InvocationTargetException e) {
+					Throwable target = e.getTargetException();
+					if (target instanceof RuntimeException) {
+						throw (RuntimeException) target;
+					} else {
+						throw new IllegalArgumentException("方法调用失败", e);
+					}
+				} catch (IllegalAccessException | IllegalArgumentException e) {
+					throw new IllegalArgumentException("方法调用失败", e);
+				}
+				if (first) {
+					first = false;
+				} else {
+					out.append(',');
+				}
+				writeName(g.name, out);
+				MappedUtil.toJson(v, set, out);
+			}
+			out.append('}');
+		}
+
 		public DtBase toBase(Object val, ObjectMapperSet set) {
 			SimpleDtObject object = new SimpleDtObject();
 			Method[] ms = m_Clazz.getMethods();
@@ -569,4 +900,49 @@ public class MappedUtil {
 		}
 
 	}
+
+	/**
+	 * JavaBean的属性设置方法
+	 */
+	static class Setter {
+		final Method method;
+		final Class<?> methodType;
+		final Class<?> resourceType;
+		final Class<?> component;
+
+		Setter(Method method, Class<?> methodType, Class<?> resourceType, Class<?> component) {
+			this.method = method;
+			this.methodType = methodType;
+			this.resourceType = resourceType;
+			this.component = component;
+		}
+
+		void set(Object object, Object value) {
+			if (resourceType != methodType) {
+				value = boxing(value, resourceType, methodType);
+			}
+			try {
+				method.invoke(object, value);
+			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+				throw new RuntimeException("设置异常", e);
+			}
+		}
+	}
+
+	/**
+	 * JavaBean的属性读取方法
+	 */
+	static class Getter {
+		final String name;
+		final Method method;
+		final Class<?> returnType;
+		final Class<?> resourceType;
+
+		Getter(String name, Method method, Class<?> returnType, Class<?> resourceType) {
+			this.name = name;
+			this.method = method;
+			this.returnType = returnType;
+			this.resourceType = resourceType;
+		}
+	}
 }
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.datatype;
+
+/**
+ * 可（不产生KvPair等中间对象）遍历属性的对象，是DtObject的可选扩展。
+ * <p>
+ * 使用方以instanceof判断，不支持的按{@linkplain DtObject#getAttributes()}遍历
+ * 
+ * @author zhangpengji
+ *
+ */
+public interface VisitableDtObject extends DtObject {
+
+	/**
+	 * 按{@linkplain #getAttributes()}的顺序遍历全部属性
+	 * 
+	 * @param <E>     访问器抛出的异常类型
+	 * @param visitor 属性访问器
+	 * @throws E 由访问器抛出
+	 */
+	<E extends Exception> void forEachAttribute(AttributeVisitor<E> visitor) throws E;
+
+	/**
+	 * 属性访问器
+	 * 
+	 * @param <E> 访问时抛出的异常类型
+	 */
+	interface AttributeVisitor<E extends Exception> {
+		/**
+		 * 访问属性
+		 * 
+		 * @param name  属性名
+		 * @param value 属性值
+		 * @throws E 访问出错时抛出
+		 */
+		void visit(String name, DtBase value) throws E;
+	}
+}
@@ -0,0 +1,426 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.serial;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.weforward.common.crypto.Hex;
+import cn.weforward.common.execption.InvalidFormatException;
+import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.common.io.PooledBufferedOutputStream;
+import cn.weforward.common.json.JsonUtil;
+import cn.weforward.common.util.Bytes;
+import cn.weforward.common.util.SimpleUtf8Encoder;
+import cn.weforward.protocol.Header;
+import cn.weforward.protocol.RequestConstants;
+import cn.weforward.protocol.ResponseConstants;
+import cn.weforward.protocol.datatype.DataType;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtBoolean;
+import cn.weforward.protocol.datatype.DtDate;
+import cn.weforward.protocol.datatype.DtList;
+import cn.weforward.protocol.datatype.DtNumber;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.datatype.DtString;
+import cn.weforward.protocol.datatype.VisitableDtObject;
+import cn.weforward.protocol.exception.SerialException;
+import cn.weforward.protocol.support.datatype.AbstractDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtBoolean;
+import cn.weforward.protocol.support.datatype.SimpleDtDate;
+import cn.weforward.protocol.support.datatype.SimpleDtList;
+import cn.weforward.protocol.support.datatype.SimpleDtNumber;
+import cn.weforward.protocol.support.datatype.SimpleDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtString;
+
+/**
+ * 紧凑二进制格式序列化（{@linkplain Header#CONTENT_TYPE_BINARY}），用于服务间调用
+ * <p>
+ * 格式：版本(1字节) + 值<br/>
+ * 值：类型(1字节) + 内容，整数为zigzag编码的varint，小数为8字节IEEE754，字串为varint长度+UTF-8字节，
+ * 日期为毫秒数（varint），对象为若干（属性名+值）并以{@linkplain #NAME_END}结束，列表为若干值并以{@linkplain #TAG_END}结束<br/>
+ * 属性名：每个报文有一个名称表，首次出现时为{@linkplain #NAME_NEW}+字串并加入名称表，再出现时为（名称表下标+2）
+ * 
+ * @author zhangpengji
+ *
+ */
+public class BinarySerialEngine implements SerialEngine {
+	/** 格式版本 */
+	public static final int VERSION = 1;
+
+	static final int TAG_NULL = 0;
+	static final int TAG_FALSE = 1;
+	static final int TAG_TRUE = 2;
+	static final int TAG_INT = 3;
+	static final int TAG_DOUBLE = 4;
+	static final int TAG_STRING = 5;
+	static final int TAG_DATE = 6;
+	static final int TAG_OBJECT = 7;
+	static final int TAG_LIST = 8;
+	static final int TAG_END = 0x0F;
+
+	/** 属性名 - 对象结束 */
+	static final int NAME_END = 0;
+	/** 属性名 - 新名称 */
+	static final int NAME_NEW = 1;
+
+	/** 嵌套层次上限 */
+	static final int MAX_DEPTH = 256;
+
+	@Override
+	public String getType() {
+		return Header.CONTENT_TYPE_BINARY;
+	}
+
+	@Override
+	public void serial(DtObject object, String charset, OutputStream output) throws SerialException, IOException {
+		// 字串固定使用UTF-8，忽略charset
+		PooledBufferedOutputStream buffered = new PooledBufferedOutputStream(output);
+		try {
+			Writer writer = new Writer(buffered);
+			buffered.write(VERSION);
+			writer.writeObject(object);
+			buffered.finish();
+		} finally {
+			buffered.release();
+		}
+	}
+
+	@Override
+	public DtObject unserial(InputStream in, String charset) throws SerialException, IOException {
+		Bytes bytes = BytesOutputStream.toBytes(in);
+		return parseObject(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+	}
+
+	/**
+	 * 由二进制格式解析为DtObject
+	 * 
+	 * @param data   数据
+	 * @param offset 开始位置
+	 * @param length 长度
+	 */
+	public static DtObject parseObject(byte[] data, int offset, int length) throws SerialException, IOException {
+		Reader reader = new Reader(data, offset, length);
+		int v = reader.read();
+		if (VERSION != v) {
+			throw new SerialException("不支持的格式版本：" + v);
+		}
+		DtBase obj = reader.readValue(0);
+		if (!(obj instanceof DtObject)) {
+			throw new InvalidFormatException("不是对象 " + obj);
+		}
+		return (DtObject) obj;
+	}
+
+	/**
+	 * 输出器（每个报文一个）
+	 */
+	static class Writer implements VisitableDtObject.AttributeVisitor<IOException> {
+		final OutputStream m_Output;
+		final SimpleUtf8Encoder m_Encoder;
+		final Map<String, Integer> m_Names;
+
+		Writer(OutputStream output) {
+			m_Output = output;
+			m_Encoder = new SimpleUtf8Encoder(output);
+			m_Names = new HashMap<>();
+		}
+
+		void writeObject(DtObject object) throws IOException {
+			m_Output.write(TAG_OBJECT);
+			AbstractDtObject.forEach(object, this);
+			writeVarint(NAME_END);
+		}
+
+		@Override
+		public void visit(String name, DtBase value) throws IOException {
+			writeName(name);
+			writeValue(value);
+		}
+
+		void writeList(DtList list) throws IOException {
+			m_Output.write(TAG_LIST);
+			Enumeration<DtBase> items = list.items();
+			while (items.hasMoreElements()) {
+				writeValue(items.nextElement());
+			}
+			m_Output.write(TAG_END);
+		}
+
+		void writeName(String name) throws IOException {
+			Integer idx = m_Names.get(name);
+			if (null != idx) {
+				writeVarint(idx + 2);
+				return;
+			}
+			m_Names.put(name, m_Names.size());
+			writeVarint(NAME_NEW);
+			writeString(name);
+		}
+
+		void writeValue(DtBase value) throws IOException {
+			if (null == value) {
+				m_Output.write(TAG_NULL);
+				return;
+			}
+			DataType type = value.type();
+			if (DataType.STRING == type) {
+				m_Output.write(TAG_STRING);
+				writeString(((DtString) value).value());
+				return;
+			}
+			if (DataType.NUMBER == type) {
+				DtNumber v = (DtNumber) value;
+				if (v.isDouble()) {
+					long bits = Double.doubleToLongBits(v.valueDouble());
+					m_Output.write(TAG_DOUBLE);
+					for (int i = 56; i >= 0; i -= 8) {
+						m_Output.write((int) (bits >>> i));
+					}
+				} else {
+					m_Output.write(TAG_INT);
+					long l = v.valueLong();
+					writeVarint((l << 1) ^ (l >> 63));
+				}
+				return;
+			}
+			if (DataType.BOOLEAN == type) {
+				m_Output.write(((DtBoolean) value).value() ? TAG_TRUE : TAG_FALSE);
+				return;
+			}
+			if (DataType.DATE == type) {
+				Date date = ((DtDate) value).valueDate();
+				if (null == date) {
+					m_Output.write(TAG_NULL);
+					return;
+				}
+				long l = date.getTime();
+				m_Output.write(TAG_DATE);
+				writeVarint((l << 1) ^ (l >> 63));
+				return;
+			}
+			if (DataType.OBJECT == type) {
+				writeObject((DtObject) value);
+				return;
+			}
+			if (DataType.LIST == type) {
+				writeList((DtList) value);
+				return;
+			}
+			throw new InvalidFormatException("值类型不支持" + value);
+		}
+
+		void writeString(String str) throws IOException {
+			if (null == str) {
+				// 与json格式一致，null字串输出为空串
+				str = "";
+			}
+			writeVarint(utf8Length(str));
+			m_Encoder.encode(str);
+		}
+
+		void writeVarint(long v) throws IOException {
+			while (0 != (v & ~0x7FL)) {
+				m_Output.write((int) ((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			m_Output.write((int) v);
+		}
+	}
+
+	/**
+	 * 计算字串UTF-8编码后的字节数
+	 * <p>
+	 * 与{@link SimpleUtf8Encoder}一致，代理对须成对出现，单独的代理码元直接拒绝（在输出长度前），以免长度与内容不一致
+	 * 
+	 * @throws UnsupportedEncodingException 有单独的代理码元
+	 */
+	static int utf8Length(CharSequence str) throws UnsupportedEncodingException {
+		int len = str.length();
+		int size = len;
+		for (int i = 0; i < len; i++) {
+			char ch = str.charAt(i);
+			if (ch <= 0x7F) {
+				continue;
+			}
+			if (ch <= 0x7FF) {
+				size += 1;
+			} else if (Character.isSurrogate(ch)) {
+				if (!Character.isHighSurrogate(ch)) {
+					throw new UnsupportedEncodingException("辅助平面的代理对未按顺序出现(high)：" + Hex.toHex16((short) ch));
+				}
+				if (i + 1 >= len || !Character.isLowSurrogate(str.charAt(i + 1))) {
+					throw new UnsupportedEncodingException("辅助平面的代理对未按顺序出现(low)：" + Hex.toHex16((short) ch));
+				}
+				// 代理对共4字节
+				size += 2;
+				i++;
+			} else {
+				size += 2;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * 解析器（每个报文一个）
+	 */
+	static class Reader {
+		final byte[] m_Data;
+		final int m_End;
+		int m_Pos;
+		final List<String> m_Names;
+
+		Reader(byte[] data, int offset, int length) {
+			if (offset < 0 || offset + length > data.length) {
+				throw new IndexOutOfBoundsException("[" + length + "+" + offset + ">" + data.length + "]");
+			}
+			m_Data = data;
+			m_Pos = offset;
+			m_End = offset + length;
+			m_Names = new ArrayList<>();
+		}
+
+		int read() throws EOFException {
+			if (m_Pos >= m_End) {
+				throw new EOFException();
+			}
+			return 0xFF & m_Data[m_Pos++];
+		}
+
+		long readVarint() throws IOException {
+			long v = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = read();
+				v |= (long) (b & 0x7F) << shift;
+				if (0 == (b & 0x80)) {
+					return v;
+				}
+			}
+			throw new InvalidFormatException("varint过长", m_Pos);
+		}
+
+		long readZigzag() throws IOException {
+			long v = readVarint();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		String readString() throws IOException {
+			long len = readVarint();
+			if (len < 0 || len > m_End - m_Pos) {
+				throw new InvalidFormatException("字串长度不正确：" + len, m_Pos);
+			}
+			String str = new String(m_Data, m_Pos, (int) len, StandardCharsets.UTF_8);
+			m_Pos += len;
+			return str;
+		}
+
+		String readName(long ref) throws IOException {
+			if (NAME_NEW == ref) {
+				String name = JsonUtil._NamePool.intern(readString());
+				m_Names.add(name);
+				return name;
+			}
+			ref -= 2;
+			if (ref < 0 || ref >= m_Names.size()) {
+				throw new InvalidFormatException("名称表下标越界：" + ref, m_Pos);
+			}
+			return m_Names.get((int) ref);
+		}
+
+		DtBase readValue(int depth) throws IOException {
+			return readValue(read(), depth);
+		}
+
+		DtBase readValue(int tag, int depth) throws IOException {
+			switch (tag) {
+			case TAG_NULL:
+				return null;
+			case TAG_FALSE:
+				return SimpleDtBoolean.FALSE;
+			case TAG_TRUE:
+				return SimpleDtBoolean.TRUE;
+			case TAG_INT:
+				return SimpleDtNumber.valueOf(readZigzag());
+			case TAG_DOUBLE: {
+				long bits = 0;
+				for (int i = 0; i < 8; i++) {
+					bits = (bits << 8) | read();
+				}
+				return SimpleDtNumber.valueOf(Double.longBitsToDouble(bits));
+			}
+			case TAG_STRING:
+				return SimpleDtString.valueOf(readString());
+			case TAG_DATE:
+				return SimpleDtDate.valueOf(new Date(readZigzag()));
+			case TAG_OBJECT:
+				return readObject(depth + 1);
+			case TAG_LIST:
+				return readList(depth + 1);
+			}
+			throw new InvalidFormatException("未知的类型：" + tag, m_Pos);
+		}
+
+		DtObject readObject(int depth) throws IOException {
+			if (depth > MAX_DEPTH) {
+				throw new InvalidFormatException("嵌套层次太深", m_Pos);
+			}
+			SimpleDtObject obj = new SimpleDtObject(false);
+			boolean hasReq = false;
+			boolean hasResp = false;
+			for (;;) {
+				long ref = readVarint();
+				if (NAME_END == ref) {
+					return obj;
+				}
+				String name = readName(ref);
+				DtBase value = readValue(depth);
+				// 只认第一个WF_REQ、WF_RESP
+				if (RequestConstants.WF_REQ.equals(name)) {
+					if (hasReq) {
+						continue;
+					}
+					hasReq = true;
+				} else if (ResponseConstants.WF_RESP.equals(name)) {
+					if (hasResp) {
+						continue;
+					}
+					hasResp = true;
+				}
+				obj.put(name, value);
+			}
+		}
+
+		DtList readList(int depth) throws IOException {
+			if (depth > MAX_DEPTH) {
+				throw new InvalidFormatException("嵌套层次太深", m_Pos);
+			}
+			SimpleDtList list = new SimpleDtList();
+			for (;;) {
+				int tag = read();
+				if (TAG_END == tag) {
+					return list;
+				}
+				list.addItem(readValue(tag, depth));
+			}
+		}
+	}
+}
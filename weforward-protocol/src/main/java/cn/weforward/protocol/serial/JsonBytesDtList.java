@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.serial;
+
+import java.io.IOException;
+import java.util.List;
+
+import cn.weforward.common.execption.InvalidFormatException;
+import cn.weforward.common.util.Bytes;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.support.datatype.AbstractDtList;
+
+/**
+ * 基于UTF-8编码json字节的DtList实现
+ * 
+ * @author zhangpengji
+ *
+ */
+public class JsonBytesDtList extends AbstractDtList {
+
+	protected byte[] m_Data;
+	protected int m_Offset;
+	protected int m_Lenght;
+
+	protected List<DtBase> m_Items;
+
+	public JsonBytesDtList(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	public JsonBytesDtList(byte[] data, int offset, int length) {
+		m_Data = data;
+		m_Offset = offset;
+		m_Lenght = length;
+	}
+
+	private void parse() {
+		if (null != m_Items) {
+			return;
+		}
+		synchronized (this) {
+			if (null != m_Items) {
+				return;
+			}
+			try {
+				m_Items = JsonBytesParser.parseArray(m_Data, m_Offset, m_Lenght);
+			} catch (IOException e) {
+				throw new InvalidFormatException("Json串格式不正确", e);
+			}
+			m_Data = null;
+		}
+	}
+
+	@Override
+	public int size() {
+		parse();
+		return m_Items.size();
+	}
+
+	@Override
+	protected DtBase getItemInner(int index) {
+		parse();
+		return m_Items.get(index);
+	}
+
+	/**
+	 * 获取原生Json字节（UTF-8）。若已经解析为DtList则返回null
+	 * 
+	 */
+	public Bytes getJsonBytes() {
+		byte[] data = m_Data;
+		if (null == data) {
+			return null;
+		}
+		return new Bytes(data, m_Offset, m_Lenght);
+	}
+
+	/**
+	 * 获取原生Json字串。若已经解析为DtList则返回null
+	 * 
+	 */
+	public String getJsonString() {
+		byte[] data = m_Data;
+		if (null == data) {
+			return null;
+		}
+		return JsonBytesParser.decode(data, m_Offset, m_Offset + m_Lenght, false);
+	}
+
+	@Override
+	public String toString() {
+		String str = getJsonString();
+		if (null == str) {
+			List<DtBase> items = m_Items;
+			if (null != items) {
+				str = items.toString();
+			}
+		}
+		return type().toString() + ' ' + str;
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.serial;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+
+import cn.weforward.common.execption.InvalidFormatException;
+import cn.weforward.common.util.Bytes;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.support.datatype.AbstractDtObject;
+
+/**
+ * 基于UTF-8编码json字节的DtObject实现，省去先解码为字串
+ * 
+ * @author zhangpengji
+ *
+ */
+public class JsonBytesDtObject extends AbstractDtObject {
+
+	protected byte[] m_Data;
+	protected int m_Offset;
+	protected int m_Lenght;
+
+	protected Map<String, DtBase> m_Attributes;
+
+	public JsonBytesDtObject(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	public JsonBytesDtObject(byte[] data, int offset, int length) {
+		m_Data = data;
+		m_Offset = offset;
+		m_Lenght = length;
+	}
+
+	private void parse() {
+		if (null != m_Attributes) {
+			return;
+		}
+		synchronized (this) {
+			if (null != m_Attributes) {
+				return;
+			}
+			try {
+				m_Attributes = JsonBytesParser.parseObject(m_Data, m_Offset, m_Lenght);
+			} catch (IOException e) {
+				throw new InvalidFormatException("Json串格式不正确", e);
+			}
+			m_Data = null;
+		}
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		parse();
+		Set<String> keys = m_Attributes.keySet();
+		return Collections.enumeration(keys);
+	}
+
+	@Override
+	protected DtBase getAttributeInner(String name) {
+		parse();
+		return m_Attributes.get(name);
+	}
+
+	@Override
+	public <E extends Exception> void forEachAttribute(AttributeVisitor<E> visitor) throws E {
+		parse();
+		for (Map.Entry<String, DtBase> e : m_Attributes.entrySet()) {
+			visitor.visit(e.getKey(), e.getValue());
+		}
+	}
+
+	@Override
+	public int getAttributeSize() {
+		parse();
+		return m_Attributes.size();
+	}
+
+	/**
+	 * 获取原生Json字节（UTF-8）。若已经解析为DtObject则返回null
+	 * 
+	 */
+	public Bytes getJsonBytes() {
+		byte[] data = m_Data;
+		if (null == data) {
+			return null;
+		}
+		return new Bytes(data, m_Offset, m_Lenght);
+	}
+
+	/**
+	 * 获取原生Json字串。若已经解析为DtObject则返回null
+	 * 
+	 */
+	public String getJsonString() {
+		byte[] data = m_Data;
+		if (null == data) {
+			return null;
+		}
+		return JsonBytesParser.decode(data, m_Offset, m_Offset + m_Lenght, false);
+	}
+
+	@Override
+	public String toString() {
+		String str = getJsonString();
+		if (null == str) {
+			Map<String, DtBase> atts = m_Attributes;
+			if (null != atts) {
+				str = atts.toString();
+			}
+		}
+		return type().toString() + ' ' + str;
+	}
+}
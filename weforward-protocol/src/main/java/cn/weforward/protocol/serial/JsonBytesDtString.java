@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.serial;
+
+import cn.weforward.protocol.datatype.DataType;
+import cn.weforward.protocol.datatype.DtString;
+
+/**
+ * UTF-8编码json字节中的字符串，取值时才解码
+ * 
+ * @author zhangpengji
+ *
+ */
+public class JsonBytesDtString implements DtString {
+
+	byte[] m_Data;
+	int m_Begin;
+	int m_End;
+	boolean m_Escaped;
+	String m_Value;
+
+	public JsonBytesDtString(byte[] data, int begin, int end, boolean escaped) {
+		m_Data = data;
+		m_Begin = begin;
+		m_End = end;
+		m_Escaped = escaped;
+	}
+
+	@Override
+	public DataType type() {
+		return DataType.STRING;
+	}
+
+	@Override
+	public String value() {
+		String v = m_Value;
+		if (null == v) {
+			v = JsonBytesParser.decode(m_Data, m_Begin, m_End, m_Escaped);
+			m_Value = v;
+		}
+		return v;
+	}
+
+	@Override
+	public String toString() {
+		return type().toString() + ' ' + value();
+	}
+}
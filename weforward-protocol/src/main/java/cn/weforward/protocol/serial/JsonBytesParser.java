@@ -0,0 +1,416 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.serial;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.weforward.common.execption.InvalidFormatException;
+import cn.weforward.common.json.JsonUtil;
+import cn.weforward.common.json.StringInput;
+import cn.weforward.common.util.StringBuilderPool;
+import cn.weforward.protocol.RequestConstants;
+import cn.weforward.protocol.ResponseConstants;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.support.datatype.SimpleDtBoolean;
+import cn.weforward.protocol.support.datatype.SimpleDtNumber;
+
+/**
+ * 直接在UTF-8字节上延时解析json object、json array的解析器（与{@linkplain JsonParser}规则一致）。
+ * <p>
+ * 结构符都是ASCII字符，因此可按字节扫描而不必先解码为字串，字串值只记录位置，在取值时才解码。<br/>
+ * 且只认第一个{@linkplain RequestConstants#WF_REQ}、{@linkplain ResponseConstants#WF_RESP}节点
+ * 
+ * @author zhangpengji
+ *
+ */
+class JsonBytesParser extends JsonUtil {
+
+	static final int SKIP_BLANK_LIMIT = 100;
+
+	static class Context {
+		final byte[] data;
+		final int end;
+		int pos;
+
+		Context(byte[] data, int offset, int length) {
+			if (offset < 0 || offset + length > data.length) {
+				throw new IndexOutOfBoundsException("[" + length + "+" + offset + ">" + data.length + "]");
+			}
+			this.data = data;
+			this.pos = offset;
+			this.end = offset + length;
+		}
+
+		byte read() throws EOFException {
+			if (pos >= end) {
+				throw new EOFException();
+			}
+			return data[pos++];
+		}
+
+		byte skipBlank() throws IOException {
+			byte b;
+			int limit = SKIP_BLANK_LIMIT;
+			do {
+				if (0 == (--limit)) {
+					throw new InvalidFormatException("空格及换行太多 " + this);
+				}
+				b = read();
+			} while (' ' == b || '\t' == b || '\r' == b || '\n' == b);
+			return b;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = StringBuilderPool._128.poll();
+			try {
+				builder.append('[').append(pos).append('/').append(end).append(']');
+				int remain = end - pos;
+				if (remain > 50) {
+					remain = 50;
+				}
+				if (remain > 0) {
+					builder.append(new String(data, pos, remain, StandardCharsets.UTF_8));
+				}
+				return builder.toString();
+			} finally {
+				StringBuilderPool._128.offer(builder);
+			}
+		}
+	}
+
+	static Map<String, DtBase> parseObject(byte[] data, int offset, int length) throws IOException {
+		Context ctx = new Context(data, offset, length);
+		byte b = ctx.skipBlank();
+		if ('{' != b) {
+			// 不以“{”开头的不是对象
+			throw new InvalidFormatException("不是预期的'" + (char) b + "' " + ctx);
+		}
+		b = ctx.skipBlank();
+		if ('}' == b) {
+			// 是“}”，空对象
+			return Collections.emptyMap();
+		}
+		Map<String, DtBase> atts = new HashMap<>();
+		for (;;) {
+			String name = parseName(ctx, b);
+			DtBase value = parseValue(ctx);
+			if ((RequestConstants.WF_REQ.equals(name) || ResponseConstants.WF_RESP.equals(name))
+					&& atts.containsKey(name)) {
+				// 只认第一个WF_REQ、WF_RESP
+			} else {
+				atts.put(name, value);
+			}
+			b = ctx.skipBlank();
+			if (',' == b) {
+				// 下个兄弟节点
+				b = ctx.skipBlank();
+				continue;
+			}
+			if ('}' == b) {
+				// 对象结束
+				break;
+			}
+			throw new InvalidFormatException("不是预期的'" + (char) b + "' " + ctx);
+		}
+		return atts;
+	}
+
+	static List<DtBase> parseArray(byte[] data, int offset, int length) throws IOException {
+		Context ctx = new Context(data, offset, length);
+		byte b = ctx.skipBlank();
+		if ('[' != b) {
+			// 不以“[”开头的不是数组
+			throw new InvalidFormatException("不是预期的'" + (char) b + "' " + ctx);
+		}
+		b = ctx.skipBlank();
+		if (']' == b) {
+			return Collections.emptyList();
+		}
+		// 放回给parseValue读取
+		--ctx.pos;
+		List<DtBase> ret = new ArrayList<>();
+		for (;;) {
+			ret.add(parseValue(ctx));
+			b = ctx.skipBlank();
+			if (',' == b) {
+				// 下个兄弟节点
+				continue;
+			}
+			if (']' == b) {
+				// 数组结束
+				break;
+			}
+			throw new InvalidFormatException("不是预期的'" + (char) b + "' " + ctx);
+		}
+		return ret;
+	}
+
+	/**
+	 * 读取属性名，完成后位置在“:”之后
+	 * 
+	 * @param ctx
+	 * @param first 名称的首字节
+	 */
+	private static String parseName(Context ctx, byte first) throws IOException {
+		byte[] data = ctx.data;
+		int begin;
+		int end;
+		boolean plain = true;
+		if ('"' == first || '\'' == first) {
+			begin = ctx.pos;
+			byte b;
+			for (;;) {
+				b = ctx.read();
+				if ('\\' == b) {
+					// 转义符，跳过下一字节
+					plain = false;
+					ctx.read();
+					continue;
+				}
+				if (first == b) {
+					break;
+				}
+				if (b < 0) {
+					plain = false;
+				}
+			}
+			end = ctx.pos - 1;
+			// 找到“:”分隔符
+			while (':' != b) {
+				b = ctx.read();
+			}
+		} else {
+			// 没有引号开首，碰到“:”符结束
+			begin = ctx.pos - 1;
+			byte b = first;
+			while (':' != b) {
+				if (b < 0 || '\\' == b) {
+					plain = false;
+				}
+				b = ctx.read();
+			}
+			end = ctx.pos - 1;
+			while (end > begin && isBlank((char) data[end - 1])) {
+				end--;
+			}
+			if (!plain) {
+				return JsonUtil._NamePool.intern(decode(data, begin, end, true));
+			}
+		}
+		if (end - begin > 128) {
+			throw new InvalidFormatException("名称过长(>128) " + ctx);
+		}
+		if (!plain) {
+			return JsonUtil._NamePool.intern(decode(data, begin, end, true));
+		}
+		// ASCII名称，直接逐字节入池
+		StringBuilder nameBuilder = JsonUtil._NameBuilderPool.poll();
+		try {
+			for (int i = begin; i < end; i++) {
+				nameBuilder.append((char) data[i]);
+			}
+			return JsonUtil._NamePool.intern(nameBuilder);
+		} finally {
+			JsonUtil._NameBuilderPool.offer(nameBuilder);
+		}
+	}
+
+	private static DtBase parseValue(Context ctx) throws IOException {
+		byte first = ctx.skipBlank();
+		int startIndex = ctx.pos - 1;
+		byte[] data = ctx.data;
+		if ('"' == first || '\'' == first) {
+			// 由双引号（也兼容不标准的单引号吧）开始的，是字串
+			boolean escaped = false;
+			for (;;) {
+				byte b = ctx.read();
+				if ('\\' == b) {
+					// 转义符，跳过下一字节
+					escaped = true;
+					ctx.read();
+					continue;
+				}
+				if (first == b) {
+					break;
+				}
+			}
+			return new JsonBytesDtString(data, startIndex + 1, ctx.pos - 1, escaped);
+		}
+		if ('{' == first) {
+			// 子对象
+			findEnd(ctx, (byte) '{', (byte) '}');
+			return new JsonBytesDtObject(data, startIndex, ctx.pos - startIndex);
+		}
+		if ('[' == first) {
+			// 数组
+			findEnd(ctx, (byte) '[', (byte) ']');
+			return new JsonBytesDtList(data, startIndex, ctx.pos - startIndex);
+		}
+		// 其它类型，到空白符或分隔符结束（分隔符留给上游读取）
+		int end = startIndex;
+		boolean decimal = false;
+		while (end < ctx.end) {
+			byte b = data[end];
+			if (' ' == b || '\t' == b || '\r' == b || '\n' == b || ',' == b || '}' == b || ']' == b) {
+				break;
+			}
+			if ('.' == b || 'e' == b || 'E' == b) {
+				decimal = true;
+			}
+			end++;
+		}
+		ctx.pos = end;
+		int len = end - startIndex;
+		if (4 == len && equalsIgnoreCase(data, startIndex, "true")) {
+			return SimpleDtBoolean.TRUE;
+		}
+		if (5 == len && equalsIgnoreCase(data, startIndex, "false")) {
+			return SimpleDtBoolean.FALSE;
+		}
+		if (4 == len && equalsIgnoreCase(data, startIndex, "null")) {
+			return null;
+		}
+		// 是数值
+		if (!decimal && len > 0 && len < 19) {
+			return SimpleDtNumber.valueOf(parseLong(ctx, startIndex, end));
+		}
+		String v = new String(data, startIndex, len, StandardCharsets.ISO_8859_1);
+		try {
+			if (decimal) {
+				return SimpleDtNumber.valueOf(Double.parseDouble(v));
+			}
+			return SimpleDtNumber.valueOf(Long.parseLong(v));
+		} catch (NumberFormatException e) {
+			throw new InvalidFormatException("数值格式不正确 " + v, e);
+		}
+	}
+
+	/**
+	 * 解析不超过18位的整数（不会溢出）
+	 */
+	private static long parseLong(Context ctx, int begin, int end) {
+		byte[] data = ctx.data;
+		boolean negative = false;
+		int i = begin;
+		if ('-' == data[i]) {
+			negative = true;
+			i++;
+		} else if ('+' == data[i]) {
+			i++;
+		}
+		if (i >= end) {
+			throw new InvalidFormatException("数值格式不正确 " + ctx);
+		}
+		long v = 0;
+		for (; i < end; i++) {
+			int d = data[i] - '0';
+			if (d < 0 || d > 9) {
+				throw new InvalidFormatException("数值格式不正确 " + ctx);
+			}
+			v = v * 10 + d;
+		}
+		return negative ? -v : v;
+	}
+
+	private static boolean equalsIgnoreCase(byte[] data, int offset, String str) {
+		for (int i = 0; i < str.length(); i++) {
+			int b = data[offset + i];
+			if (b <= 'Z' && b >= 'A') {
+				b += 32;
+			}
+			if (b != str.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void findEnd(Context ctx, byte begin, byte end) throws IOException {
+		boolean escape = false;
+		byte quot = 0;
+		int flag = 0;
+		for (;;) {
+			byte b = ctx.read();
+			if (escape) {
+				// 上一个字节是转义符
+				escape = false;
+				continue;
+			}
+			if ('\\' == b) {
+				escape = true;
+				continue;
+			}
+			if ('"' == b || '\'' == b) {
+				if (0 == quot) {
+					// 引号开始
+					quot = b;
+				} else if (quot == b) {
+					// 引号结束
+					quot = 0;
+				}
+				continue;
+			}
+			if (0 != quot) {
+				// 在引号中
+				continue;
+			}
+			if (begin == b) {
+				flag++;
+			} else if (end == b) {
+				if (0 == flag) {
+					// 找到了
+					break;
+				}
+				flag--;
+			}
+		}
+	}
+
+	/**
+	 * 把UTF-8字节解码为字串
+	 * 
+	 * @param data    字节数组
+	 * @param begin   开始位置
+	 * @param end     结束位置
+	 * @param escaped 是否含转义符
+	 */
+	static String decode(byte[] data, int begin, int end, boolean escaped) {
+		String str = new String(data, begin, end - begin, StandardCharsets.UTF_8);
+		if (!escaped) {
+			return str;
+		}
+		StringInput in = new StringInput(str);
+		StringBuilder builder = StringBuilderPool._8k.poll();
+		try {
+			while (in.available() > 0) {
+				char ch = in.readChar();
+				if ('\\' == ch) {
+					JsonUtil.unescape(in, builder);
+					continue;
+				}
+				builder.append(ch);
+			}
+			return builder.toString();
+		} catch (IOException e) {
+			throw new InvalidFormatException("转义符不正确 " + str, e);
+		} finally {
+			StringBuilderPool._8k.offer(builder);
+		}
+	}
+}
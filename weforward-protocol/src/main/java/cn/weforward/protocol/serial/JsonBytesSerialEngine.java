@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.serial;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.common.util.Bytes;
+import cn.weforward.protocol.Header;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.exception.SerialException;
+
+/**
+ * Json格式序列化，反序列化时直接在UTF-8字节上解析，省去整体解码为字串
+ * 
+ * @author zhangpengji
+ *
+ */
+public class JsonBytesSerialEngine extends JsonSerialEngine {
+
+	@Override
+	public DtObject unserial(InputStream in, String charset) throws SerialException, IOException {
+		if (!Header.CHARSET_UTF8.equalsIgnoreCase(charset)) {
+			return super.unserial(in, charset);
+		}
+		return parseObject(in);
+	}
+
+	public static DtObject parseObject(InputStream in) throws SerialException, IOException {
+		Bytes bytes = BytesOutputStream.toBytes(in);
+		return new JsonBytesDtObject(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+	}
+}
@@ -30,15 +30,30 @@ public class JsonDtList extends AbstractDtList {
 	protected int m_Lenght;
 
 	protected List<DtBase> m_Items;
+	/** 子对象是否使用偏移索引方式 */
+	protected boolean m_Indexed;
 
 	public JsonDtList(String json) {
 		this(json, 0, json.length());
 	}
 
 	public JsonDtList(String json, int offset, int length) {
+		this(json, offset, length, false);
+	}
+
+	/**
+	 * 构造
+	 * 
+	 * @param json    json串
+	 * @param offset  开始位置
+	 * @param length  长度
+	 * @param indexed 子对象是否为{@linkplain JsonIndexedDtObject}
+	 */
+	public JsonDtList(String json, int offset, int length, boolean indexed) {
 		m_Json = json;
 		m_Offset = offset;
 		m_Lenght = length;
+		m_Indexed = indexed;
 	}
 
 	private void parse() {
@@ -50,7 +65,7 @@ public class JsonDtList extends AbstractDtList {
 				return;
 			}
 			try {
-				m_Items = JsonParser.parseArray(m_Json, m_Offset, m_Lenght);
+				m_Items = JsonParser.parseArray(m_Json, m_Offset, m_Lenght, m_Indexed);
 			} catch (IOException e) {
 				throw new InvalidFormatException("Json串格式不正确", e);
 			}
@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.Set;
 
 import cn.weforward.common.execption.InvalidFormatException;
+import cn.weforward.common.json.StringInput;
 import cn.weforward.protocol.datatype.DtBase;
 import cn.weforward.protocol.support.datatype.AbstractDtObject;
 
@@ -74,6 +75,14 @@ public class JsonDtObject extends AbstractDtObject {
 		return m_Attributes.get(name);
 	}
 
+	@Override
+	public <E extends Exception> void forEachAttribute(AttributeVisitor<E> visitor) throws E {
+		parse();
+		for (Map.Entry<String, DtBase> e : m_Attributes.entrySet()) {
+			visitor.visit(e.getKey(), e.getValue());
+		}
+	}
+
 	@Override
 	public int getAttributeSize() {
 		parse();
@@ -95,6 +104,18 @@ public class JsonDtObject extends AbstractDtObject {
 		return json.substring(m_Offset, m_Offset + m_Lenght);
 	}
 
+	/**
+	 * 以原生Json串打开输入（供直接绑定为Java对象，不构造DtBase）。若已经解析为DtObject则返回null
+	 * 
+	 */
+	public StringInput openJsonInput() {
+		String json = m_Json;
+		if (null == json) {
+			return null;
+		}
+		return new StringInput(json, m_Offset, m_Lenght);
+	}
+
 	@Override
 	public String toString() {
 		String str = getJsonString();
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.serial;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import cn.weforward.common.execption.InvalidFormatException;
+import cn.weforward.protocol.datatype.DtBase;
+
+/**
+ * 基于json串及偏移索引的DtObject实现
+ * <p>
+ * 首次访问时只为第一层属性建立偏移索引（不解析属性值），属性值在访问时才解析并缓存，子对象同样如此。<br/>
+ * 由于对象是只读的，原json串一直保留，序列化时原样输出
+ * 
+ * @author zhangpengji
+ *
+ */
+public class JsonIndexedDtObject extends JsonDtObject {
+
+	/** 已解析且值为null的属性（与未解析的null区分开） */
+	static final Object NULL_VALUE = new Object();
+
+	protected volatile JsonParser.Index m_Index;
+	/** 已解析的属性值（元素以volatile语义读写，并发访问时不会看到未完成构造的值），值为null的是{@link #NULL_VALUE} */
+	protected volatile AtomicReferenceArray<Object> m_Values;
+
+	public JsonIndexedDtObject(String json) {
+		super(json);
+	}
+
+	public JsonIndexedDtObject(String json, int offset, int length) {
+		super(json, offset, length);
+	}
+
+	JsonParser.Index index() {
+		JsonParser.Index index = m_Index;
+		if (null != index) {
+			return index;
+		}
+		synchronized (this) {
+			if (null != m_Index) {
+				return m_Index;
+			}
+			try {
+				index = JsonParser.indexObject(m_Json, m_Offset, m_Lenght);
+			} catch (IOException e) {
+				throw new InvalidFormatException("Json串格式不正确", e);
+			}
+			m_Values = new AtomicReferenceArray<Object>(index.size);
+			m_Index = index;
+			return index;
+		}
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		JsonParser.Index index = index();
+		return Collections.enumeration(Arrays.asList(index.names).subList(0, index.size));
+	}
+
+	@Override
+	protected DtBase getAttributeInner(String name) {
+		JsonParser.Index index = index();
+		int idx = index.indexOf(name);
+		if (idx < 0) {
+			return null;
+		}
+		return valueAt(index, idx);
+	}
+
+	@Override
+	public <E extends Exception> void forEachAttribute(AttributeVisitor<E> visitor) throws E {
+		JsonParser.Index index = index();
+		for (int i = 0; i < index.size; i++) {
+			visitor.visit(index.names[i], valueAt(index, i));
+		}
+	}
+
+	private DtBase valueAt(JsonParser.Index index, int idx) {
+		AtomicReferenceArray<Object> values = m_Values;
+		Object cached = values.get(idx);
+		if (NULL_VALUE == cached) {
+			return null;
+		}
+		if (null != cached) {
+			return (DtBase) cached;
+		}
+		DtBase value;
+		try {
+			value = JsonParser.parseValue(index.json, index.begins[idx], index.ends[idx]);
+		} catch (IOException | NumberFormatException e) {
+			throw new InvalidFormatException("Json串格式不正确", e);
+		}
+		// 值为只读对象，并发时重复解析也无妨
+		values.set(idx, null == value ? NULL_VALUE : value);
+		return value;
+	}
+
+	@Override
+	public int getAttributeSize() {
+		return index().size;
+	}
+
+	@Override
+	public String toString() {
+		return type().toString() + ' ' + getJsonString();
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.serial;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cn.weforward.common.json.JsonOutput;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.support.datatype.AbstractDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtBoolean;
+import cn.weforward.protocol.support.datatype.SimpleDtNumber;
+import cn.weforward.protocol.support.datatype.SimpleDtString;
+
+/**
+ * 在（只读的）DtObject上叠加修改的DtObject（写时复制），只记录修改/增加/移除的属性。
+ * <p>
+ * 若原对象是还保留json串的{@linkplain JsonDtObject}，序列化为json时未修改的属性原样输出其json片段，只编码有修改的属性，
+ * 适合收到对象后只作少量修改再转发的场景
+ * 
+ * @author zhangpengji
+ *
+ */
+public class JsonOverlayDtObject extends AbstractDtObject implements JsonWritable {
+	/** 原对象 */
+	protected final DtObject m_Base;
+	/** 原对象保留json串时，以其建立偏移索引的对象（否则为null） */
+	protected final JsonIndexedDtObject m_Indexed;
+	/** 修改的属性，值为null表示已移除 */
+	protected Map<String, DtBase> m_Changes;
+
+	public JsonOverlayDtObject(DtObject base) {
+		JsonIndexedDtObject indexed = null;
+		if (base instanceof JsonIndexedDtObject) {
+			indexed = (JsonIndexedDtObject) base;
+		} else if (base instanceof JsonDtObject) {
+			JsonDtObject jdo = (JsonDtObject) base;
+			String json = jdo.m_Json;
+			if (null != json) {
+				indexed = new JsonIndexedDtObject(json, jdo.m_Offset, jdo.m_Lenght);
+				base = indexed;
+			}
+		}
+		m_Base = base;
+		m_Indexed = indexed;
+	}
+
+	/**
+	 * 置入属性
+	 * 
+	 * @param name      属性名
+	 * @param attribute 属性值，为null时等同移除
+	 */
+	public void put(String name, DtBase attribute) {
+		Map<String, DtBase> changes = m_Changes;
+		if (null == changes) {
+			changes = new LinkedHashMap<>();
+			m_Changes = changes;
+		}
+		changes.put(name, attribute);
+	}
+
+	public void put(String name, int value) {
+		put(name, SimpleDtNumber.valueOf(value));
+	}
+
+	public void put(String name, long value) {
+		put(name, SimpleDtNumber.valueOf(value));
+	}
+
+	public void put(String name, double value) {
+		put(name, SimpleDtNumber.valueOf(value));
+	}
+
+	public void put(String name, String value) {
+		put(name, SimpleDtString.valueOf(value));
+	}
+
+	public void put(String name, boolean value) {
+		put(name, SimpleDtBoolean.valueOf(value));
+	}
+
+	/**
+	 * 移除属性
+	 * 
+	 * @param name 属性名
+	 * @return 若名称对应的属性存在，则返回，否则为null
+	 */
+	public DtBase remove(String name) {
+		DtBase old = getAttributeInner(name);
+		if (null != old || containsBase(name)) {
+			put(name, (DtBase) null);
+		}
+		return old;
+	}
+
+	/**
+	 * 原对象是否有此属性（值为json的null也算有）
+	 */
+	private boolean containsBase(String name) {
+		if (null != m_Indexed) {
+			return m_Indexed.index().indexOf(name) >= 0;
+		}
+		if (null != m_Base.getAttribute(name)) {
+			return true;
+		}
+		Enumeration<String> it = m_Base.getAttributeNames();
+		while (it.hasMoreElements()) {
+			String n = it.nextElement();
+			if (null == n ? null == name : n.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 是否有修改
+	 */
+	public boolean isModified() {
+		return null != m_Changes && !m_Changes.isEmpty();
+	}
+
+	@Override
+	protected DtBase getAttributeInner(String name) {
+		Map<String, DtBase> changes = m_Changes;
+		if (null != changes && changes.containsKey(name)) {
+			return changes.get(name);
+		}
+		return m_Base.getAttribute(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		Map<String, DtBase> changes = m_Changes;
+		if (null == changes || changes.isEmpty()) {
+			return m_Base.getAttributeNames();
+		}
+		List<String> names = new ArrayList<>(m_Base.getAttributeSize() + changes.size());
+		// 按名称是否存在（而不是值是否为null）屏蔽原对象的属性
+		Set<String> bases = new HashSet<>();
+		Enumeration<String> it = m_Base.getAttributeNames();
+		while (it.hasMoreElements()) {
+			String name = it.nextElement();
+			bases.add(name);
+			if (!changes.containsKey(name) || null != changes.get(name)) {
+				names.add(name);
+			}
+		}
+		for (Map.Entry<String, DtBase> e : changes.entrySet()) {
+			if (null != e.getValue() && !bases.contains(e.getKey())) {
+				names.add(e.getKey());
+			}
+		}
+		return Collections.enumeration(names);
+	}
+
+	@Override
+	public int getAttributeSize() {
+		Map<String, DtBase> changes = m_Changes;
+		if (null == changes || changes.isEmpty()) {
+			return m_Base.getAttributeSize();
+		}
+		int size = m_Base.getAttributeSize();
+		for (Map.Entry<String, DtBase> e : changes.entrySet()) {
+			boolean exists = containsBase(e.getKey());
+			if (null == e.getValue()) {
+				if (exists) {
+					size--;
+				}
+			} else if (!exists) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public void writeJson(JsonOutput output) throws IOException {
+		Map<String, DtBase> changes = m_Changes;
+		if (null == changes || changes.isEmpty()) {
+			JsonSerialEngine.formatObject(m_Base, output);
+			return;
+		}
+		if (null == m_Indexed) {
+			writeAttributes(output);
+			return;
+		}
+		JsonParser.Index index = m_Indexed.index();
+		output.append('{');
+		boolean first = true;
+		for (int i = 0; i < index.size; i++) {
+			String name = index.names[i];
+			DtBase value = null;
+			boolean changed = changes.containsKey(name);
+			if (changed) {
+				value = changes.get(name);
+				if (null == value) {
+					// 已移除
+					continue;
+				}
+			}
+			if (first) {
+				first = false;
+			} else {
+				output.append(',');
+			}
+			JsonSerialEngine.formatName(name, output);
+			if (changed) {
+				JsonSerialEngine.formatValue(value, output);
+			} else {
+				// 未修改的属性原样输出
+				output.append(index.json, index.begins[i], index.ends[i]);
+			}
+		}
+		for (Map.Entry<String, DtBase> e : changes.entrySet()) {
+			if (null == e.getValue() || index.indexOf(e.getKey()) >= 0) {
+				continue;
+			}
+			if (first) {
+				first = false;
+			} else {
+				output.append(',');
+			}
+			JsonSerialEngine.formatName(e.getKey(), output);
+			JsonSerialEngine.formatValue(e.getValue(), output);
+		}
+		output.append('}');
+	}
+
+	private void writeAttributes(JsonOutput output) throws IOException {
+		output.append('{');
+		boolean first = true;
+		Enumeration<String> names = getAttributeNames();
+		while (names.hasMoreElements()) {
+			String name = names.nextElement();
+			if (first) {
+				first = false;
+			} else {
+				output.append(',');
+			}
+			JsonSerialEngine.formatName(name, output);
+			JsonSerialEngine.formatValue(getAttributeInner(name), output);
+		}
+		output.append('}');
+	}
+
+	@Override
+	public String toString() {
+		return type().toString() + ' ' + m_Base + (null == m_Changes ? "" : " +" + m_Changes);
+	}
+}
@@ -12,6 +12,7 @@ package cn.weforward.protocol.serial;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -47,6 +48,8 @@ class JsonParser extends JsonUtil {
 		// StringBuilder valueBuilder;
 		/** 由流读取过头的残余字符（若值不为INVALID_CHAR时） */
 		char remainChar;
+		/** 子对象是否使用偏移索引方式（{@linkplain JsonIndexedDtObject}） */
+		boolean indexed;
 
 		Context(String str, int pos, int length) {
 			// this.str = str;
@@ -75,50 +78,8 @@ class JsonParser extends JsonUtil {
 		Map<String, DtBase> atts = new HashMap<>();
 		String name;
 		DtBase value;
-		char nameQuot;
 		while (ctx.in.available() >= 0) {
-			StringBuilder nameBuilder = JsonUtil._NameBuilderPool.poll();
-			try {
-				// nameBuilder.setLength(0);
-				// 读取名称，首先看是否有引号（单或双）开首
-				nameQuot = ch;
-				if ('"' != nameQuot && '\'' != nameQuot) {
-					// 没有引号开首
-					nameBuilder.append(nameQuot);
-					nameQuot = 0;
-				}
-				for (;;) {
-					ch = ctx.in.readChar();
-					if ('\\' == ch) {
-						// 转义符，处理转义符
-						JsonUtil.unescape(ctx.in, nameBuilder);
-						continue;
-					}
-					if (nameQuot == ch) {
-						// 碰到引号结束
-						break;
-					} else if (':' == ch && 0 == nameQuot) {
-						// 碰到“:”符结束，修整掉sbName后部的空格
-						JsonUtil.rtrim(nameBuilder);
-						break;
-					}
-					if (nameBuilder.length() == nameBuilder.capacity()) {
-						// 名称超长了？
-						throw new InvalidFormatException("名称过长(>128) " + ctx.in);
-					}
-					nameBuilder.append(ch);
-				}
-				// XXX 名称入池
-				// name = nameBuilder.toString();
-				name = JsonUtil._NamePool.intern(nameBuilder);
-			} finally {
-				JsonUtil._NameBuilderPool.offer(nameBuilder);
-			}
-
-			// 找到“:”分隔符
-			while (':' != ch) {
-				ch = ctx.in.readChar();
-			}
+			name = parseName(ctx, ch);
 			// ctx.valueBuilder.setLength(0);
 			value = parseValue(ctx, name);
 			// 对象属性
@@ -155,6 +116,341 @@ class JsonParser extends JsonUtil {
 		return atts;
 	}
 
+	/**
+	 * 只为对象的第一层属性建立偏移索引，属性值在访问时才由{@linkplain #parseValue(String, int, int)}解析
+	 * 
+	 * @param str
+	 *            json串
+	 * @param offset
+	 *            对象的开始位置
+	 * @param length
+	 *            对象的长度
+	 */
+	static Index indexObject(String str, int offset, int length) throws IOException {
+		Context ctx = new Context(str, offset, length);
+		char ch;
+		ch = JsonUtil.skipBlank(ctx.in, SKIP_BLANK_LIMIT);
+		if ('{' != ch) {
+			// 不以“{”开头的不是对象
+			throw new InvalidFormatException("不是预期的'" + ch + "' " + ctx.in);
+		}
+		Index index = new Index(str);
+		ch = JsonUtil.skipBlank(ctx.in, SKIP_BLANK_LIMIT);
+		if ('}' == ch) {
+			// 是“}”，空对象
+			return index;
+		}
+		String name;
+		int begin;
+		while (ctx.in.available() >= 0) {
+			name = parseName(ctx, ch);
+			ch = JsonUtil.skipBlank(ctx.in, SKIP_BLANK_LIMIT);
+			begin = ctx.in.position() - 1;
+			int end = skipValue(ctx, ch);
+			if ((RequestConstants.WF_REQ.equals(name) || ResponseConstants.WF_RESP.equals(name))
+					&& index.indexOf(name) >= 0) {
+				// 只认第一个WF_REQ、WF_RESP
+			} else {
+				index.put(name, begin, end);
+			}
+			if (INVALID_CHAR != ctx.remainChar) {
+				ch = ctx.remainChar;
+				ctx.remainChar = INVALID_CHAR;
+			} else {
+				// 跳过空格等
+				ch = JsonUtil.skipBlank(ctx.in, SKIP_BLANK_LIMIT);
+			}
+			if (',' == ch) {
+				// 下个兄弟节点
+				ch = JsonUtil.skipBlank(ctx.in, SKIP_BLANK_LIMIT);
+				continue;
+			}
+			if ('}' == ch) {
+				// 对象结束
+				break;
+			}
+			throw new InvalidFormatException("不是预期的'" + ch + "' " + ctx.in);
+		}
+		return index;
+	}
+
+	/**
+	 * 跳过一个值（不解析），返回值的结束位置
+	 * 
+	 * @param ctx
+	 *            分析过程环境
+	 * @param first
+	 *            值的首字符
+	 */
+	private static int skipValue(Context ctx, char first) throws IOException {
+		char ch;
+		if ('"' == first || '\'' == first) {
+			for (;;) {
+				ch = ctx.in.readChar();
+				if ('\\' == ch) {
+					// 转义符，跳过下一字符
+					ctx.in.readChar();
+					continue;
+				}
+				if (first == ch) {
+					return ctx.in.position();
+				}
+			}
+		}
+		if ('{' == first) {
+			findEndChar(ctx.in, '{', '}');
+			return ctx.in.position();
+		}
+		if ('[' == first) {
+			findEndChar(ctx.in, '[', ']');
+			return ctx.in.position();
+		}
+		ch = first;
+		for (;;) {
+			if (' ' == ch || '\r' == ch || '\n' == ch) {
+				// 空白符（结束）
+				return ctx.in.position() - 1;
+			}
+			if (',' == ch || '}' == ch || ']' == ch) {
+				// 分隔符（也结束），要把它放回残余字符供上游读取
+				ctx.remainChar = ch;
+				return ctx.in.position() - 1;
+			}
+			ch = ctx.in.readChar();
+		}
+	}
+
+	/**
+	 * 解析由{@linkplain #indexObject(String, int, int)}定位的属性值
+	 * 
+	 * @param str
+	 *            json串
+	 * @param begin
+	 *            值的开始位置
+	 * @param end
+	 *            值的结束位置
+	 */
+	static DtBase parseValue(String str, int begin, int end) throws IOException {
+		char first = str.charAt(begin);
+		if ('"' == first || '\'' == first) {
+			int last = end - 1;
+			int i = begin + 1;
+			while (i < last && '\\' != str.charAt(i)) {
+				i++;
+			}
+			if (i == last) {
+				// 没有转义符，直接引用原串
+				if (last == begin + 1) {
+					return SimpleDtString.valueOf("");
+				}
+				return new JsonDtString(str, begin + 1, last);
+			}
+			StringInput in = new StringInput(str, begin + 1, last - begin - 1);
+			StringBuilder valueBuilder = StringBuilderPool._8k.poll();
+			try {
+				while (in.available() > 0) {
+					char ch = in.readChar();
+					if ('\\' == ch) {
+						JsonUtil.unescape(in, valueBuilder);
+						continue;
+					}
+					valueBuilder.append(ch);
+				}
+				return SimpleDtString.valueOf(valueBuilder.toString());
+			} finally {
+				StringBuilderPool._8k.offer(valueBuilder);
+			}
+		}
+		if ('{' == first) {
+			return new JsonIndexedDtObject(str, begin, end - begin);
+		}
+		if ('[' == first) {
+			return new JsonDtList(str, begin, end - begin, true);
+		}
+		if ('-' == first || (first >= '0' && first <= '9')) {
+			// 是数值
+			return toNumber(str, begin, end);
+		}
+		String v = str.substring(begin, end);
+		if ("true".equalsIgnoreCase(v)) {
+			return SimpleDtBoolean.TRUE;
+		}
+		if ("false".equalsIgnoreCase(v)) {
+			return SimpleDtBoolean.FALSE;
+		}
+		if ("null".equalsIgnoreCase(v)) {
+			return null;
+		}
+		return toNumber(v, 0, v.length());
+	}
+
+	/**
+	 * 解析数值，不超过18位的整数直接逐位计算（不经中间的字串及装箱）
+	 * 
+	 * @param v
+	 *            数值串
+	 * @param begin
+	 *            开始位置
+	 * @param end
+	 *            结束位置
+	 */
+	static SimpleDtNumber toNumber(CharSequence v, int begin, int end) {
+		int i = begin;
+		boolean negative = (i < end && '-' == v.charAt(i));
+		if (negative) {
+			i++;
+		}
+		if (i < end && end - i < 19) {
+			long value = 0;
+			for (; i < end; i++) {
+				char ch = v.charAt(i);
+				if (ch < '0' || ch > '9') {
+					break;
+				}
+				value = value * 10 + (ch - '0');
+			}
+			if (i == end) {
+				return SimpleDtNumber.valueOf(negative ? -value : value);
+			}
+		}
+		String str = v.subSequence(begin, end).toString();
+		if (-1 != str.indexOf('.')) {
+			// 有小数位
+			return SimpleDtNumber.valueOf(Double.parseDouble(str));
+		}
+		return SimpleDtNumber.valueOf(Long.parseLong(str));
+	}
+
+	/**
+	 * 对象第一层属性的偏移索引（属性名哈希 → 值的开始/结束位置）
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	static class Index {
+		final String json;
+		String[] names;
+		int[] begins;
+		int[] ends;
+		int size;
+		/** 开放寻址的哈希表，存放（下标+1），0为空位 */
+		int[] slots;
+
+		Index(String json) {
+			this.json = json;
+			this.names = new String[8];
+			this.begins = new int[8];
+			this.ends = new int[8];
+			this.slots = new int[16];
+		}
+
+		void put(String name, int begin, int end) {
+			if (size == names.length) {
+				int cap = size << 1;
+				names = Arrays.copyOf(names, cap);
+				begins = Arrays.copyOf(begins, cap);
+				ends = Arrays.copyOf(ends, cap);
+			}
+			int idx = indexOf(name);
+			if (idx >= 0) {
+				// 重复的属性，后者覆盖前者（与HashMap一致）
+				begins[idx] = begin;
+				ends[idx] = end;
+				return;
+			}
+			names[size] = name;
+			begins[size] = begin;
+			ends[size] = end;
+			size++;
+			if ((size << 1) > slots.length) {
+				slots = new int[slots.length << 1];
+				for (int i = 0; i < size; i++) {
+					slot(names[i], i);
+				}
+			} else {
+				slot(name, size - 1);
+			}
+		}
+
+		private void slot(String name, int idx) {
+			int mask = slots.length - 1;
+			int i = name.hashCode() & mask;
+			while (0 != slots[i]) {
+				i = (i + 1) & mask;
+			}
+			slots[i] = idx + 1;
+		}
+
+		int indexOf(String name) {
+			int mask = slots.length - 1;
+			int i = name.hashCode() & mask;
+			int s;
+			while (0 != (s = slots[i])) {
+				String n = names[s - 1];
+				if (n == name || n.equals(name)) {
+					return s - 1;
+				}
+				i = (i + 1) & mask;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * 读取属性名，完成后位置在“:”之后
+	 * 
+	 * @param ctx
+	 *            分析过程环境
+	 * @param ch
+	 *            名称的首字符
+	 */
+	private static String parseName(Context ctx, char ch) throws IOException {
+		String name;
+		char nameQuot;
+		StringBuilder nameBuilder = JsonUtil._NameBuilderPool.poll();
+		try {
+			// nameBuilder.setLength(0);
+			// 读取名称，首先看是否有引号（单或双）开首
+			nameQuot = ch;
+			if ('"' != nameQuot && '\'' != nameQuot) {
+				// 没有引号开首
+				nameBuilder.append(nameQuot);
+				nameQuot = 0;
+			}
+			for (;;) {
+				ch = ctx.in.readChar();
+				if ('\\' == ch) {
+					// 转义符，处理转义符
+					JsonUtil.unescape(ctx.in, nameBuilder);
+					continue;
+				}
+				if (nameQuot == ch) {
+					// 碰到引号结束
+					break;
+				} else if (':' == ch && 0 == nameQuot) {
+					// 碰到“:”符结束，修整掉sbName后部的空格
+					JsonUtil.rtrim(nameBuilder);
+					break;
+				}
+				if (nameBuilder.length() == nameBuilder.capacity()) {
+					// 名称超长了？
+					throw new InvalidFormatException("名称过长(>128) " + ctx.in);
+				}
+				nameBuilder.append(ch);
+			}
+			// XXX 名称入池
+			// name = nameBuilder.toString();
+			name = JsonUtil._NamePool.intern(nameBuilder);
+		} finally {
+			JsonUtil._NameBuilderPool.offer(nameBuilder);
+		}
+		// 找到“:”分隔符
+		while (':' != ch) {
+			ch = ctx.in.readChar();
+		}
+		return name;
+	}
+
 	/**
 	 * 解析Json数组
 	 * 
@@ -164,7 +460,12 @@ class JsonParser extends JsonUtil {
 	 * @throws IOException
 	 */
 	static List<DtBase> parseArray(String str, int offset, int length) throws IOException {
+		return parseArray(str, offset, length, false);
+	}
+
+	static List<DtBase> parseArray(String str, int offset, int length, boolean indexed) throws IOException {
 		Context ctx = new Context(str, offset, length);
+		ctx.indexed = indexed;
 		char ch;
 		ch = JsonUtil.skipBlank(ctx.in, SKIP_BLANK_LIMIT);
 		if ('[' != ch) {
@@ -265,13 +566,17 @@ class JsonParser extends JsonUtil {
 			if ('{' == first) {
 				// 子对象
 				findEndChar(ctx.in, '{', '}');
+				if (ctx.indexed) {
+					return new JsonIndexedDtObject(ctx.in.getString(), startIndex, ctx.in.position() - startIndex);
+				}
 				JsonDtObject ret = new JsonDtObject(ctx.in.getString(), startIndex, ctx.in.position() - startIndex);
 				return ret;
 			}
 			if ('[' == first) {
 				// 数组
 				findEndChar(ctx.in, '[', ']');
-				JsonDtList ret = new JsonDtList(ctx.in.getString(), startIndex, ctx.in.position() - startIndex);
+				JsonDtList ret = new JsonDtList(ctx.in.getString(), startIndex, ctx.in.position() - startIndex,
+						ctx.indexed);
 				return ret;
 			}
 			// 其它类型
@@ -301,18 +606,10 @@ class JsonParser extends JsonUtil {
 			}
 
 			// 是数值
-			v = valueBuilder.toString();
+			return toNumber(valueBuilder, 0, valueBuilder.length());
 		} finally {
 			StringBuilderPool._8k.offer(valueBuilder);
 		}
-		Number num;
-		if (-1 != v.indexOf('.')) {
-			// 有小数位
-			num = Double.parseDouble(v);
-		} else {
-			num = Long.parseLong(v);
-		}
-		return SimpleDtNumber.valueOf(num);
 	}
 
 	private static void findEndChar(StringInput in, char begin, char end) throws IOException {
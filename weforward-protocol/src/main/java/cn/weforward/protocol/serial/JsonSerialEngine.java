@@ -17,14 +17,17 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 
-import cn.weforward.common.KvPair;
 import cn.weforward.common.execption.InvalidFormatException;
 import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.common.io.PooledBufferedOutputStream;
+import cn.weforward.common.json.JsonNameCache;
 import cn.weforward.common.json.JsonOutput;
 import cn.weforward.common.json.JsonOutputStream;
 import cn.weforward.common.json.JsonUtil;
 import cn.weforward.common.util.Bytes;
 import cn.weforward.protocol.Header;
+import cn.weforward.protocol.RequestConstants;
+import cn.weforward.protocol.ResponseConstants;
 import cn.weforward.protocol.datatype.DataType;
 import cn.weforward.protocol.datatype.DtBase;
 import cn.weforward.protocol.datatype.DtBoolean;
@@ -32,7 +35,10 @@ import cn.weforward.protocol.datatype.DtList;
 import cn.weforward.protocol.datatype.DtNumber;
 import cn.weforward.protocol.datatype.DtObject;
 import cn.weforward.protocol.datatype.DtString;
+import cn.weforward.protocol.datatype.VisitableDtObject;
 import cn.weforward.protocol.exception.SerialException;
+import cn.weforward.protocol.support.datatype.AbstractDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtNumber;
 
 /**
  * Json格式序列化
@@ -41,6 +47,23 @@ import cn.weforward.protocol.exception.SerialException;
  *
  */
 public class JsonSerialEngine implements SerialEngine {
+	/** 反序列化时是否使用偏移索引方式（{@linkplain JsonIndexedDtObject}），适合只读取部分属性或原样转发的场景 */
+	public static final boolean INDEX_MODE = "true"
+			.equalsIgnoreCase(System.getProperty("JsonSerialEngine.INDEX_MODE"));
+
+	static {
+		// 请求/响应信封中的属性名
+		JsonNameCache.register(RequestConstants.WF_REQ, RequestConstants.VERSION, RequestConstants.RESOURCE_ID,
+				RequestConstants.RESOURCE_RIGHT, RequestConstants.TRACE_TOKEN, RequestConstants.TENANT,
+				RequestConstants.OPENID, RequestConstants.CLIENT_ACCESS, RequestConstants.CLIENT_ADDR,
+				RequestConstants.FORWARD_FROM, RequestConstants.ID, RequestConstants.WAIT_TIMEOUT,
+				RequestConstants.MARKS, RequestConstants.INVOKE, RequestConstants.METHOD, RequestConstants.PARAMS);
+		JsonNameCache.register(ResponseConstants.WF_RESP, ResponseConstants.WF_CODE, ResponseConstants.WF_MSG,
+				ResponseConstants.RESOURCE_ID, ResponseConstants.RESOURCE_EXPIRE, ResponseConstants.RESOURCE_SERVICE,
+				ResponseConstants.RESOURCE_URL, ResponseConstants.MARKS, ResponseConstants.FORWARD_TO,
+				ResponseConstants.NOTIFY_RECEIVES, ResponseConstants.RESULT, ResponseConstants.CODE,
+				ResponseConstants.MSG, ResponseConstants.CONTENT);
+	}
 
 	@Override
 	public String getType() {
@@ -53,44 +76,116 @@ public class JsonSerialEngine implements SerialEngine {
 		if (!Header.CHARSET_UTF8.equalsIgnoreCase(charset)) {
 			throw new SerialException("不支持的编码：" + charset);
 		}
-		JsonOutputStream jos = new JsonOutputStream(output);
-		formatObject(object, jos);
+		// 经池化缓冲区合并写入，避免逐字节调用下层流（如验证器）
+		PooledBufferedOutputStream buffered = new PooledBufferedOutputStream(output);
+		try {
+			JsonOutputStream jos = new JsonOutputStream(buffered);
+			formatObject(object, jos);
+			buffered.finish();
+		} finally {
+			buffered.release();
+		}
 	}
 
 	public static void formatObject(DtObject object, JsonOutput output) throws IOException {
+		if (object instanceof JsonWritable) {
+			((JsonWritable) object).writeJson(output);
+			return;
+		}
 		if (object instanceof JsonDtObject) {
 			String json = ((JsonDtObject) object).getJsonString();
 			if (null != json) {
 				output.append(json);
 				return;
 			}
+		} else if (object instanceof JsonBytesDtObject) {
+			JsonBytesDtObject jbo = (JsonBytesDtObject) object;
+			if (output instanceof JsonOutputStream) {
+				Bytes bytes = jbo.getJsonBytes();
+				if (null != bytes) {
+					((JsonOutputStream) output).write(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+					return;
+				}
+			} else {
+				String json = jbo.getJsonString();
+				if (null != json) {
+					output.append(json);
+					return;
+				}
+			}
 		}
 		output.append('{');
-		boolean first = true;
-		Enumeration<KvPair<String, DtBase>> atts = object.getAttributes();
-		while (atts.hasMoreElements()) {
-			KvPair<String, DtBase> att = atts.nextElement();
-			if (first) {
-				first = false;
+		AbstractDtObject.forEach(object, new AttributeFormatter(output));
+		output.append('}');
+	}
+
+	/**
+	 * 逐个输出对象的属性
+	 */
+	static class AttributeFormatter implements VisitableDtObject.AttributeVisitor<IOException> {
+		final JsonOutput m_Output;
+		boolean m_First = true;
+
+		AttributeFormatter(JsonOutput output) {
+			m_Output = output;
+		}
+
+		@Override
+		public void visit(String name, DtBase value) throws IOException {
+			if (m_First) {
+				m_First = false;
 			} else {
-				output.append(',');
+				m_Output.append(',');
 			}
-			output.append('"');
-			JsonUtil.escape(att.getKey(), output);
-			output.append('"');
-			output.append(':');
-			formatValue(att.getValue(), output);
+			formatName(name, m_Output);
+			formatValue(value, m_Output);
 		}
-		output.append('}');
+	}
+
+	/**
+	 * 输出属性名（<code>"name":</code>）
+	 * 
+	 * @param name   属性名
+	 * @param output 输出
+	 * @throws IOException IO异常时抛出
+	 */
+	public static void formatName(String name, JsonOutput output) throws IOException {
+		if (output instanceof JsonOutputStream) {
+			((JsonOutputStream) output).writeName(name);
+			return;
+		}
+		output.append('"');
+		JsonUtil.escape(name, output);
+		output.append('"');
+		output.append(':');
 	}
 
 	public static void formatList(DtList list, JsonOutput output) throws IOException {
+		if (list instanceof JsonWritable) {
+			((JsonWritable) list).writeJson(output);
+			return;
+		}
 		if (list instanceof JsonDtList) {
 			String json = ((JsonDtList) list).getJsonString();
 			if (null != json) {
 				output.append(json);
 				return;
 			}
+		} else if (list instanceof JsonBytesDtList) {
+			JsonBytesDtList jbl = (JsonBytesDtList) list;
+			if (output instanceof JsonOutputStream) {
+				Bytes bytes = jbl.getJsonBytes();
+				if (null != bytes) {
+					((JsonOutputStream) output).write(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+					return;
+				}
+			} else {
+				String json = jbl.getJsonString();
+				if (null != json) {
+					output.append(json);
+					return;
+				}
+			}
 		}
 		output.append('[');
 		boolean first = true;
@@ -120,8 +215,7 @@ public class JsonSerialEngine implements SerialEngine {
 			return;
 		}
 		if (DataType.NUMBER == value.type()) {
-			DtNumber v = (DtNumber) value;
-			output.append(v.valueNumber().toString());
+			SimpleDtNumber.format((DtNumber) value, output);
 			return;
 		}
 		if (DataType.BOOLEAN == value.type()) {
@@ -162,19 +256,11 @@ public class JsonSerialEngine implements SerialEngine {
 	}
 
 	public static DtObject parseObject(InputStream in, String charset) throws SerialException, IOException {
-		BytesOutputStream bos = null;
-		try {
-			bos = new BytesOutputStream(in);
-			Bytes bytes = bos.getBytes();
-			String json = new String(bytes.getBytes(), bytes.getOffset(), bytes.getSize(), charset);
-			return new JsonDtObject(json);
-		} finally {
-			if (null != bos) {
-				try {
-					bos.close();
-				} catch (Exception e) {
-				}
-			}
+		Bytes bytes = BytesOutputStream.toBytes(in);
+		String json = new String(bytes.getBytes(), bytes.getOffset(), bytes.getSize(), charset);
+		if (INDEX_MODE) {
+			return new JsonIndexedDtObject(json);
 		}
+		return new JsonDtObject(json);
 	}
 }
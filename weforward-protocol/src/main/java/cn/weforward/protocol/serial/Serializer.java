@@ -29,6 +29,9 @@ import cn.weforward.protocol.exception.WeforwardException;
  *
  */
 public class Serializer {
+	/** 默认的json格式是否直接在UTF-8字节上解析 */
+	public static final boolean JSON_BYTES_PARSER = "true"
+			.equalsIgnoreCase(System.getProperty("Serializer.JSON_BYTES_PARSER"));
 
 	Map<String, SerialEngine> m_Engines;
 
@@ -57,7 +60,9 @@ public class Serializer {
 		SerialEngine e = m_Engines.get(type.toLowerCase());
 		if (null == e) {
 			if (Header.CONTENT_TYPE_JSON.equals(type)) {
-				e = new JsonSerialEngine();
+				e = JSON_BYTES_PARSER ? new JsonBytesSerialEngine() : new JsonSerialEngine();
+			} else if (Header.CONTENT_TYPE_BINARY.equals(type)) {
+				e = new BinarySerialEngine();
 			}
 			if (null != e) {
 				putEngine(e);
@@ -10,22 +10,41 @@
  */
 package cn.weforward.protocol.support;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import cn.weforward.common.json.JsonNameCache;
+import cn.weforward.protocol.datatype.DataType;
 import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtBoolean;
+import cn.weforward.protocol.datatype.DtDate;
+import cn.weforward.protocol.datatype.DtNumber;
 import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.datatype.DtString;
 import cn.weforward.protocol.exception.ObjectMappingException;
 import cn.weforward.protocol.ext.ObjectMapperSet;
+import cn.weforward.protocol.support.datatype.DataTypeConverter;
+import cn.weforward.protocol.support.datatype.SimpleDtBoolean;
+import cn.weforward.protocol.support.datatype.SimpleDtDate;
+import cn.weforward.protocol.support.datatype.SimpleDtNumber;
 import cn.weforward.protocol.support.datatype.SimpleDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtString;
 
 /**
  * 符合JavaBean规范的类（包含public的空构造，以及public set/get方法)的映射器
+ * <p>
+ * 构造时为每个属性预先生成访问器：以{@linkplain MethodHandle}直接调用get/set方法（不再经{@linkplain Method#invoke}），
+ * 并按属性类型预先确定转换方式，映射时不用再逐个值判断类型
  * 
  * @author zhangpengji
  *
@@ -36,6 +55,10 @@ public class BeanObjectMapper<T> extends AbstractObjectMapper<T> implements Clon
 	protected final Constructor<T> m_Constructor;
 	protected final Map<String, Method> m_GetMethods;
 	protected final Map<String, Method> m_SetMethods;
+	/** 预先生成的属性读取器 */
+	protected final Getter[] m_Getters;
+	/** 预先生成的属性设置器 */
+	protected final Setter[] m_Setters;
 
 	public static <T> BeanObjectMapper<T> getInstance(Class<T> clazz) {
 		return BeanObjectMapperSet.INSTANCE.getObjectMapper(clazz);
@@ -51,6 +74,16 @@ public class BeanObjectMapper<T> extends AbstractObjectMapper<T> implements Clon
 		m_GetMethods = new HashMap<String, Method>();
 		m_SetMethods = new HashMap<String, Method>();
 		findMethods(clazz, m_SetMethods, m_GetMethods);
+		m_Getters = new Getter[m_GetMethods.size()];
+		int i = 0;
+		for (Entry<String, Method> entry : m_GetMethods.entrySet()) {
+			m_Getters[i++] = new Getter(entry.getKey(), entry.getValue());
+		}
+		m_Setters = new Setter[m_SetMethods.size()];
+		i = 0;
+		for (Entry<String, Method> entry : m_SetMethods.entrySet()) {
+			m_Setters[i++] = new Setter(entry.getKey(), entry.getValue());
+		}
 	}
 
 	private static void findMethods(Class<?> clazz, Map<String, Method> sets, Map<String, Method> gets) {
@@ -96,16 +129,8 @@ public class BeanObjectMapper<T> extends AbstractObjectMapper<T> implements Clon
 	@Override
 	public DtObject toDtObject(T object) throws ObjectMappingException {
 		SimpleDtObject result = new SimpleDtObject(false);
-		for (Entry<String, Method> entry : m_GetMethods.entrySet()) {
-			Method method = entry.getValue();
-			Object ret;
-			try {
-				ret = method.invoke(object);
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-				throw new ObjectMappingException("方法[" + method.getName() + "]调用出错", e);
-			}
-			DtBase att = toDtBase(ret);
-			result.put(entry.getKey(), att);
+		for (Getter getter : m_Getters) {
+			result.put(getter.name, getter.get(this, object));
 		}
 		return result;
 	}
@@ -119,25 +144,311 @@ public class BeanObjectMapper<T> extends AbstractObjectMapper<T> implements Clon
 				| InvocationTargetException e) {
 			throw new ObjectMappingException("构造[" + m_Clazz.getName() + "]对象失败", e);
 		}
-		for (Entry<String, Method> entry : m_SetMethods.entrySet()) {
-			DtBase att = obj.getAttribute(entry.getKey());
+		for (Setter setter : m_Setters) {
+			DtBase att = obj.getAttribute(setter.name);
 			if (null == att) {
 				continue;
 			}
-			Method method = entry.getValue();
+			setter.set(this, result, att);
+		}
+		return result;
+	}
+
+	/** 转换方式 - 其它（经{@linkplain AbstractObjectMapper}通用转换） */
+	static final int KIND_OTHER = 0;
+	static final int KIND_BYTE = 1;
+	static final int KIND_SHORT = 2;
+	static final int KIND_INT = 3;
+	static final int KIND_LONG = 4;
+	static final int KIND_FLOAT = 5;
+	static final int KIND_DOUBLE = 6;
+	static final int KIND_STRING = 7;
+	static final int KIND_DATE = 8;
+	static final int KIND_BOOLEAN = 9;
+	/** 转换方式 - 集合（按泛型声明转换） */
+	static final int KIND_COLLECTION = 10;
+
+	static int kindOf(Class<?> cls) {
+		if (byte.class == cls || Byte.class == cls) {
+			return KIND_BYTE;
+		}
+		if (short.class == cls || Short.class == cls) {
+			return KIND_SHORT;
+		}
+		if (int.class == cls || Integer.class == cls) {
+			return KIND_INT;
+		}
+		if (long.class == cls || Long.class == cls) {
+			return KIND_LONG;
+		}
+		if (float.class == cls || Float.class == cls) {
+			return KIND_FLOAT;
+		}
+		if (double.class == cls || Double.class == cls) {
+			return KIND_DOUBLE;
+		}
+		if (String.class == cls) {
+			return KIND_STRING;
+		}
+		if (Date.class.isAssignableFrom(cls)) {
+			return KIND_DATE;
+		}
+		if (boolean.class == cls || Boolean.class == cls) {
+			return KIND_BOOLEAN;
+		}
+		if (Collection.class.isAssignableFrom(cls)) {
+			return KIND_COLLECTION;
+		}
+		return KIND_OTHER;
+	}
+
+	/**
+	 * 生成方法的调用句柄，无法生成时（如声明方法的类不是public）返回null，改用反射调用
+	 */
+	static MethodHandle unreflect(Method method, MethodType type) {
+		try {
+			return MethodHandles.publicLookup().unreflect(method).asType(type);
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 属性读取器（get/is方法）
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	static final class Getter {
+		static final MethodType TYPE = MethodType.methodType(Object.class, Object.class);
+
+		final String name;
+		final Method method;
+		final MethodHandle handle;
+		final int kind;
+		/** 是否基本类型（以原类型的句柄调用，不装箱） */
+		final boolean primitive;
+
+		Getter(String name, Method method) {
+			this.name = JsonNameCache.register(name);
+			this.method = method;
+			Class<?> type = method.getReturnType();
+			this.kind = kindOf(type);
+			MethodHandle handle = null;
+			if (type.isPrimitive() && KIND_OTHER != kind) {
+				handle = unreflect(method, MethodType.methodType(type, Object.class));
+			}
+			this.primitive = (null != handle);
+			if (null == handle) {
+				handle = unreflect(method, TYPE);
+			}
+			this.handle = handle;
+		}
+
+		DtBase get(AbstractObjectMapper<?> mapper, Object object) throws ObjectMappingException {
+			if (primitive) {
+				return getPrimitive(object);
+			}
+			Object ret;
+			try {
+				if (null != handle) {
+					ret = (Object) handle.invokeExact(object);
+				} else {
+					ret = method.invoke(object);
+				}
+			} catch (InvocationTargetException e) {
+				throw new ObjectMappingException("方法[" + method.getName() + "]调用出错", e);
+			} catch (ObjectMappingException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new ObjectMappingException("方法[" + method.getName() + "]调用出错", e);
+			}
+			if (null == ret) {
+				return null;
+			}
+			switch (kind) {
+			case KIND_BYTE:
+			case KIND_SHORT:
+			case KIND_INT:
+				return SimpleDtNumber.valueOf(((Number) ret).intValue());
+			case KIND_LONG:
+				return SimpleDtNumber.valueOf(((Number) ret).longValue());
+			case KIND_FLOAT:
+			case KIND_DOUBLE:
+				return SimpleDtNumber.valueOf(((Number) ret).doubleValue());
+			case KIND_STRING:
+				return SimpleDtString.valueOf((String) ret);
+			case KIND_DATE:
+				return SimpleDtDate.valueOf((Date) ret);
+			case KIND_BOOLEAN:
+				return SimpleDtBoolean.valueOf((Boolean) ret);
+			}
+			return mapper.toDtBase(ret);
+		}
+
+		private DtBase getPrimitive(Object object) throws ObjectMappingException {
+			try {
+				switch (kind) {
+				case KIND_BYTE:
+					return SimpleDtNumber.valueOf((byte) handle.invokeExact(object));
+				case KIND_SHORT:
+					return SimpleDtNumber.valueOf((short) handle.invokeExact(object));
+				case KIND_INT:
+					return SimpleDtNumber.valueOf((int) handle.invokeExact(object));
+				case KIND_LONG:
+					return SimpleDtNumber.valueOf((long) handle.invokeExact(object));
+				case KIND_FLOAT:
+					return SimpleDtNumber.valueOf((float) handle.invokeExact(object));
+				case KIND_DOUBLE:
+					return SimpleDtNumber.valueOf((double) handle.invokeExact(object));
+				case KIND_BOOLEAN:
+					return SimpleDtBoolean.valueOf((boolean) handle.invokeExact(object));
+				}
+			} catch (ObjectMappingException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new ObjectMappingException("方法[" + method.getName() + "]调用出错", e);
+			}
+			throw new ObjectMappingException("不支持的类型：" + method.getReturnType());
+		}
+	}
+
+	/**
+	 * 属性设置器（set方法）
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	static final class Setter {
+		static final MethodType TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+		final String name;
+		final Method method;
+		final MethodHandle handle;
+		final int kind;
+		final Class<?> type;
+		final Type genericType;
+
+		/** 是否基本类型（以原类型的句柄调用，不装箱） */
+		final boolean primitive;
+
+		Setter(String name, Method method) {
+			this.name = name;
+			this.method = method;
+			this.type = method.getParameterTypes()[0];
+			this.genericType = method.getGenericParameterTypes()[0];
+			this.kind = kindOf(this.type);
+			MethodHandle handle = null;
+			if (this.type.isPrimitive() && KIND_OTHER != kind) {
+				handle = unreflect(method, MethodType.methodType(void.class, Object.class, this.type));
+			}
+			this.primitive = (null != handle);
+			if (null == handle) {
+				handle = unreflect(method, TYPE);
+			}
+			this.handle = handle;
+		}
+
+		void set(AbstractObjectMapper<?> mapper, Object object, DtBase value) throws ObjectMappingException {
+			if (primitive) {
+				setPrimitive(object, value);
+				return;
+			}
 			Object arg;
-			Class<?> cls = method.getParameterTypes()[0];
-			if (Collection.class.isAssignableFrom(cls)) {
-				arg = fromDtBase(att, method.getGenericParameterTypes()[0]);
-			} else {
-				arg = fromDtBase(att, cls);
+			try {
+				arg = convert(mapper, value);
+			} catch (ClassCastException e) {
+				throw new ObjectMappingException("不支持的类型转换：" + value.type() + " -> " + type.getName());
 			}
 			try {
-				method.invoke(result, arg);
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+				if (null != handle) {
+					handle.invokeExact(object, arg);
+				} else {
+					method.invoke(object, arg);
+				}
+			} catch (InvocationTargetException e) {
+				throw new ObjectMappingException("方法[" + method.getName() + "]调用出错", e);
+			} catch (ObjectMappingException e) {
+				throw e;
+			} catch (Throwable e) {
 				throw new ObjectMappingException("方法[" + method.getName() + "]调用出错", e);
 			}
 		}
-		return result;
+
+		private void setPrimitive(Object object, DtBase value) throws ObjectMappingException {
+			DtNumber number = null;
+			boolean bool = false;
+			try {
+				if (KIND_BOOLEAN == kind) {
+					bool = ((DtBoolean) value).value();
+				} else {
+					number = (DtNumber) value;
+				}
+			} catch (ClassCastException e) {
+				throw new ObjectMappingException("不支持的类型转换：" + value.type() + " -> " + type.getName());
+			}
+			try {
+				switch (kind) {
+				case KIND_BYTE:
+					handle.invokeExact(object, (byte) number.valueInt());
+					break;
+				case KIND_SHORT:
+					handle.invokeExact(object, (short) number.valueInt());
+					break;
+				case KIND_INT:
+					handle.invokeExact(object, number.valueInt());
+					break;
+				case KIND_LONG:
+					handle.invokeExact(object, number.valueLong());
+					break;
+				case KIND_FLOAT:
+					handle.invokeExact(object, (float) number.valueDouble());
+					break;
+				case KIND_DOUBLE:
+					handle.invokeExact(object, number.valueDouble());
+					break;
+				case KIND_BOOLEAN:
+					handle.invokeExact(object, bool);
+					break;
+				}
+			} catch (ObjectMappingException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new ObjectMappingException("方法[" + method.getName() + "]调用出错", e);
+			}
+		}
+
+		private Object convert(AbstractObjectMapper<?> mapper, DtBase value) {
+			switch (kind) {
+			case KIND_BYTE:
+				return Byte.valueOf((byte) ((DtNumber) value).valueInt());
+			case KIND_SHORT:
+				return Short.valueOf((short) ((DtNumber) value).valueInt());
+			case KIND_INT:
+				return ((DtNumber) value).valueInt();
+			case KIND_LONG:
+				return ((DtNumber) value).valueLong();
+			case KIND_FLOAT:
+				return Float.valueOf((float) ((DtNumber) value).valueDouble());
+			case KIND_DOUBLE:
+				return ((DtNumber) value).valueDouble();
+			case KIND_STRING:
+				return ((DtString) value).value();
+			case KIND_DATE: {
+				DtDate date;
+				if (DataType.STRING == value.type()) {
+					date = DataTypeConverter.convert(value, DataType.DATE);
+				} else {
+					date = (DtDate) value;
+				}
+				return date.valueDate();
+			}
+			case KIND_BOOLEAN:
+				return ((DtBoolean) value).value();
+			case KIND_COLLECTION:
+				return mapper.fromDtBase(value, genericType);
+			}
+			return mapper.fromDtBase(value, type);
+		}
 	}
 }
@@ -0,0 +1,424 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.support;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.weforward.common.sys.GcCleaner;
+import cn.weforward.common.util.LruCache;
+import cn.weforward.common.util.LruCache.CacheNode;
+import cn.weforward.common.util.NumberUtil;
+import cn.weforward.common.util.ThreadPool;
+import cn.weforward.protocol.Access;
+import cn.weforward.protocol.AccessLoader;
+
+/**
+ * 带缓存的Access加载器，装饰（通常需要经网关远程获取的）加载器，使每个请求的验证不需要同步远程加载
+ * <p>
+ * 缓存项在有效期（TTL）内直接返回；超过刷新点（默认为有效期的3/4）后仍返回旧值，同时由后台线程刷新；
+ * 只有首次加载或超过有效期才同步加载，且同一accessId同时只有一个线程加载，其它线程等它的结果。
+ * 不存在的accessId也缓存较短的时间，以免无效的accessId大量请求时频繁穿透加载
+ * 
+ * @author zhangpengji
+ *
+ */
+public class CachingAccessLoader implements AccessLoader {
+	static final Logger _Logger = LoggerFactory.getLogger(CachingAccessLoader.class);
+
+	/** 默认缓存项数 */
+	public static final int CAPACITY = NumberUtil.toInt(System.getProperty("CachingAccessLoader.CAPACITY"), 10000);
+	/** 默认有效期（秒） */
+	public static final int TTL = NumberUtil.toInt(System.getProperty("CachingAccessLoader.TTL"), 5 * 60);
+	/** 默认不存在项的有效期（秒） */
+	public static final int NEGATIVE_TTL = NumberUtil.toInt(System.getProperty("CachingAccessLoader.NEGATIVE_TTL"),
+			10);
+
+	/** 共享的后台刷新线程池 */
+	private static Executor _Refresher;
+
+	/** 被装饰的加载器 */
+	protected final AccessLoader m_Loader;
+	/** 缓存 */
+	protected final LruCache<String, Entry> m_Cache;
+	/** 后台刷新执行器 */
+	protected Executor m_Executor;
+	/** 有效期（毫秒） */
+	protected long m_Ttl;
+	/** 刷新点（毫秒） */
+	protected long m_RefreshAhead;
+	/** 不存在项的有效期（毫秒） */
+	protected long m_NegativeTtl;
+
+	/** 获取次数 */
+	protected final AtomicLong m_Gets;
+	/** 同步加载（未命中）次数 */
+	protected final AtomicLong m_Misses;
+	/** 加载次数（含后台刷新） */
+	protected final AtomicLong m_Loads;
+	/** 加载失败次数 */
+	protected final AtomicLong m_LoadFails;
+	/** 加载总耗时（纳秒） */
+	protected final AtomicLong m_LoadNanos;
+	/** 加载最大耗时（纳秒） */
+	protected volatile long m_LoadMaxNanos;
+
+	final LruCache.Loader<String, Entry> m_CacheLoader = new LruCache.Loader<String, Entry>() {
+		@Override
+		public Entry load(String key, CacheNode<String, Entry> node) {
+			m_Misses.incrementAndGet();
+			return CachingAccessLoader.this.load(key);
+		}
+	};
+
+	/**
+	 * 以默认参数构造
+	 * 
+	 * @param loader 被装饰的加载器
+	 */
+	public CachingAccessLoader(AccessLoader loader) {
+		this(loader, CAPACITY);
+	}
+
+	/**
+	 * 构造
+	 * 
+	 * @param loader   被装饰的加载器
+	 * @param capacity 最大缓存项数
+	 */
+	public CachingAccessLoader(AccessLoader loader, int capacity) {
+		if (null == loader) {
+			throw new NullPointerException("loader is null");
+		}
+		m_Loader = loader;
+		m_Cache = new LruCache<String, Entry>(capacity, "access");
+		m_Gets = new AtomicLong();
+		m_Misses = new AtomicLong();
+		m_Loads = new AtomicLong();
+		m_LoadFails = new AtomicLong();
+		m_LoadNanos = new AtomicLong();
+		setTtl(TTL);
+		setNegativeTtl(NEGATIVE_TTL);
+		GcCleaner.register(m_Cache);
+	}
+
+	/**
+	 * 有效期，超过此时间的缓存项须同步重新加载
+	 * 
+	 * @param seconds 秒数
+	 */
+	public void setTtl(int seconds) {
+		m_Ttl = seconds * 1000L;
+		setRefreshAhead(seconds - seconds / 4);
+		// 空闲超过有效期的项没必要留着
+		m_Cache.setTimeout(seconds);
+	}
+
+	public int getTtl() {
+		return (int) (m_Ttl / 1000);
+	}
+
+	/**
+	 * 刷新点，缓存项超过此时间（且未到有效期）时由后台刷新
+	 * 
+	 * @param seconds 秒数，须小于有效期
+	 */
+	public void setRefreshAhead(int seconds) {
+		m_RefreshAhead = seconds * 1000L;
+	}
+
+	public int getRefreshAhead() {
+		return (int) (m_RefreshAhead / 1000);
+	}
+
+	/**
+	 * 不存在项的有效期
+	 * 
+	 * @param seconds 秒数，为0则不缓存
+	 */
+	public void setNegativeTtl(int seconds) {
+		m_NegativeTtl = seconds * 1000L;
+	}
+
+	public int getNegativeTtl() {
+		return (int) (m_NegativeTtl / 1000);
+	}
+
+	/**
+	 * 后台刷新的执行器，未指定时使用共享的线程池
+	 * 
+	 * @param executor 执行器
+	 */
+	public void setExecutor(Executor executor) {
+		m_Executor = executor;
+	}
+
+	/**
+	 * 同步加载时等待其它线程加载结果的超时值
+	 * 
+	 * @param mills 毫秒
+	 */
+	public void setPendingTimeout(int mills) {
+		m_Cache.setPendingTimeout(mills);
+	}
+
+	@Override
+	public Access getValidAccess(String accessId) {
+		if (null == accessId) {
+			return null;
+		}
+		m_Gets.incrementAndGet();
+		Entry entry = m_Cache.getHintLoad(accessId, m_CacheLoader);
+		if (null == entry) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (now > entry.expireAt || !isValid(entry.access)) {
+			// 已过期（或凭证在缓存期间已失效），只能同步加载
+			entry = reload(accessId, entry);
+		} else if (now > entry.refreshAt) {
+			refresh(accessId, entry);
+		}
+		return entry.access;
+	}
+
+	/* 不存在的项（null）由其有效期控制 */
+	private static boolean isValid(Access access) {
+		return null == access || access.isValid();
+	}
+
+	/**
+	 * 使缓存项失效（如凭证已变更）
+	 * 
+	 * @param accessId 凭证id
+	 */
+	public void invalidate(String accessId) {
+		m_Cache.remove(accessId);
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public void invalidateAll() {
+		m_Cache.clear();
+	}
+
+	/**
+	 * 命中率（百分比），即不需要同步加载的比例
+	 * 
+	 * @return 百分比
+	 */
+	public int getHitRate() {
+		long gets = m_Gets.get();
+		if (gets <= 0) {
+			return 0;
+		}
+		long hits = gets - m_Misses.get();
+		return (hits > 0) ? (int) ((hits * 100) / gets) : 0;
+	}
+
+	/**
+	 * 获取次数
+	 */
+	public long getGetCount() {
+		return m_Gets.get();
+	}
+
+	/**
+	 * 同步加载（未命中）次数
+	 */
+	public long getMissCount() {
+		return m_Misses.get();
+	}
+
+	/**
+	 * 加载次数（含后台刷新）
+	 */
+	public long getLoadCount() {
+		return m_Loads.get();
+	}
+
+	/**
+	 * 加载失败次数
+	 */
+	public long getLoadFailCount() {
+		return m_LoadFails.get();
+	}
+
+	/**
+	 * 平均加载耗时
+	 * 
+	 * @return 毫秒
+	 */
+	public double getLoadAverage() {
+		long loads = m_Loads.get();
+		if (loads <= 0) {
+			return 0;
+		}
+		return m_LoadNanos.get() / (loads * 1000000.0);
+	}
+
+	/**
+	 * 最大加载耗时
+	 * 
+	 * @return 毫秒
+	 */
+	public double getLoadMax() {
+		return m_LoadMaxNanos / 1000000.0;
+	}
+
+	public int size() {
+		return m_Cache.size();
+	}
+
+	/**
+	 * 调用被装饰的加载器加载并生成缓存项
+	 * 
+	 * @param accessId 凭证id
+	 * @return 缓存项
+	 */
+	protected Entry load(String accessId) {
+		long ts = System.nanoTime();
+		Access access;
+		try {
+			access = m_Loader.getValidAccess(accessId);
+		} catch (RuntimeException e) {
+			m_LoadFails.incrementAndGet();
+			throw e;
+		} finally {
+			long elapsed = System.nanoTime() - ts;
+			m_Loads.incrementAndGet();
+			m_LoadNanos.addAndGet(elapsed);
+			if (elapsed > m_LoadMaxNanos) {
+				m_LoadMaxNanos = elapsed;
+			}
+		}
+		long now = System.currentTimeMillis();
+		if (null == access || !access.isValid()) {
+			// 已失效的凭证按不存在缓存，以免每次获取都同步加载
+			return new Entry(null, now + m_NegativeTtl, now + m_NegativeTtl);
+		}
+		return new Entry(access, now + m_Ttl, now + m_RefreshAhead);
+	}
+
+	/**
+	 * 同步重加载已过期的项，同一项只由一个线程加载
+	 * 
+	 * @param accessId 凭证id
+	 * @param entry    过期的项
+	 * @return 新的项
+	 */
+	protected Entry reload(String accessId, Entry entry) {
+		synchronized (entry) {
+			if (null != entry.next) {
+				// 其它线程已加载好
+				return entry.next;
+			}
+			m_Misses.incrementAndGet();
+			Entry fresh = load(accessId);
+			replace(accessId, entry, fresh);
+			return fresh;
+		}
+	}
+
+	/**
+	 * 在后台刷新将到期的项（若未在刷新中）
+	 * 
+	 * @param accessId 凭证id
+	 * @param entry    将到期的项
+	 */
+	protected void refresh(final String accessId, final Entry entry) {
+		if (!entry.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				synchronized (entry) {
+					if (null != entry.next) {
+						return;
+					}
+					try {
+						replace(accessId, entry, load(accessId));
+					} catch (RuntimeException e) {
+						// 保持旧值直到过期，下次再试
+						_Logger.warn("后台刷新失败：" + accessId, e);
+						entry.refreshing.set(false);
+					}
+				}
+			}
+
+			@Override
+			public String toString() {
+				return "refresh-access:" + accessId;
+			}
+		};
+		try {
+			getExecutor().execute(worker);
+		} catch (RuntimeException e) {
+			_Logger.warn("无法提交后台刷新：" + accessId, e);
+			entry.refreshing.set(false);
+		}
+	}
+
+	private void replace(String accessId, Entry old, Entry fresh) {
+		old.next = fresh;
+		m_Cache.put(accessId, fresh);
+	}
+
+	protected Executor getExecutor() {
+		Executor executor = m_Executor;
+		if (null != executor) {
+			return executor;
+		}
+		synchronized (CachingAccessLoader.class) {
+			if (null == _Refresher) {
+				ThreadPool pool = new ThreadPool(2, "access-refresh");
+				pool.setDaemon(true);
+				pool.setIdle(60);
+				_Refresher = pool;
+			}
+			return _Refresher;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "{loader:" + m_Loader + ",size:" + m_Cache.size() + ",get:" + m_Gets.get() + ",miss:" + m_Misses.get()
+				+ ",load:" + m_Loads.get() + ",fail:" + m_LoadFails.get() + ",HR:" + getHitRate() + "}";
+	}
+
+	/**
+	 * 缓存项，access为null表示不存在
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	protected static class Entry {
+		final Access access;
+		final long expireAt;
+		final long refreshAt;
+		final AtomicBoolean refreshing;
+		/** 替代此项的新项 */
+		volatile Entry next;
+
+		Entry(Access access, long expireAt, long refreshAt) {
+			this.access = access;
+			this.expireAt = expireAt;
+			this.refreshAt = refreshAt;
+			this.refreshing = new AtomicBoolean();
+		}
+	}
+}
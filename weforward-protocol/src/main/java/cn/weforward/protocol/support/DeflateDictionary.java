@@ -0,0 +1,453 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.support;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import cn.weforward.common.sys.GcCleaner;
+import cn.weforward.common.util.NumberUtil;
+import cn.weforward.common.util.RingBuffer;
+import cn.weforward.protocol.Header;
+import cn.weforward.protocol.RequestConstants;
+import cn.weforward.protocol.ResponseConstants;
+
+/**
+ * 基于预置字典的内容压缩（raw deflate），字典由协议自身的属性名及常见的信封片段构成，使只有几百字节的小报文也有不错的压缩率。
+ * <p>
+ * 按跳（hop）协商：请求方在{@linkplain Header#getAcceptEncoding()}声明可接受的编码，
+ * 响应方支持时以此编码输出响应并在{@linkplain Header#getContentEncoding()}标明；
+ * 请求方收到过此编码的响应后，后续请求的内容也可使用此编码。压缩在签名/加密之前进行，验证器处理的是压缩后的内容。
+ * <p>
+ * 字典变化时须使用新的编码名称，以免两端字典不一致
+ * 
+ * @author zhangpengji
+ *
+ */
+public class DeflateDictionary {
+	/** 编码名称（含字典版本） */
+	public static final String ENCODING = Header.CONTENT_ENCODING_DICT;
+	/** 调用端是否声明接受此编码（默认不启用） */
+	public static final boolean ENABLED = "true"
+			.equalsIgnoreCase(System.getProperty("DeflateDictionary.ENABLED"));
+	/** 服务端是否按请求方的声明压缩响应，及是否接受压缩的请求（默认启用） */
+	public static final boolean ACCEPTABLE = !"false"
+			.equalsIgnoreCase(System.getProperty("DeflateDictionary.ACCEPTABLE"));
+	/** 解压后内容的最大字节数（默认16M），小于等于0则不限制，超过时不再解压（避免小报文解压出巨量的内容） */
+	public static final int MAX_INFLATE = NumberUtil.toInt(System.getProperty("DeflateDictionary.MAX_INFLATE"),
+			16 * 1024 * 1024);
+	/** 压缩级别，默认为最快（有字典时最快级别对小报文的压缩率已足够） */
+	static final int LEVEL = NumberUtil.toInt(System.getProperty("DeflateDictionary.LEVEL"),
+			Deflater.BEST_SPEED);
+
+	/** 预置字典 */
+	static final byte[] DICTIONARY = buildDictionary();
+
+	/** 池化的压缩器 */
+	static final RingBuffer<Deflater> _Deflaters = new RingBuffer<Deflater>(64) {
+
+		@Override
+		protected Deflater onEmpty() {
+			return new Deflater(LEVEL, true);
+		}
+
+		@Override
+		protected void onFull(Deflater item) {
+			item.end();
+		}
+
+		@Override
+		protected void onInit() {
+			GcCleaner.register(this);
+		}
+	};
+
+	/** 池化的解压器 */
+	static final RingBuffer<Inflater> _Inflaters = new RingBuffer<Inflater>(64) {
+
+		@Override
+		protected Inflater onEmpty() {
+			return new Inflater(true);
+		}
+
+		@Override
+		protected void onFull(Inflater item) {
+			item.end();
+		}
+
+		@Override
+		protected void onInit() {
+			GcCleaner.register(this);
+		}
+	};
+
+	/**
+	 * 是否支持指定的内容编码
+	 * 
+	 * @param encoding
+	 *            内容编码
+	 */
+	public static boolean isSupport(String encoding) {
+		return ENCODING.equals(encoding);
+	}
+
+	/**
+	 * 由请求方声明可接受的编码（以逗号分隔）协商响应的内容编码
+	 * 
+	 * @param acceptEncoding
+	 *            请求方可接受的编码
+	 * @return 响应使用的编码，不压缩时返回null
+	 */
+	public static String negotiate(String acceptEncoding) {
+		if (!ACCEPTABLE || null == acceptEncoding || acceptEncoding.length() < ENCODING.length()) {
+			return null;
+		}
+		int begin = 0;
+		while (begin < acceptEncoding.length()) {
+			int end = acceptEncoding.indexOf(',', begin);
+			if (-1 == end) {
+				end = acceptEncoding.length();
+			}
+			if (ENCODING.equals(acceptEncoding.substring(begin, end).trim())) {
+				return ENCODING;
+			}
+			begin = end + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * 压缩输出，调用{@linkplain OutputStream#close()}完成压缩（不会关闭out）
+	 * 
+	 * @param out
+	 *            压缩后内容的输出
+	 * @return 压缩输出流
+	 */
+	public static OutputStream deflate(OutputStream out) {
+		Deflater deflater = _Deflaters.poll();
+		deflater.setDictionary(DICTIONARY);
+		return new DeflateOutput(deflater, out);
+	}
+
+	/**
+	 * 解压输入，解压后的内容限制为{@linkplain #MAX_INFLATE}
+	 * 
+	 * @param in
+	 *            压缩的内容
+	 * @return 解压输入流
+	 */
+	public static InputStream inflate(InputStream in) {
+		return inflate(in, MAX_INFLATE);
+	}
+
+	/**
+	 * 解压输入
+	 * 
+	 * @param in
+	 *            压缩的内容
+	 * @param limit
+	 *            解压后内容的最大字节数，超过时读取抛出{@linkplain TooLargeException}，小于等于0则不限制
+	 * @return 解压输入流
+	 */
+	public static InputStream inflate(InputStream in, int limit) {
+		Inflater inflater = _Inflaters.poll();
+		inflater.setDictionary(DICTIONARY);
+		return new InflateInput(inflater, in, limit);
+	}
+
+	/**
+	 * 归还由{@linkplain #deflate(OutputStream)}或{@linkplain #inflate(InputStream)}取得的流占用的压缩/解压器（不输出也不关闭下层流），
+	 * 流已完成时无作用，其它流忽略。出错或未读完时须在finally中调用
+	 * 
+	 * @param stream
+	 *            流，可空
+	 */
+	public static void release(Closeable stream) {
+		if (stream instanceof DeflateOutput) {
+			((DeflateOutput) stream).end();
+		} else if (stream instanceof InflateInput) {
+			((InflateInput) stream).end();
+		}
+	}
+
+	/**
+	 * 构造字典，越常出现的片段越靠后（deflate优先匹配距离近的）
+	 */
+	private static byte[] buildDictionary() {
+		StringBuilder sb = new StringBuilder(1024);
+		// 常见的VO属性名
+		String[] keys = { "create_time", "update_time", "last_modified", "creator", "remark",
+				"status", "state", "type", "title", "description", "name", "value", "key", "id",
+				ResponseConstants.NOTIFY_RECEIVES, ResponseConstants.FORWARD_TO,
+				ResponseConstants.RESOURCE_URL, ResponseConstants.RESOURCE_SERVICE,
+				ResponseConstants.RESOURCE_EXPIRE, RequestConstants.FORWARD_FROM,
+				RequestConstants.WAIT_TIMEOUT, RequestConstants.MARKS,
+				RequestConstants.RESOURCE_RIGHT, RequestConstants.RESOURCE_ID,
+				RequestConstants.OPENID, RequestConstants.TENANT, RequestConstants.VERSION,
+				RequestConstants.CLIENT_ADDR, RequestConstants.TRACE_TOKEN,
+				RequestConstants.CLIENT_ACCESS, "page_count", "page_size", "page", "count" };
+		for (String k : keys) {
+			sb.append('"').append(k).append("\":");
+		}
+		sb.append("null,false,true,\"\"}],");
+		// 分页结果
+		sb.append("\"items\":[{\"");
+		// 请求信封
+		sb.append("{\"").append(RequestConstants.WF_REQ).append("\":{\"")
+				.append(RequestConstants.CLIENT_ACCESS).append("\":\"\"},\"")
+				.append(RequestConstants.INVOKE).append("\":{\"").append(RequestConstants.METHOD)
+				.append("\":\"\",\"").append(RequestConstants.PARAMS).append("\":{\"");
+		// 响应信封（最常见）
+		sb.append("{\"").append(ResponseConstants.WF_RESP).append("\":{\"")
+				.append(ResponseConstants.WF_CODE).append("\":0,\"").append(ResponseConstants.WF_MSG)
+				.append("\":\"\"},\"").append(ResponseConstants.RESULT).append("\":{\"")
+				.append(ResponseConstants.CODE).append("\":0,\"").append(ResponseConstants.MSG)
+				.append("\":\"\",\"").append(ResponseConstants.CONTENT).append("\":{\"");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 压缩输出流，小块的写入先在输入缓冲区合并再交给压缩器
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	static class DeflateOutput extends OutputStream {
+		protected Deflater m_Deflater;
+		protected OutputStream m_Output;
+		protected byte[] m_Input;
+		protected int m_Position;
+		protected byte[] m_Buffer;
+
+		DeflateOutput(Deflater deflater, OutputStream out) {
+			m_Deflater = deflater;
+			m_Output = out;
+			m_Input = new byte[512];
+			m_Buffer = new byte[1024];
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (m_Position >= m_Input.length) {
+				flushInput();
+			}
+			m_Input[m_Position++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len <= m_Input.length - m_Position) {
+				System.arraycopy(b, off, m_Input, m_Position, len);
+				m_Position += len;
+				return;
+			}
+			flushInput();
+			if (len < m_Input.length) {
+				System.arraycopy(b, off, m_Input, 0, len);
+				m_Position = len;
+				return;
+			}
+			deflate(b, off, len);
+		}
+
+		private void flushInput() throws IOException {
+			if (m_Position > 0) {
+				deflate(m_Input, 0, m_Position);
+				m_Position = 0;
+			}
+		}
+
+		private void deflate(byte[] b, int off, int len) throws IOException {
+			ensureOpen();
+			m_Deflater.setInput(b, off, len);
+			while (!m_Deflater.needsInput()) {
+				drain();
+			}
+		}
+
+		private void drain() throws IOException {
+			int n = m_Deflater.deflate(m_Buffer, 0, m_Buffer.length);
+			if (n > 0) {
+				m_Output.write(m_Buffer, 0, n);
+			}
+		}
+
+		private void ensureOpen() throws IOException {
+			if (null == m_Deflater) {
+				throw new EOFException("压缩已完成");
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// 不做同步刷写（会降低压缩率），只刷出已压缩的部分
+			m_Output.flush();
+		}
+
+		/**
+		 * 完成压缩（不关闭下层输出流）
+		 */
+		@Override
+		public void close() throws IOException {
+			Deflater deflater = m_Deflater;
+			if (null == deflater) {
+				return;
+			}
+			try {
+				flushInput();
+				deflater.finish();
+				while (!deflater.finished()) {
+					drain();
+				}
+			} finally {
+				end();
+			}
+		}
+
+		/**
+		 * 归还压缩器
+		 */
+		void end() {
+			Deflater deflater = m_Deflater;
+			if (null != deflater) {
+				m_Deflater = null;
+				deflater.reset();
+				_Deflaters.offer(deflater);
+			}
+		}
+	}
+
+	/**
+	 * 解压输入流
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	static class InflateInput extends InputStream {
+		protected Inflater m_Inflater;
+		protected InputStream m_Input;
+		protected byte[] m_Buffer;
+		protected boolean m_SourceEof;
+		protected byte[] m_One;
+		/** 解压后内容的最大字节数 */
+		protected final int m_Limit;
+		/** 已解压的字节数 */
+		protected long m_Total;
+
+		InflateInput(Inflater inflater, InputStream in, int limit) {
+			m_Inflater = inflater;
+			m_Input = in;
+			m_Buffer = new byte[1024];
+			m_Limit = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = m_One;
+			if (null == one) {
+				one = new byte[1];
+				m_One = one;
+			}
+			int n = read(one, 0, 1);
+			return (-1 == n) ? -1 : (one[0] & 0xFF);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			Inflater inflater = m_Inflater;
+			if (null == inflater) {
+				return -1;
+			}
+			if (0 == len) {
+				return 0;
+			}
+			try {
+				for (;;) {
+					int n;
+					try {
+						n = inflater.inflate(b, off, len);
+					} catch (DataFormatException e) {
+						throw new IOException("解压内容失败", e);
+					}
+					if (n > 0) {
+						m_Total += n;
+						if (m_Limit > 0 && m_Total > m_Limit) {
+							throw new TooLargeException("解压后的内容超过" + m_Limit + "字节");
+						}
+						return n;
+					}
+					if (inflater.finished()) {
+						end();
+						return -1;
+					}
+					if (inflater.needsDictionary()) {
+						throw new IOException("字典不匹配");
+					}
+					fill();
+				}
+			} catch (IOException e) {
+				// 出错后不能再读，归还解压器
+				end();
+				throw e;
+			}
+		}
+
+		private void fill() throws IOException {
+			int n = m_Input.read(m_Buffer, 0, m_Buffer.length);
+			if (n <= 0) {
+				if (m_SourceEof) {
+					throw new EOFException("压缩内容不完整");
+				}
+				// raw模式下需要在末尾补一个哑字节
+				m_SourceEof = true;
+				m_Buffer[0] = 0;
+				n = 1;
+			}
+			m_Inflater.setInput(m_Buffer, 0, n);
+		}
+
+		void end() {
+			Inflater inflater = m_Inflater;
+			if (null != inflater) {
+				m_Inflater = null;
+				inflater.reset();
+				_Inflaters.offer(inflater);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			end();
+			m_Input.close();
+		}
+	}
+
+	/**
+	 * 解压后的内容超过限制
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	public static class TooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public TooLargeException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol.support;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+
+import cn.weforward.common.json.JsonOutput;
+import cn.weforward.common.json.JsonOutputStream;
+import cn.weforward.common.json.JsonUtil;
+import cn.weforward.common.util.StringUtil;
+import cn.weforward.protocol.Response;
+import cn.weforward.protocol.ResponseConstants;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.serial.JsonSerialEngine;
+import cn.weforward.protocol.serial.JsonWritable;
+import cn.weforward.protocol.support.datatype.AbstractDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtNumber;
+import cn.weforward.protocol.support.datatype.SimpleDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtString;
+
+/**
+ * 只有wf_code及wf_msg的（常见）响应信封，序列化为json时由预先编码的模板输出信封，再接着输出结果，不需要构造中间的DtObject。
+ * <p>
+ * 只在按DtObject访问时才构造与{@linkplain SimpleProducer#toDtObject(Response)}一致的对象
+ * 
+ * @author zhangpengji
+ *
+ */
+class ResponseEnvelope extends AbstractDtObject implements JsonWritable {
+	/** 信封开头：<code>{"wf_resp":{"wf_code":</code> */
+	static final String HEAD = "{\"" + ResponseConstants.WF_RESP + "\":{\"" + ResponseConstants.WF_CODE + "\":";
+	/** wf_msg属性：<code>,"wf_msg":"</code> */
+	static final String MSG = ",\"" + ResponseConstants.WF_MSG + "\":\"";
+	/** 信封结尾：<code>"},"result":</code> */
+	static final String TAIL = "\"},\"" + ResponseConstants.RESULT + "\":";
+	/** 成功且没有消息的信封 */
+	static final String SUCCESS = HEAD + "0" + MSG + TAIL;
+
+	static final byte[] HEAD_BYTES = HEAD.getBytes(StandardCharsets.UTF_8);
+	static final byte[] MSG_BYTES = MSG.getBytes(StandardCharsets.UTF_8);
+	static final byte[] TAIL_BYTES = TAIL.getBytes(StandardCharsets.UTF_8);
+	static final byte[] SUCCESS_BYTES = SUCCESS.getBytes(StandardCharsets.UTF_8);
+
+	protected final int m_Code;
+	protected final String m_Msg;
+	protected final DtBase m_Result;
+	protected volatile DtObject m_Object;
+
+	ResponseEnvelope(Response response) {
+		m_Code = response.getResponseCode();
+		m_Msg = response.getResponseMsg();
+		m_Result = response.getServiceResult();
+	}
+
+	/**
+	 * 响应是否只需要wf_code及wf_msg（可使用此信封）
+	 * 
+	 * @param response 响应
+	 */
+	static boolean isApplicable(Response response) {
+		return 0 == response.getMarks() && StringUtil.isEmpty(response.getResourceId())
+				&& StringUtil.isEmpty(response.getResourceUrl()) && StringUtil.isEmpty(response.getForwardTo())
+				&& (null == response.getNotifyReceives() || response.getNotifyReceives().isEmpty());
+	}
+
+	protected DtObject getObject() {
+		DtObject obj = m_Object;
+		if (null == obj) {
+			SimpleDtObject contentObj = new SimpleDtObject(false);
+			contentObj.setAttributeComparator(SimpleProducer.COMP_RESP);
+			SimpleDtObject respObj = new SimpleDtObject(false);
+			respObj.put(ResponseConstants.WF_CODE, SimpleDtNumber.valueOf(m_Code));
+			respObj.put(ResponseConstants.WF_MSG, SimpleDtString.valueOf(m_Msg));
+			contentObj.put(ResponseConstants.WF_RESP, respObj);
+			contentObj.put(ResponseConstants.RESULT, m_Result);
+			obj = contentObj;
+			m_Object = obj;
+		}
+		return obj;
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return getObject().getAttributeNames();
+	}
+
+	@Override
+	protected DtBase getAttributeInner(String name) {
+		return getObject().getAttribute(name);
+	}
+
+	@Override
+	public int getAttributeSize() {
+		return getObject().getAttributeSize();
+	}
+
+	@Override
+	public void writeJson(JsonOutput output) throws IOException {
+		if (0 == m_Code && StringUtil.isEmpty(m_Msg)) {
+			write(output, SUCCESS, SUCCESS_BYTES);
+		} else {
+			write(output, HEAD, HEAD_BYTES);
+			output.append(String.valueOf(m_Code));
+			write(output, MSG, MSG_BYTES);
+			if (null != m_Msg) {
+				JsonUtil.escape(m_Msg, output);
+			}
+			write(output, TAIL, TAIL_BYTES);
+		}
+		JsonSerialEngine.formatValue(m_Result, output);
+		output.append('}');
+	}
+
+	private static void write(JsonOutput output, String template, byte[] bytes) throws IOException {
+		if (output instanceof JsonOutputStream) {
+			((JsonOutputStream) output).write(bytes, 0, bytes.length);
+		} else {
+			output.append(template);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return type().toString() + " {code:" + m_Code + ",msg:" + m_Msg + ",result:" + m_Result + "}";
+	}
+}
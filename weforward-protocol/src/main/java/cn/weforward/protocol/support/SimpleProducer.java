@@ -10,7 +10,6 @@
  */
 package cn.weforward.protocol.support;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -20,7 +19,9 @@ import java.util.Comparator;
 import java.util.List;
 
 import cn.weforward.common.Dictionary;
+import cn.weforward.common.io.BytesInputStream;
 import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.common.io.OutputStreamStay;
 import cn.weforward.common.util.Bytes;
 import cn.weforward.common.util.ListUtil;
 import cn.weforward.common.util.StringUtil;
@@ -68,6 +69,8 @@ public class SimpleProducer implements Producer {
 	protected AccessLoader m_AccessLoader;
 	protected Auther m_Auther;
 	protected Serializer m_Serializer;
+	/** 解压后内容的最大字节数 */
+	protected int m_MaxInflateSize = DeflateDictionary.MAX_INFLATE;
 
 	static final Comparator<String> COMP_REQ = new Comparator<String>() {
 
@@ -124,27 +127,57 @@ public class SimpleProducer implements Producer {
 		return m_Serializer;
 	}
 
+	/**
+	 * 设置解压后内容的最大字节数，小于等于0则不限制
+	 * 
+	 * @param size
+	 *            最大字节数，默认为{@linkplain DeflateDictionary#MAX_INFLATE}
+	 */
+	public void setMaxInflateSize(int size) {
+		m_MaxInflateSize = size;
+	}
+
+	public int getMaxInflateSize() {
+		return m_MaxInflateSize;
+	}
+
 	@Override
 	public void make(Request request, OutputStream out)
 			throws IOException, SerialException, AuthException {
+		make(request.getHeader(), toDtObject(request), out);
+	}
+
+	/**
+	 * 序列化后再由{@linkplain Auther}生成验证并输出（内容会先完整缓存）
+	 * 
+	 * @param header
+	 * @param contentObj
+	 * @param out
+	 */
+	protected void make(Header header, DtObject contentObj, OutputStream out)
+			throws IOException, SerialException, AuthException {
 		BytesOutputStream bos = null;
-		ByteArrayInputStream bis = null;
+		BytesInputStream bis = null;
+		OutputStream target = null;
 		try {
-			Header header = request.getHeader();
 			String contentType = header.getContentType();
 			String charset = header.getCharset();
-			DtObject contentObj = toDtObject(request);
 			/* 序列化 */
 			bos = new BytesOutputStream(8 * 1024);
-			m_Serializer.serial(contentObj, contentType, charset, bos);
+			target = encode(header, bos);
+			m_Serializer.serial(contentObj, contentType, charset, target);
+			if (target != bos) {
+				target.close();
+			}
 			Bytes bytes = bos.getBytes();
-			bis = new ByteArrayInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+			bis = new BytesInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
 			bytes = null;
 			/* 生成验证 */
 			AuthOutput authOutput = new AuthOutput(header, out);
 			AuthInput authInput = new AuthInput(header, bis);
 			m_Auther.encode(authInput, authOutput);
 		} finally {
+			DeflateDictionary.release(target);
 			if (null != bos) {
 				try {
 					bos.close();
@@ -214,41 +247,39 @@ public class SimpleProducer implements Producer {
 	@Override
 	public void make(Response response, OutputStream out)
 			throws IOException, SerialException, AuthException {
-		BytesOutputStream bos = null;
-		ByteArrayInputStream bis = null;
-		try {
-			Header header = response.getHeader();
-			String contentType = header.getContentType();
-			String charset = header.getCharset();
-			DtObject contentObj = toDtObject(response);
-			/* 序列化 */
-			bos = new BytesOutputStream(8 * 1024);
-			m_Serializer.serial(contentObj, contentType, charset, bos);
-			Bytes bytes = bos.getBytes();
-			bis = new ByteArrayInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
-			bytes = null;
+		negotiateContentType(response.getHeader());
+		make(response.getHeader(), toDtObject(response), out);
+	}
 
-			/* 生成验证 */
-			AuthOutput authOutput = new AuthOutput(header, out);
-			AuthInput authInput = new AuthInput(header, bis);
-			m_Auther.encode(authInput, authOutput);
-		} finally {
-			if (null != bos) {
-				try {
-					bos.close();
-				} catch (IOException e) {
-				}
-			}
-			if (null != bis) {
-				try {
-					bis.close();
-				} catch (IOException e) {
-				}
-			}
+	/**
+	 * 协商响应的内容格式，不支持请求方的格式时回退为json
+	 * 
+	 * @param header
+	 */
+	protected void negotiateContentType(Header header) {
+		String contentType = header.getContentType();
+		if (Header.CONTENT_TYPE_JSON.equals(contentType)) {
+			return;
+		}
+		if (StringUtil.isEmpty(contentType) || null == m_Serializer.getEngine(contentType)) {
+			header.setContentType(Header.CONTENT_TYPE_JSON);
 		}
 	}
 
+	/**
+	 * 是否支持指定的内容格式
+	 * 
+	 * @param contentType 内容格式，如：{@linkplain Header#CONTENT_TYPE_BINARY}
+	 */
+	public boolean isSupportContentType(String contentType) {
+		return null != m_Serializer.getEngine(contentType);
+	}
+
 	protected DtObject toDtObject(Response response) {
+		if (ResponseEnvelope.isApplicable(response)) {
+			// 常见的只有wf_code及wf_msg的响应，由预编码的信封模板直接输出
+			return new ResponseEnvelope(response);
+		}
 		SimpleDtObject contentObj = new SimpleDtObject(false);
 		// 排序属性名，保证先输出wf_resp节点
 		contentObj.setAttributeComparator(COMP_RESP);
@@ -294,20 +325,22 @@ public class SimpleProducer implements Producer {
 	public Response fetchResponse(Header header, InputStream in)
 			throws IOException, SerialException, AuthException {
 		BytesOutputStream bos = null;
-		ByteArrayInputStream bis = null;
+		BytesInputStream bis = null;
+		InputStream input = null;
 		try {
 			AuthInput authInput = new AuthInput(header, in);
 			bos = new BytesOutputStream(8 * 1024);
 			AuthOutput authOutput = new AuthOutput(bos);
 			m_Auther.decode(authInput, authOutput);
 			Bytes bytes = bos.getBytes();
-			bis = new ByteArrayInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+			bis = new BytesInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
 			bytes = null;
-			DtObject contentObj = m_Serializer.unserial(bis, header.getContentType(),
-					header.getCharset());
+			input = decode(header, bis, false);
+			DtObject contentObj = unserial(header, input);
 			Response response = toResponse(header, contentObj);
 			return response;
 		} finally {
+			DeflateDictionary.release(input);
 			if (null != bos) {
 				try {
 					bos.close();
@@ -376,20 +409,22 @@ public class SimpleProducer implements Producer {
 	public Request fetchRequest(Header header, InputStream in)
 			throws IOException, SerialException, AuthException {
 		BytesOutputStream bos = null;
-		ByteArrayInputStream bis = null;
+		BytesInputStream bis = null;
+		InputStream input = null;
 		try {
 			AuthInput authInput = new AuthInput(header, in);
 			bos = new BytesOutputStream(8 * 1024);
 			AuthOutput authOutput = new AuthOutput(bos);
 			m_Auther.decode(authInput, authOutput);
 			Bytes bytes = bos.getBytes();
-			bis = new ByteArrayInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+			bis = new BytesInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
 			bytes = null;
-			DtObject contentObj = m_Serializer.unserial(bis, header.getContentType(),
-					header.getCharset());
+			input = decode(header, bis, true);
+			DtObject contentObj = unserial(header, input);
 			Request request = toRequest(header, contentObj);
 			return request;
 		} finally {
+			DeflateDictionary.release(input);
 			if (null != bos) {
 				try {
 					bos.close();
@@ -467,60 +502,135 @@ public class SimpleProducer implements Producer {
 	@Override
 	public void make(Request request, Output out)
 			throws IOException, SerialException, AuthException {
-		Header header = request.getHeader();
-		AutherOutputStream auther = AutherOutputStream.getInstance(header.getAuthType());
-		if (null == auther) {
-			throw new AuthException(AuthException.CODE_AUTH_TYPE_INVALID,
-					"验证类型无效：" + header.getAuthType());
-		}
-		auther.init(AutherOutputStream.MODE_ENCODE, m_AccessLoader, false);
-		auther.auth(header);
-		auther.setTransferTo(out, out.getOutputStream());
-		DtObject contentObj = toDtObject(request);
-		try {
-			m_Serializer.serial(contentObj, header.getContentType(), header.getCharset(), auther);
-			auther.finish();
-		} catch (AuthExceptionWrap e) {
-			throw e.getCause();
-		}
+		make(request.getHeader(), toDtObject(request), out);
 	}
 
 	@Override
 	public void make(Response response, Output out)
 			throws IOException, SerialException, AuthException {
-		Header header = response.getHeader();
-		AutherOutputStream auther = AutherOutputStream.getInstance(header.getAuthType());
-		if (null == auther) {
-			throw new AuthException(AuthException.CODE_AUTH_TYPE_INVALID,
-					"验证类型无效：" + header.getAuthType());
+		negotiateContentType(response.getHeader());
+		make(response.getHeader(), toDtObject(response), out);
+	}
+
+	/**
+	 * 序列化直接写入验证器，边输出边计算签名，不再完整缓存及拷贝内容。
+	 * <p>
+	 * 头信息由验证器在签名完成后通过out输出，在此之前内容暂留在输出流的缓冲区（若out的输出流支持{@linkplain OutputStreamStay}则不产生额外拷贝）
+	 * 
+	 * @param header
+	 * @param contentObj
+	 * @param out
+	 */
+	protected void make(Header header, DtObject contentObj, Output out)
+			throws IOException, SerialException, AuthException {
+		make(header, contentObj, out, AutherOutputStream.getInstance(header.getAuthType()));
+	}
+
+	void make(Header header, DtObject contentObj, Output out, AutherOutputStream auther)
+			throws IOException, SerialException, AuthException {
+		if (null == auther || !auther.isSupportMode(AutherOutputStream.MODE_ENCODE)) {
+			if (null == m_Auther.getEngine(header.getAuthType())) {
+				throw new AuthException(AuthException.CODE_AUTH_TYPE_INVALID,
+						"验证类型无效：" + header.getAuthType());
+			}
+			// 验证器不支持流式生成，只好先暂留内容，输出头信息后再刷出
+			OutputStream stay = OutputStreamStay.Wrap.wrap(out.getOutputStream());
+			((OutputStreamStay) stay).stay();
+			make(header, contentObj, stay);
+			out.writeHeader(header);
+			stay.flush();
+			return;
 		}
 		auther.init(AutherOutputStream.MODE_ENCODE, m_AccessLoader, false);
 		auther.auth(header);
 		auther.setTransferTo(out, out.getOutputStream());
-		DtObject contentObj = toDtObject(response);
+		OutputStream target = null;
 		try {
-			m_Serializer.serial(contentObj, header.getContentType(), header.getCharset(), auther);
+			target = encode(header, auther);
+			m_Serializer.serial(contentObj, header.getContentType(), header.getCharset(), target);
+			if (target != auther) {
+				target.close();
+			}
 			auther.finish();
 		} catch (AuthExceptionWrap e) {
 			throw e.getCause();
+		} finally {
+			DeflateDictionary.release(target);
+		}
+	}
+
+	/**
+	 * 按头信息的内容压缩方式包装输出，不支持的压缩方式会被清除（不压缩）
+	 * 
+	 * @param header
+	 * @param out
+	 * @return 压缩时返回压缩输出流（须调用close完成压缩），否则返回out
+	 */
+	protected OutputStream encode(Header header, OutputStream out) {
+		String encoding = header.getContentEncoding();
+		if (StringUtil.isEmpty(encoding)) {
+			return out;
+		}
+		if (!DeflateDictionary.isSupport(encoding)) {
+			header.setContentEncoding(null);
+			return out;
+		}
+		return DeflateDictionary.deflate(out);
+	}
+
+	/**
+	 * 按头信息的内容压缩方式包装输入
+	 * 
+	 * @param header
+	 * @param in
+	 * @param request
+	 *            是否请求（服务端未启用压缩时不接受压缩的请求）
+	 * @throws SerialException
+	 *             不支持或未启用的压缩方式
+	 */
+	protected InputStream decode(Header header, InputStream in, boolean request) throws SerialException {
+		String encoding = header.getContentEncoding();
+		if (StringUtil.isEmpty(encoding)) {
+			return in;
+		}
+		if (!DeflateDictionary.isSupport(encoding)) {
+			throw new SerialException(WeforwardException.CODE_SERIAL_ERROR, "不支持的内容压缩方式：" + encoding);
+		}
+		if (request && !DeflateDictionary.ACCEPTABLE) {
+			throw new SerialException(WeforwardException.CODE_SERIAL_ERROR, "未启用内容压缩：" + encoding);
+		}
+		return DeflateDictionary.inflate(in, m_MaxInflateSize);
+	}
+
+	/**
+	 * 反序列化（已解压的）内容
+	 * 
+	 * @throws SerialException
+	 *             解压后的内容超过限制
+	 */
+	private DtObject unserial(Header header, InputStream in) throws SerialException, IOException {
+		try {
+			return m_Serializer.unserial(in, header.getContentType(), header.getCharset());
+		} catch (DeflateDictionary.TooLargeException e) {
+			throw new SerialException(WeforwardException.CODE_SERIAL_ERROR, e.getMessage(), e);
 		}
 	}
 
 	@Override
 	public Request fetchRequest(Input in) throws IOException, SerialException, AuthException {
 		Header header = in.readHeader();
-		DtObject obj = fetch(header, in);
+		DtObject obj = fetch(header, in, true);
 		return toRequest(header, obj);
 	}
 
 	@Override
 	public Response fetchResponse(Input in) throws IOException, SerialException, AuthException {
 		Header header = in.readHeader();
-		DtObject obj = fetch(header, in);
+		DtObject obj = fetch(header, in, false);
 		return toResponse(header, obj);
 	}
 
-	DtObject fetch(Header header, Input in) throws IOException, SerialException, AuthException {
+	DtObject fetch(Header header, Input in, boolean request) throws IOException, SerialException, AuthException {
 		// FIXME 实现AutherInputStream，避免数据拷贝
 		AutherOutputStream auther = AutherOutputStream.getInstance(header.getAuthType());
 		if (null == auther) {
@@ -530,7 +640,8 @@ public class SimpleProducer implements Producer {
 		auther.init(AutherOutputStream.MODE_DECODE, m_AccessLoader, false);
 		auther.auth(header);
 		BytesOutputStream bos = null;
-		ByteArrayInputStream bis = null;
+		BytesInputStream bis = null;
+		InputStream input = null;
 		try {
 			// FIXME 这里应该使用RingBuffer之类的环型缓冲区来转接输出->输入流，或者使用pipe启用独立的读写线程并行处理
 			bos = new BytesOutputStream();
@@ -538,11 +649,13 @@ public class SimpleProducer implements Producer {
 			auther.write(in.getInputStream(), -1);
 			auther.finish();
 			Bytes bytes = bos.getBytes();
-			bis = new ByteArrayInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
-			return m_Serializer.unserial(bis, header.getContentType(), header.getCharset());
+			bis = new BytesInputStream(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+			input = decode(header, bis, request);
+			return unserial(header, input);
 		} catch (AuthExceptionWrap e) {
 			throw e.getCause();
 		} finally {
+			DeflateDictionary.release(input);
 			if (null != bos) {
 				try {
 					bos.close();
@@ -558,6 +671,123 @@ public class SimpleProducer implements Producer {
 		}
 	}
 
+	/**
+	 * 打开批量生成器，用于连续生成共享头信息（同一service、accessId、验证类型）的一批请求
+	 * 
+	 * @return 批量生成器（非线程安全）
+	 */
+	public Batch openBatch() {
+		return new Batch();
+	}
+
+	/**
+	 * 批量生成器，一批请求沿用同一个验证器，签名前缀、摘要及缓冲区只需准备一次。
+	 * <p>
+	 * 注意，非线程安全
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	public class Batch {
+		/** 沿用的验证器 */
+		protected AutherOutputStream m_Auther;
+		protected String m_AuthType;
+		/** 上一个预备内容的大小，作为下一个的初始容量 */
+		protected int m_LastSize;
+
+		protected Batch() {
+		}
+
+		/**
+		 * 生成请求并输出
+		 * 
+		 * @param request 请求
+		 * @param out     输出
+		 */
+		public void make(Request request, Output out) throws IOException, SerialException, AuthException {
+			Header header = request.getHeader();
+			SimpleProducer.this.make(header, toDtObject(request), out, openAuther(header.getAuthType()));
+		}
+
+		/**
+		 * 生成请求（已签名）暂存起来，之后再由{@linkplain Prepared#writeTo(Output)}输出
+		 * 
+		 * @param request 请求
+		 * @return 已签名的请求内容
+		 */
+		public Prepared prepare(Request request) throws IOException, SerialException, AuthException {
+			Prepared prepared = new Prepared(m_LastSize);
+			make(request, prepared);
+			m_LastSize = prepared.size();
+			return prepared;
+		}
+
+		private AutherOutputStream openAuther(String authType) {
+			if (null == m_Auther || !StringUtil.eq(authType, m_AuthType)) {
+				m_Auther = AutherOutputStream.getInstance(authType);
+				m_AuthType = authType;
+			}
+			return m_Auther;
+		}
+	}
+
+	/**
+	 * 已生成（签名）的请求头及内容
+	 * 
+	 * @author zhangpengji
+	 *
+	 */
+	public static class Prepared implements Producer.Output {
+		protected Header m_Header;
+		protected Content m_Content;
+
+		Prepared(int initialSize) {
+			m_Content = new Content(Math.max(initialSize, 256));
+		}
+
+		@Override
+		public void writeHeader(Header header) throws IOException {
+			m_Header = header;
+		}
+
+		@Override
+		public OutputStream getOutputStream() throws IOException {
+			return m_Content;
+		}
+
+		public Header getHeader() {
+			return m_Header;
+		}
+
+		public int size() {
+			return m_Content.size();
+		}
+
+		/**
+		 * 输出头信息及内容
+		 * 
+		 * @param out 输出
+		 */
+		public void writeTo(Output out) throws IOException {
+			out.writeHeader(m_Header);
+			Bytes bytes = m_Content.getBytes();
+			out.getOutputStream().write(bytes.getBytes(), bytes.getOffset(), bytes.getSize());
+		}
+
+		/**
+		 * 内容本来就全部暂留在缓冲区，验证器不需要另外再暂留
+		 */
+		static class Content extends BytesOutputStream implements OutputStreamStay {
+			Content(int size) {
+				super(size);
+			}
+
+			@Override
+			public void stay() {
+			}
+		}
+	}
+
 	public static class HttpContextOutput implements Producer.Output {
 
 		HttpContext m_Context;
@@ -22,6 +22,7 @@ import cn.weforward.protocol.datatype.DtList;
 import cn.weforward.protocol.datatype.DtNumber;
 import cn.weforward.protocol.datatype.DtObject;
 import cn.weforward.protocol.datatype.DtString;
+import cn.weforward.protocol.datatype.VisitableDtObject;
 
 /**
  * DtObject抽象实现
@@ -29,7 +30,7 @@ import cn.weforward.protocol.datatype.DtString;
  * @author zhangpengji
  *
  */
-public abstract class AbstractDtObject implements DtObject {
+public abstract class AbstractDtObject implements VisitableDtObject {
 
 	protected AbstractDtObject() {
 
@@ -89,6 +90,35 @@ public abstract class AbstractDtObject implements DtObject {
 		};
 	}
 
+	@Override
+	public <E extends Exception> void forEachAttribute(AttributeVisitor<E> visitor) throws E {
+		Enumeration<String> names = getAttributeNames();
+		while (names.hasMoreElements()) {
+			String name = names.nextElement();
+			visitor.visit(name, getAttributeInner(name));
+		}
+	}
+
+	/**
+	 * 遍历对象的全部属性，对象支持{@linkplain VisitableDtObject}时由其遍历，否则按{@linkplain DtObject#getAttributes()}
+	 * 
+	 * @param <E>     访问器抛出的异常类型
+	 * @param object  对象
+	 * @param visitor 属性访问器
+	 * @throws E 由访问器抛出
+	 */
+	public static <E extends Exception> void forEach(DtObject object, AttributeVisitor<E> visitor) throws E {
+		if (object instanceof VisitableDtObject) {
+			((VisitableDtObject) object).forEachAttribute(visitor);
+			return;
+		}
+		Enumeration<KvPair<String, DtBase>> attributes = object.getAttributes();
+		while (attributes.hasMoreElements()) {
+			KvPair<String, DtBase> p = attributes.nextElement();
+			visitor.visit(p.getKey(), p.getValue());
+		}
+	}
+
 	@Override
 	public DtString getString(String name) {
 		return getAttribute(name, DataType.STRING);
@@ -55,6 +55,20 @@ public class AppendableDtObject extends SimpleDtObject {
 		};
 	}
 
+	@Override
+	public <E extends Exception> void forEachAttribute(final AttributeVisitor<E> visitor) throws E {
+		forEach(m_Original, visitor);
+		// 同名的属性以原对象的为准
+		super.forEachAttribute(new AttributeVisitor<E>() {
+
+			@Override
+			public void visit(String name, DtBase value) throws E {
+				DtBase b = m_Original.getAttribute(name);
+				visitor.visit(name, null == b ? value : b);
+			}
+		});
+	}
+
 	@Override
 	public int getAttributeSize() {
 		return m_Original.getAttributeSize() + super.getAttributeSize();
@@ -10,6 +10,8 @@
  */
 package cn.weforward.protocol.support.datatype;
 
+import java.io.IOException;
+
 import cn.weforward.common.util.StringBuilderPool;
 import cn.weforward.common.util.StringUtil;
 import cn.weforward.protocol.datatype.DataType;
@@ -32,29 +34,22 @@ public class SimpleDtNumber implements DtNumber {
 	protected static final int MARK_LONG = 2;
 	protected static final int MARK_DOUBLE = 4;
 
-	protected final int m_IntValue;
-	protected final long m_LongValue;
-	protected final double m_DoubleValue;
+	/** 原始值（int/long直接存放，double存放其位值），按m_Marks区分，不装箱 */
+	protected final long m_Value;
 	protected final int m_Marks;
 
 	public SimpleDtNumber(int value) {
-		m_IntValue = value;
-		m_LongValue = 0;
-		m_DoubleValue = 0;
+		m_Value = value;
 		m_Marks = MARK_INT;
 	}
 
 	public SimpleDtNumber(long value) {
-		m_IntValue = 0;
-		m_LongValue = value;
-		m_DoubleValue = 0;
+		m_Value = value;
 		m_Marks = MARK_LONG;
 	}
 
 	public SimpleDtNumber(double value) {
-		m_IntValue = 0;
-		m_LongValue = 0;
-		m_DoubleValue = value;
+		m_Value = Double.doubleToRawLongBits(value);
 		m_Marks = MARK_DOUBLE;
 	}
 
@@ -132,46 +127,71 @@ public class SimpleDtNumber implements DtNumber {
 
 	@Override
 	public int valueInt() {
-		if (isInt()) {
-			return m_IntValue;
+		if (isDouble()) {
+			return (int) Double.longBitsToDouble(m_Value);
 		}
-		if (isLong()) {
-			return (int) m_LongValue;
-		}
-		return (int) m_DoubleValue;
+		return (int) m_Value;
 	}
 
 	@Override
 	public long valueLong() {
-		if (isInt()) {
-			return m_IntValue;
+		if (isDouble()) {
+			return (long) Double.longBitsToDouble(m_Value);
 		}
-		if (isLong()) {
-			return m_LongValue;
-		}
-		return (long) m_DoubleValue;
+		return m_Value;
 	}
 
 	@Override
 	public double valueDouble() {
-		if (isInt()) {
-			return m_IntValue;
-		}
-		if (isLong()) {
-			return m_LongValue;
+		if (isDouble()) {
+			return Double.longBitsToDouble(m_Value);
 		}
-		return m_DoubleValue;
+		return m_Value;
 	}
 
 	@Override
 	public Number valueNumber() {
 		if (isInt()) {
-			return m_IntValue;
+			return (int) m_Value;
 		}
 		if (isLong()) {
-			return m_LongValue;
+			return m_Value;
+		}
+		return Double.longBitsToDouble(m_Value);
+	}
+
+	/**
+	 * 输出数字的文本格式（与{@linkplain Number#toString()}一致），整数直接逐位输出，不经中间的字串
+	 * 
+	 * @param number 数字
+	 * @param output 输出
+	 * @throws IOException IO异常时抛出
+	 */
+	public static void format(DtNumber number, Appendable output) throws IOException {
+		if (number.isDouble()) {
+			output.append(Double.toString(number.valueDouble()));
+			return;
+		}
+		long v = number.valueLong();
+		if (v >= 0 && v < 10) {
+			output.append((char) ('0' + v));
+			return;
+		}
+		if (Long.MIN_VALUE == v) {
+			output.append(Long.toString(v));
+			return;
+		}
+		if (v < 0) {
+			output.append('-');
+			v = -v;
+		}
+		long div = 1;
+		while (div <= v / 10) {
+			div *= 10;
+		}
+		for (; div > 0; div /= 10) {
+			output.append((char) ('0' + (v / div) % 10));
 		}
-		return m_DoubleValue;
 	}
 
 	protected boolean isMark(int mark) {
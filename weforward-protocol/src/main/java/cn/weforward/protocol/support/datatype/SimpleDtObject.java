@@ -10,7 +10,10 @@
  */
 package cn.weforward.protocol.support.datatype;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -18,10 +21,14 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import cn.weforward.common.KvPair;
+import cn.weforward.common.util.NumberUtil;
 import cn.weforward.protocol.datatype.DtBase;
 import cn.weforward.protocol.datatype.DtObject;
 import cn.weforward.protocol.support.NamingConverter;
@@ -52,7 +59,7 @@ public class SimpleDtObject extends AbstractDtObject implements Iterable<KvPair<
 	 * @param autoNaming 是否转换属性名称
 	 */
 	public SimpleDtObject(boolean autoNaming) {
-		this((autoNaming ? new AutoNamingMap() : new HashMap<String, DtBase>()));
+		this(new CompactMap(autoNaming));
 	}
 
 	protected SimpleDtObject(Map<String, DtBase> map) {
@@ -65,22 +72,305 @@ public class SimpleDtObject extends AbstractDtObject implements Iterable<KvPair<
 		return EMPTY;
 	}
 
-	static class AutoNamingMap extends HashMap<String, DtBase> {
-		private static final long serialVersionUID = 1L;
+	/** 小对象使用数组方式存储的属性个数上限，超出后转为HashMap */
+	public static final int COMPACT_THRESHOLD = NumberUtil.toInt(System.getProperty("SimpleDtObject.COMPACT_THRESHOLD"),
+			12);
+
+	/** 字典序 */
+	static final Comparator<String> NATURAL_ORDER = new Comparator<String>() {
+
+		@Override
+		public int compare(String o1, String o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	/**
+	 * 小对象的紧凑映射表，属性较少时以并列的名称/值数组顺序查找，超出{@linkplain SimpleDtObject#COMPACT_THRESHOLD}才转为HashMap。
+	 * <p>
+	 * 数组方式下按指定的比较器有序插入，遍历时无需再排序
+	 */
+	static class CompactMap extends AbstractMap<String, DtBase> {
+		/** 是否转换属性名称 */
+		final boolean m_AutoNaming;
+		String[] m_Keys;
+		DtBase[] m_Values;
+		int m_Size;
+		/** 超出阈值后转用的HashMap */
+		Map<String, DtBase> m_Hash;
+		/** 插入时保持的顺序 */
+		Comparator<String> m_Comparator;
+
+		CompactMap(boolean autoNaming) {
+			m_AutoNaming = autoNaming;
+			m_Keys = _EmptyKeys;
+			m_Values = _EmptyValues;
+		}
+
+		static final String[] _EmptyKeys = new String[0];
+		static final DtBase[] _EmptyValues = new DtBase[0];
+
+		private String toName(Object key) {
+			return m_AutoNaming ? NamingConverter.camelToWf((String) key) : (String) key;
+		}
+
+		private int indexOf(Object key) {
+			String[] keys = m_Keys;
+			if (null == key) {
+				// 与HashMap一样允许null作属性名
+				for (int i = m_Size - 1; i >= 0; i--) {
+					if (null == keys[i]) {
+						return i;
+					}
+				}
+				return -1;
+			}
+			int hash = key.hashCode();
+			for (int i = m_Size - 1; i >= 0; i--) {
+				String k = keys[i];
+				if (k == key || (null != k && k.hashCode() == hash && k.equals(key))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * 按比较器比较属性名，null排在最前
+		 */
+		static int compare(Comparator<String> comp, String k1, String k2) {
+			if (k1 == k2) {
+				return 0;
+			}
+			if (null == k1) {
+				return -1;
+			}
+			if (null == k2) {
+				return 1;
+			}
+			return comp.compare(k1, k2);
+		}
+
+		/**
+		 * 查找属性位置，名称需转换时先以原名称查找
+		 */
+		private int find(Object key) {
+			int idx = indexOf(key);
+			if (idx < 0 && m_AutoNaming && null != key) {
+				String name = NamingConverter.camelToWf((String) key);
+				if (name != key) {
+					idx = indexOf(name);
+				}
+			}
+			return idx;
+		}
+
+		/**
+		 * 设置插入时保持的顺序（当前的属性也重新排序）
+		 * 
+		 * @param comp 比较器，为null则按插入的顺序
+		 */
+		void setComparator(Comparator<String> comp) {
+			m_Comparator = comp;
+			if (null == comp || null != m_Hash || m_Size < 2) {
+				return;
+			}
+			// 插入排序（稳定）
+			String[] keys = m_Keys;
+			DtBase[] values = m_Values;
+			for (int i = 1; i < m_Size; i++) {
+				String k = keys[i];
+				DtBase v = values[i];
+				int j = i - 1;
+				while (j >= 0 && compare(comp, k, keys[j]) < 0) {
+					keys[j + 1] = keys[j];
+					values[j + 1] = values[j];
+					j--;
+				}
+				keys[j + 1] = k;
+				values[j + 1] = v;
+			}
+		}
+
+		/**
+		 * 属性名是否已按比较器的顺序排列
+		 */
+		boolean isOrdered() {
+			return null == m_Hash;
+		}
+
+		/**
+		 * 按存储的顺序列举属性名
+		 */
+		Enumeration<String> keys() {
+			final String[] keys = m_Keys;
+			final int size = m_Size;
+			return new Enumeration<String>() {
+				int m_Index;
+
+				@Override
+				public boolean hasMoreElements() {
+					return m_Index < size;
+				}
+
+				@Override
+				public String nextElement() {
+					if (m_Index >= size) {
+						throw new NoSuchElementException();
+					}
+					return keys[m_Index++];
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			Map<String, DtBase> hash = m_Hash;
+			return null == hash ? m_Size : hash.size();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			Map<String, DtBase> hash = m_Hash;
+			if (null != hash) {
+				return hash.containsKey(toName(key));
+			}
+			return find(key) >= 0;
+		}
+
+		@Override
+		public DtBase get(Object key) {
+			Map<String, DtBase> hash = m_Hash;
+			if (null != hash) {
+				return hash.get(toName(key));
+			}
+			int idx = find(key);
+			return idx < 0 ? null : m_Values[idx];
+		}
 
 		@Override
 		public DtBase put(String key, DtBase value) {
-			return super.put(NamingConverter.camelToWf(key), value);
+			Map<String, DtBase> hash = m_Hash;
+			if (null != hash) {
+				return hash.put(toName(key), value);
+			}
+			int idx = find(key);
+			if (idx >= 0) {
+				DtBase old = m_Values[idx];
+				m_Values[idx] = value;
+				return old;
+			}
+			key = toName(key);
+			if (m_Size >= COMPACT_THRESHOLD) {
+				// 太多属性了，转为HashMap
+				hash = new HashMap<>(m_Size * 2 + 2);
+				for (int i = 0; i < m_Size; i++) {
+					hash.put(m_Keys[i], m_Values[i]);
+				}
+				hash.put(key, value);
+				m_Hash = hash;
+				m_Keys = _EmptyKeys;
+				m_Values = _EmptyValues;
+				m_Size = 0;
+				return null;
+			}
+			if (m_Size == m_Keys.length) {
+				int capacity = (0 == m_Size) ? 4 : Math.min(m_Size * 2, COMPACT_THRESHOLD);
+				m_Keys = Arrays.copyOf(m_Keys, capacity);
+				m_Values = Arrays.copyOf(m_Values, capacity);
+			}
+			int pos = m_Size;
+			Comparator<String> comp = m_Comparator;
+			if (null != comp) {
+				// 有序插入，相等的排在后面
+				while (pos > 0 && compare(comp, key, m_Keys[pos - 1]) < 0) {
+					pos--;
+				}
+				System.arraycopy(m_Keys, pos, m_Keys, pos + 1, m_Size - pos);
+				System.arraycopy(m_Values, pos, m_Values, pos + 1, m_Size - pos);
+			}
+			m_Keys[pos] = key;
+			m_Values[pos] = value;
+			m_Size++;
+			return null;
 		}
 
 		@Override
 		public DtBase remove(Object key) {
-			return super.remove(NamingConverter.camelToWf((String) key));
+			Map<String, DtBase> hash = m_Hash;
+			if (null != hash) {
+				return hash.remove(toName(key));
+			}
+			int idx = find(key);
+			if (idx < 0) {
+				return null;
+			}
+			return removeAt(idx);
+		}
+
+		private DtBase removeAt(int idx) {
+			DtBase old = m_Values[idx];
+			int move = m_Size - idx - 1;
+			if (move > 0) {
+				System.arraycopy(m_Keys, idx + 1, m_Keys, idx, move);
+				System.arraycopy(m_Values, idx + 1, m_Values, idx, move);
+			}
+			m_Size--;
+			m_Keys[m_Size] = null;
+			m_Values[m_Size] = null;
+			return old;
 		}
 
 		@Override
-		public DtBase get(Object key) {
-			return super.get(NamingConverter.camelToWf((String) key));
+		public void clear() {
+			m_Hash = null;
+			m_Keys = _EmptyKeys;
+			m_Values = _EmptyValues;
+			m_Size = 0;
+		}
+
+		@Override
+		public Set<Entry<String, DtBase>> entrySet() {
+			Map<String, DtBase> hash = m_Hash;
+			if (null != hash) {
+				return hash.entrySet();
+			}
+			return new AbstractSet<Entry<String, DtBase>>() {
+
+				@Override
+				public Iterator<Entry<String, DtBase>> iterator() {
+					return new Iterator<Entry<String, DtBase>>() {
+						int m_Index;
+
+						@Override
+						public boolean hasNext() {
+							return m_Index < m_Size;
+						}
+
+						@Override
+						public Entry<String, DtBase> next() {
+							if (m_Index >= m_Size) {
+								throw new NoSuchElementException();
+							}
+							int idx = m_Index++;
+							return new SimpleImmutableEntry<String, DtBase>(m_Keys[idx], m_Values[idx]);
+						}
+
+						@Override
+						public void remove() {
+							if (0 == m_Index) {
+								throw new IllegalStateException();
+							}
+							removeAt(--m_Index);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return m_Size;
+				}
+			};
 		}
 	}
 
@@ -91,6 +381,7 @@ public class SimpleDtObject extends AbstractDtObject implements Iterable<KvPair<
 	 */
 	public void setSortAttribute(boolean sort) {
 		m_SortAttribute = sort;
+		updateOrder();
 	}
 
 	/**
@@ -100,31 +391,82 @@ public class SimpleDtObject extends AbstractDtObject implements Iterable<KvPair<
 	 */
 	public void setAttributeComparator(Comparator<String> comp) {
 		m_Comparator = comp;
+		updateOrder();
+	}
+
+	private void updateOrder() {
+		if (m_Map instanceof CompactMap) {
+			Comparator<String> comp = m_Comparator;
+			if (null == comp && m_SortAttribute) {
+				comp = NATURAL_ORDER;
+			}
+			((CompactMap) m_Map).setComparator(comp);
+		}
 	}
 
 	@Override
 	public Enumeration<String> getAttributeNames() {
+		if (m_Map instanceof CompactMap && ((CompactMap) m_Map).isOrdered()) {
+			// 已按顺序存储
+			return ((CompactMap) m_Map).keys();
+		}
 		Collection<String> atts = m_Map.keySet();
 		if (atts.isEmpty()) {
 			return Collections.emptyEnumeration();
 		}
-		if (null != m_Comparator) {
-			ArrayList<String> list = new ArrayList<>(atts);
-			Collections.sort(list, m_Comparator);
-			atts = list;
-		} else if (m_SortAttribute) {
-			ArrayList<String> list = new ArrayList<>(atts);
-			Collections.sort(list);
-			atts = list;
+		if (null != m_Comparator || m_SortAttribute) {
+			atts = sortNames(atts);
 		}
 		return Collections.enumeration(atts);
 	}
 
+	/**
+	 * 按排序器（未指定则按字典序）排序属性名
+	 */
+	private List<String> sortNames(Collection<String> names) {
+		final Comparator<String> comp = (null == m_Comparator) ? NATURAL_ORDER : m_Comparator;
+		ArrayList<String> list = new ArrayList<>(names);
+		Collections.sort(list, new Comparator<String>() {
+
+			@Override
+			public int compare(String o1, String o2) {
+				return CompactMap.compare(comp, o1, o2);
+			}
+		});
+		return list;
+	}
+
 	@Override
 	protected DtBase getAttributeInner(String name) {
 		return m_Map.get(name);
 	}
 
+	@Override
+	public <E extends Exception> void forEachAttribute(AttributeVisitor<E> visitor) throws E {
+		Map<String, DtBase> map = m_Map;
+		if (map instanceof CompactMap && ((CompactMap) map).isOrdered()) {
+			// 按存储的顺序直接遍历数组
+			CompactMap compact = (CompactMap) map;
+			String[] keys = compact.m_Keys;
+			DtBase[] values = compact.m_Values;
+			int size = compact.m_Size;
+			for (int i = 0; i < size; i++) {
+				visitor.visit(keys[i], values[i]);
+			}
+			return;
+		}
+		if (null == m_Comparator && !m_SortAttribute) {
+			for (Entry<String, DtBase> e : map.entrySet()) {
+				visitor.visit(e.getKey(), e.getValue());
+			}
+			return;
+		}
+		// 已转为HashMap，排序自身的属性名后遍历（不经可被子类覆盖的getAttributeNames等方法）
+		for (String name : sortNames(map.keySet())) {
+			visitor.visit(name, map.get(name));
+		}
+	}
+
 	@Override
 	public Iterator<KvPair<String, DtBase>> iterator() {
 		final Iterator<Entry<String, DtBase>> it = m_Map.entrySet().iterator();
@@ -173,14 +515,15 @@ public class SimpleDtObject extends AbstractDtObject implements Iterable<KvPair<
 		if (null == obj) {
 			return;
 		}
-		Enumeration<KvPair<String, DtBase>> dtObjAtts = obj.getAttributes();
-		while (dtObjAtts.hasMoreElements()) {
-			KvPair<String, DtBase> att = dtObjAtts.nextElement();
-			if (null == att.getValue()) {
-				continue;
+		forEach(obj, new AttributeVisitor<RuntimeException>() {
+
+			@Override
+			public void visit(String name, DtBase value) {
+				if (null != value) {
+					put(name, value);
+				}
 			}
-			put(att.getKey(), att.getValue());
-		}
+		});
 	}
 
 	/**
@@ -10,17 +10,39 @@
  */
 package cn.weforward.protocol;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import cn.weforward.common.crypto.Base64;
+import cn.weforward.common.crypto.Hex;
 import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.protocol.auth.AesAuthEngine;
+import cn.weforward.protocol.auth.AuthEngine;
+import cn.weforward.protocol.auth.AuthExceptionWrap;
 import cn.weforward.protocol.auth.AutherInputStream;
 import cn.weforward.protocol.auth.AutherOutputStream;
+import cn.weforward.protocol.auth.NoiseGenerator;
+import cn.weforward.protocol.auth.ReplayGuard;
+import cn.weforward.protocol.auth.Sha2AuthEngine;
+import cn.weforward.protocol.auth.Sha2Signer;
+import cn.weforward.protocol.exception.AuthException;
+import cn.weforward.protocol.support.CachingAccessLoader;
+import cn.weforward.protocol.support.SimpleAccess;
 
 public class AutherTest {
 
@@ -72,4 +94,449 @@ public class AutherTest {
 		autherInput.close();
 		assertTrue(Arrays.equals(data, data2));
 	}
+
+	@Test
+	public void sha2Sign() throws Exception {
+		byte[] key = "0123456789abcdef".getBytes("utf-8");
+		String[][] cases = { { "test", "H-0947f4f50120-0947f4f50120", "00016d7a1f2c0001", null, null, null },
+				{ "测试服务", "H-0947f4f50120-0947f4f50120", "00016d7a1f2c0002", "tag", Header.CHANNEL_RPC,
+						"47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=" },
+				// 拼接后相同的(service, access id)不能共用前缀
+				{ "c", "a@b", "00016d7a1f2c0003", null, null, null }, { "b@c", "a", "00016d7a1f2c0003", null, null, null },
+				// null与原来的拼接一致
+				{ null, "H-0947f4f50120-0947f4f50120", "00016d7a1f2c0004", null, null, null } };
+		for (int round = 0; round < 2; round++) {
+			for (String[] c : cases) {
+				StringBuilder sb = new StringBuilder();
+				sb.append(c[0]).append(c[1]).append(Base64.encode(key)).append(c[2]);
+				for (int i = 3; i < c.length; i++) {
+					if (null != c[i]) {
+						sb.append(c[i]);
+					}
+				}
+				MessageDigest md = MessageDigest.getInstance("SHA-256");
+				String expect = Base64.encode(md.digest(sb.toString().getBytes("utf-8")));
+				// 第二轮使用缓存的前缀摘要
+				assertEquals(expect, Sha2Signer.sign(c[0], c[1], key, c[2], c[3], c[4], c[5]));
+			}
+		}
+		// access key变化后不能再使用缓存的前缀
+		byte[] key2 = "fedcba9876543210".getBytes("utf-8");
+		assertNotEquals(Sha2Signer.sign("test", cases[0][1], key, "n", null, null, null),
+				Sha2Signer.sign("test", cases[0][1], key2, "n", null, null, null));
+	}
+
+	@Test
+	public void cachingAccessLoader() throws InterruptedException {
+		final AtomicInteger loads = new AtomicInteger();
+		final SimpleAccess acc = new SimpleAccess();
+		acc.setAccessId("H-0947-0001");
+		acc.setAccessKey(new byte[] { 1, 2, 3 });
+		acc.setValid(true);
+		CachingAccessLoader loader = new CachingAccessLoader(new AccessLoader() {
+			@Override
+			public Access getValidAccess(String accessId) {
+				loads.incrementAndGet();
+				return acc.getAccessId().equals(accessId) ? acc : null;
+			}
+		});
+		loader.setExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		// 命中
+		assertEquals(acc, loader.getValidAccess(acc.getAccessId()));
+		assertEquals(acc, loader.getValidAccess(acc.getAccessId()));
+		assertEquals(1, loads.get());
+		// 不存在的项也缓存
+		loader.setNegativeTtl(1);
+		assertNull(loader.getValidAccess("H-0947-0002"));
+		assertNull(loader.getValidAccess("H-0947-0002"));
+		assertEquals(2, loads.get());
+		// 过期后同步加载
+		Thread.sleep(1100);
+		assertNull(loader.getValidAccess("H-0947-0002"));
+		assertEquals(3, loads.get());
+		// 超过刷新点后台刷新，仍返回旧值
+		loader.invalidate(acc.getAccessId());
+		loader.setRefreshAhead(0);
+		assertEquals(acc, loader.getValidAccess(acc.getAccessId()));
+		assertEquals(4, loads.get());
+		Thread.sleep(5);
+		assertEquals(acc, loader.getValidAccess(acc.getAccessId()));
+		assertEquals(5, loads.get());
+		assertEquals(7, loader.getGetCount());
+		assertEquals(4, loader.getMissCount());
+		assertEquals(42, loader.getHitRate());
+		assertTrue(loader.getLoadMax() >= loader.getLoadAverage());
+		// 缓存期间已失效的凭证视为过期，重新加载后仍失效则按不存在缓存
+		acc.setValid(false);
+		assertNull(loader.getValidAccess(acc.getAccessId()));
+		assertEquals(6, loads.get());
+		assertNull(loader.getValidAccess(acc.getAccessId()));
+		assertEquals(6, loads.get());
+	}
+
+	@Test
+	public void aes() throws Exception {
+		byte[] data = new byte[20 * 1024 + 7];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		AccessLoader loader = new AccessLoader.Single("H-0947-0001", "0123456789abcdef0123456789abcdef");
+		Header header = new Header("test");
+		header.setAuthType(Header.AUTH_TYPE_AES);
+		header.setAccessId("H-0947-0001");
+		AutherOutputStream encoder = AutherOutputStream.getInstance(Header.AUTH_TYPE_AES);
+		encoder.init(AutherOutputStream.MODE_ENCODE, loader);
+		encoder.auth(header);
+		BytesOutputStream cipher = new BytesOutputStream();
+		encoder.setTransferTo(null, cipher);
+		// 分段写入
+		encoder.write(data, 0, 1000);
+		encoder.write(data[1000]);
+		encoder.write(data, 1001, data.length - 1001);
+		encoder.finish();
+		byte[] encrypted = cipher.toByteArray();
+		assertEquals(AesAuthEngine.IV_LENGTH + data.length + AesAuthEngine.TAG_BITS / 8, encrypted.length);
+
+		// 流式解码
+		assertTrue(Arrays.equals(data, aesDecode(header, loader, encrypted)));
+		// 非流式的引擎也能解码
+		AuthEngine.Input in = new AuthEngine.Input();
+		in.serviceName = header.getService();
+		in.accessId = header.getAccessId();
+		in.accessKey = loader.getValidAccess(in.accessId).getAccessKey();
+		in.noise = header.getNoise();
+		in.sign = header.getSign();
+		in.data = encrypted;
+		in.dataLength = encrypted.length;
+		AuthEngine.Output out = new AesAuthEngine().decode(in);
+		assertTrue(Arrays.equals(data, Arrays.copyOfRange(out.data, out.dataOffset, out.dataLength)));
+
+		// 非流式的引擎每次加密都使用新的noise及IV，流式也能解码
+		in.data = data;
+		in.dataLength = data.length;
+		AuthEngine.Output first = new AesAuthEngine().encode(in);
+		AuthEngine.Output second = new AesAuthEngine().encode(in);
+		assertNotEquals(in.noise, first.noise);
+		assertNotEquals(first.noise, second.noise);
+		assertFalse(Arrays.equals(Arrays.copyOf(first.data, AesAuthEngine.IV_LENGTH),
+				Arrays.copyOf(second.data, AesAuthEngine.IV_LENGTH)));
+		Header header2 = new Header("test");
+		header2.setAuthType(Header.AUTH_TYPE_AES);
+		header2.setAccessId(in.accessId);
+		header2.setNoise(first.noise);
+		header2.setSign(first.sign);
+		assertTrue(Arrays.equals(data, aesDecode(header2, loader,
+				Arrays.copyOfRange(first.data, first.dataOffset, first.dataLength))));
+
+		// 内容被篡改
+		encrypted[100] ^= 1;
+		try {
+			aesDecode(header, loader, encrypted);
+			fail();
+		} catch (AuthExceptionWrap e) {
+		}
+	}
+
+	private static byte[] aesDecode(Header header, AccessLoader loader, byte[] encrypted) throws Exception {
+		return aesDecode(header, loader, encrypted, ReplayGuard.getDefault());
+	}
+
+	private static byte[] aesDecode(Header header, AccessLoader loader, byte[] encrypted, ReplayGuard guard)
+			throws Exception {
+		AutherOutputStream decoder = AutherOutputStream.getInstance(Header.AUTH_TYPE_AES);
+		decoder.setReplayGuard(guard);
+		decoder.init(AutherOutputStream.MODE_DECODE, loader);
+		decoder.auth(header);
+		BytesOutputStream plain = new BytesOutputStream();
+		decoder.setTransferTo(null, plain);
+		decoder.write(new ByteArrayInputStream(encrypted));
+		decoder.finish();
+		return plain.toByteArray();
+	}
+
+	@Test
+	public void replayGuard() throws Exception {
+		ReplayGuard guard = new ReplayGuard(60, 10, 1 << 20);
+		long now = System.currentTimeMillis();
+		String noise = NoiseGenerator.next();
+		assertTrue(guard.check("H-0947-0001", noise, now));
+		assertFalse(guard.check("H-0947-0001", noise, now));
+		// 不同的access id不算重放
+		assertTrue(guard.check("H-0947-0002", noise, now));
+		// 同一线程生成的noise递增不重复
+		long last = 0;
+		for (int i = 0; i < 10000; i++) {
+			long n = NoiseGenerator.nextLong();
+			assertTrue(n > last);
+			last = n;
+			assertTrue(guard.check("H-0947-0001", Hex.toHex64(n), now));
+		}
+		// 窗口内仍能识别重放
+		assertFalse(guard.check("H-0947-0001", noise, now + 59 * 1000));
+		// 超过时间窗口的旧noise直接拒绝，不能在被遗忘后重放
+		assertFalse(guard.check("H-0947-0001", noise, now + 61 * 1000));
+		assertFalse(guard.check("H-0947-0003", noise, now + 61 * 1000));
+		assertFalse(guard.check("H-0947-0003", noiseAt(now - 61 * 1000), now));
+		// 时间超出允许偏差的noise也拒绝，偏差内的可以
+		assertFalse(guard.check("H-0947-0003", noiseAt(now + 11 * 1000), now));
+		assertTrue(guard.check("H-0947-0003", noiseAt(now + 9 * 1000), now));
+		// 格式不对的noise
+		assertFalse(guard.check("H-0947-0003", "not-a-noise", now));
+		assertFalse(guard.check("H-0947-0003", null, now));
+
+		// 不同线程同一毫秒生成的noise也不会相同
+		final long[] other = new long[1000];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < other.length; i++) {
+					other[i] = NoiseGenerator.nextLong();
+				}
+			}
+		};
+		long[] mine = new long[other.length];
+		thread.start();
+		for (int i = 0; i < mine.length; i++) {
+			mine[i] = NoiseGenerator.nextLong();
+		}
+		thread.join();
+		Set<Long> all = new HashSet<Long>();
+		for (int i = 0; i < mine.length; i++) {
+			assertTrue(all.add(mine[i]));
+			assertTrue(all.add(other[i]));
+		}
+	}
+
+	@Test
+	public void replayDecode() throws Exception {
+		byte[] data = "hello".getBytes("utf-8");
+		AccessLoader loader = new AccessLoader.Single("H-0947-0001", "0123456789abcdef0123456789abcdef");
+		AuthEngine.Input in = new AuthEngine.Input();
+		in.serviceName = "test";
+		in.accessId = "H-0947-0001";
+		in.accessKey = loader.getValidAccess(in.accessId).getAccessKey();
+		in.data = data;
+		in.dataLength = data.length;
+
+		// 非流式的引擎
+		Sha2AuthEngine sha2 = new Sha2AuthEngine();
+		sha2.setReplayGuard(new ReplayGuard(60, 1 << 10));
+		AuthEngine.Output out = sha2.encode(in);
+		in.noise = out.noise;
+		in.sign = out.sign;
+		in.contentSign = out.contentSign;
+		// 篡改了内容的请求不占用noise
+		in.data = "hellO".getBytes("utf-8");
+		try {
+			sha2.decode(in);
+			fail();
+		} catch (AuthException e) {
+		}
+		in.data = data;
+		sha2.decode(in);
+		try {
+			sha2.decode(in);
+			fail();
+		} catch (AuthException e) {
+		}
+		// 过期的noise即使签名正确也拒绝
+		in.noise = noiseAt(System.currentTimeMillis() - 61 * 1000);
+		out = sha2.encode(in);
+		in.sign = out.sign;
+		try {
+			sha2.decode(in);
+			fail();
+		} catch (AuthException e) {
+		}
+
+		AesAuthEngine aes = new AesAuthEngine();
+		aes.setReplayGuard(new ReplayGuard(60, 1 << 10));
+		in.noise = null;
+		in.sign = null;
+		in.contentSign = null;
+		in.data = data;
+		in.dataLength = data.length;
+		out = aes.encode(in);
+		AuthEngine.Input in2 = new AuthEngine.Input();
+		in2.serviceName = in.serviceName;
+		in2.accessId = in.accessId;
+		in2.accessKey = in.accessKey;
+		in2.noise = out.noise;
+		in2.sign = out.sign;
+		in2.data = Arrays.copyOfRange(out.data, out.dataOffset, out.dataLength);
+		in2.dataLength = in2.data.length;
+		in2.data[in2.dataLength - 1] ^= 1;
+		try {
+			aes.decode(in2);
+			fail();
+		} catch (AuthException e) {
+		}
+		in2.data[in2.dataLength - 1] ^= 1;
+		aes.decode(in2);
+		try {
+			aes.decode(in2);
+			fail();
+		} catch (AuthException e) {
+		}
+
+		// 流式
+		Header header = new Header("test");
+		header.setAuthType(Header.AUTH_TYPE_SHA2);
+		header.setAccessId("H-0947-0001");
+		AutherOutputStream encoder = AutherOutputStream.getInstance(Header.AUTH_TYPE_SHA2);
+		encoder.init(AutherOutputStream.MODE_ENCODE, loader);
+		encoder.auth(header);
+		encoder.setTransferTo(null, new BytesOutputStream());
+		encoder.write(data, 0, data.length);
+		encoder.finish();
+		ReplayGuard guard = new ReplayGuard(60, 1 << 10);
+		AutherOutputStream decoder = AutherOutputStream.getInstance(Header.AUTH_TYPE_SHA2);
+		decoder.setReplayGuard(guard);
+		decoder.init(AutherOutputStream.MODE_DECODE, loader);
+		decoder.auth(header);
+		decoder = AutherOutputStream.getInstance(Header.AUTH_TYPE_SHA2);
+		decoder.setReplayGuard(guard);
+		decoder.init(AutherOutputStream.MODE_DECODE, loader);
+		try {
+			decoder.auth(header);
+			fail();
+		} catch (AuthException e) {
+		}
+
+		header = new Header("test");
+		header.setAuthType(Header.AUTH_TYPE_AES);
+		header.setAccessId("H-0947-0001");
+		encoder = AutherOutputStream.getInstance(Header.AUTH_TYPE_AES);
+		encoder.init(AutherOutputStream.MODE_ENCODE, loader);
+		encoder.auth(header);
+		BytesOutputStream cipher = new BytesOutputStream();
+		encoder.setTransferTo(null, cipher);
+		encoder.write(data, 0, data.length);
+		encoder.finish();
+		byte[] encrypted = cipher.toByteArray();
+		aesDecode(header, loader, encrypted, guard);
+		try {
+			aesDecode(header, loader, encrypted, guard);
+			fail();
+		} catch (AuthExceptionWrap e) {
+		}
+	}
+
+	@Test
+	public void aesStreamReplay() throws Exception {
+		byte[] data = "hello".getBytes("utf-8");
+		AccessLoader loader = new AccessLoader.Single("H-0947-0001", "0123456789abcdef0123456789abcdef");
+		Header header = new Header("test");
+		header.setAuthType(Header.AUTH_TYPE_AES);
+		header.setAccessId("H-0947-0001");
+		AutherOutputStream encoder = AutherOutputStream.getInstance(Header.AUTH_TYPE_AES);
+		encoder.init(AutherOutputStream.MODE_ENCODE, loader);
+		encoder.auth(header);
+		BytesOutputStream cipher = new BytesOutputStream();
+		encoder.setTransferTo(null, cipher);
+		encoder.write(data, 0, data.length);
+		encoder.finish();
+		byte[] encrypted = cipher.toByteArray();
+		ReplayGuard guard = new ReplayGuard(60, 1 << 10);
+		// 篡改了内容的请求不占用noise
+		encrypted[encrypted.length - 1] ^= 1;
+		try {
+			aesDecode(header, loader, encrypted, guard);
+			fail();
+		} catch (AuthExceptionWrap e) {
+		}
+		encrypted[encrypted.length - 1] ^= 1;
+		assertTrue(Arrays.equals(data, aesDecode(header, loader, encrypted, guard)));
+		// 再次使用同一noise则是重放
+		try {
+			aesDecode(header, loader, encrypted, guard);
+			fail();
+		} catch (AuthExceptionWrap e) {
+		}
+	}
+
+	@Test
+	public void sha2Reuse() throws Exception {
+		final AccessLoader first = new AccessLoader.Single("H-0947-0001", "0123456789abcdef0123456789abcdef");
+		final AccessLoader second = new AccessLoader.Single("H-0947-0002", "fedcba9876543210fedcba9876543210");
+		AccessLoader loader = new AccessLoader() {
+			@Override
+			public Access getValidAccess(String accessId) {
+				Access access = first.getValidAccess(accessId);
+				return null == access ? second.getValidAccess(accessId) : access;
+			}
+		};
+		// 沿用的验证器与全新的签名结果须一致，包括换了access id及服务之后
+		String[][] cases = { { "test", "H-0947-0001" }, { "test", "H-0947-0001" }, { "test", "H-0947-0002" },
+				{ "other", "H-0947-0002" }, { "test", "H-0947-0001" } };
+		AutherOutputStream reused = AutherOutputStream.getInstance(Header.AUTH_TYPE_SHA2);
+		for (int i = 0; i < cases.length; i++) {
+			byte[] data = ("content-" + i).getBytes("utf-8");
+			Header header = new Header(cases[i][0]);
+			header.setAuthType(Header.AUTH_TYPE_SHA2);
+			header.setAccessId(cases[i][1]);
+			reused.init(AutherOutputStream.MODE_ENCODE, loader);
+			reused.auth(header);
+			BytesOutputStream body = new BytesOutputStream();
+			reused.setTransferTo(null, body);
+			reused.write(data, 0, data.length);
+			reused.finish();
+			assertTrue(Arrays.equals(data, body.toByteArray()));
+
+			AuthEngine.Input in = new AuthEngine.Input();
+			in.serviceName = header.getService();
+			in.accessId = header.getAccessId();
+			in.accessKey = loader.getValidAccess(in.accessId).getAccessKey();
+			in.noise = header.getNoise();
+			in.data = data;
+			in.dataLength = data.length;
+			AuthEngine.Output fresh = new Sha2AuthEngine().encode(in);
+			assertEquals(fresh.contentSign, header.getContentSign());
+			assertEquals(fresh.sign, header.getSign());
+		}
+
+		// 沿用期间access失效后重新获取，不再用旧的access签名
+		final SimpleAccess acc = new SimpleAccess();
+		acc.setAccessId("H-0947-0003");
+		acc.setAccessKey(new byte[] { 1, 2, 3 });
+		acc.setValid(true);
+		final AtomicInteger loads = new AtomicInteger();
+		loader = new AccessLoader() {
+			@Override
+			public Access getValidAccess(String accessId) {
+				loads.incrementAndGet();
+				return acc.isValid() ? acc : null;
+			}
+		};
+		Header header = new Header("test");
+		header.setAuthType(Header.AUTH_TYPE_SHA2);
+		header.setAccessId(acc.getAccessId());
+		reused.init(AutherOutputStream.MODE_ENCODE, loader);
+		reused.auth(header);
+		reused.setTransferTo(null, new BytesOutputStream());
+		reused.finish();
+		assertEquals(1, loads.get());
+		acc.setValid(false);
+		header = new Header("test");
+		header.setAuthType(Header.AUTH_TYPE_SHA2);
+		header.setAccessId(acc.getAccessId());
+		reused.init(AutherOutputStream.MODE_ENCODE, loader);
+		reused.auth(header);
+		reused.setTransferTo(null, new BytesOutputStream());
+		try {
+			reused.finish();
+			fail();
+		} catch (AuthExceptionWrap e) {
+		}
+		assertEquals(2, loads.get());
+	}
+
+	private static String noiseAt(long mills) {
+		return Hex.toHex64(mills << 20);
+	}
 }
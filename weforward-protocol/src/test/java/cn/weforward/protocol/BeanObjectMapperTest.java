@@ -12,19 +12,26 @@ package cn.weforward.protocol;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import cn.weforward.common.KvPair;
 import cn.weforward.common.json.JsonNode;
 import cn.weforward.common.json.JsonUtil;
 import cn.weforward.common.json.StringInput;
+import cn.weforward.protocol.client.util.MappedDtStream;
+import cn.weforward.protocol.client.util.MappedUtil;
 import cn.weforward.protocol.datatype.DtBase;
 import cn.weforward.protocol.datatype.DtList;
 import cn.weforward.protocol.datatype.DtObject;
@@ -32,6 +39,7 @@ import cn.weforward.protocol.exception.SerialException;
 import cn.weforward.protocol.serial.JsonDtObject;
 import cn.weforward.protocol.serial.JsonSerialEngine;
 import cn.weforward.protocol.support.BeanObjectMapper;
+import cn.weforward.protocol.support.PageData;
 import cn.weforward.protocol.support.datatype.SimpleDtObject;
 
 public class BeanObjectMapperTest {
@@ -144,6 +152,20 @@ public class BeanObjectMapperTest {
 		}
 	}
 
+	public static class ChildD {
+		public String getFlag() {
+			return "get";
+		}
+
+		public String isFlag() {
+			return "is";
+		}
+
+		public String getName() {
+			return "d";
+		}
+	}
+
 	public static class ChildC {
 		boolean m_Fat;
 		float m_Weight;
@@ -249,6 +271,228 @@ public class BeanObjectMapperTest {
 		System.out.flush();
 	}
 
+	@Test
+	public void accessors() {
+		ChildA a = new ChildA();
+		a.setName("a");
+		a.setBrithDay(new Date(1000));
+		ChildB son = new ChildB();
+		son.setAge((short) 7);
+		a.setSon(son);
+		a.setStringArray(new String[] { "x", "y" });
+		BeanObjectMapper<ChildA> mapper = BeanObjectMapper.getInstance(ChildA.class);
+		DtObject dto = mapper.toDtObject(a);
+		Assert.assertEquals("a", dto.getString("name").value());
+		Assert.assertEquals(7, dto.getObject("son").getNumber("age").valueInt());
+		Assert.assertNull(dto.getAttribute("summary"));
+		ChildA a2 = mapper.fromDtObject(dto);
+		Assert.assertEquals("a", a2.getName());
+		Assert.assertEquals(new Date(1000), a2.getBrithDay());
+		Assert.assertEquals(7, a2.getSon().getAge());
+		Assert.assertArrayEquals(new String[] { "x", "y" }, a2.getStringArray());
+		Assert.assertNull(a2.getSummary());
+
+		ChildC c = new ChildC();
+		c.setFar(true);
+		c.setWeight(1.5f);
+		ChildC c2 = BeanObjectMapper.getInstance(ChildC.class)
+				.fromDtObject(BeanObjectMapper.getInstance(ChildC.class).toDtObject(c));
+		Assert.assertEquals(1.5f, c2.getWeight(), 0);
+	}
+
+	@Test
+	public void direct() throws SerialException, IOException {
+		ChildA a = new ChildA();
+		a.setName("a\"名");
+		a.setBrithDay(new Date(1000));
+		ChildB son = new ChildB();
+		son.setAge((short) 7);
+		a.setSon(son);
+		a.setStringArray(new String[] { "x", "y" });
+		List<ChildA> list = new ArrayList<ChildA>();
+		list.add(a);
+		list.add(new ChildA());
+
+		JsonSerialEngine serialEngine = new JsonSerialEngine();
+		SimpleDtObject expect = new SimpleDtObject();
+		expect.put("content", MappedUtil.toBase(list, null));
+		SimpleDtObject actual = new SimpleDtObject();
+		actual.put("content", MappedUtil.toDirect(list, null));
+		String json = toJson(serialEngine, actual);
+		Assert.assertEquals(toJson(serialEngine, expect), json);
+		DtList items = serialEngine
+				.unserial(new ByteArrayInputStream(json.getBytes(Header.CHARSET_UTF8)), Header.CHARSET_UTF8)
+				.getList("content");
+		Assert.assertEquals(2, items.size());
+		DtObject item = (DtObject) items.getItem(0);
+		Assert.assertEquals("a\"名", item.getString("name").value());
+		Assert.assertEquals("1970-01-01T00:00:01.000Z", item.getString("brith_day").value());
+		Assert.assertEquals(7, item.getObject("son").getNumber("age").valueInt());
+		Assert.assertNull(((DtObject) items.getItem(1)).getAttribute("name"));
+
+		DtObject dto = (DtObject) MappedUtil.toDirect(a, null);
+		Assert.assertEquals("a\"名", dto.getString("name").value());
+		Assert.assertEquals(7, dto.getObject("son").getNumber("age").valueInt());
+	}
+
+	@Test
+	public void directAccessors() throws SerialException, IOException {
+		// 同时有getX与isX时只输出一次，且与toBase取同一个
+		JsonSerialEngine serialEngine = new JsonSerialEngine();
+		SimpleDtObject expect = new SimpleDtObject();
+		expect.put("content", MappedUtil.toBase(new ChildD(), null));
+		SimpleDtObject actual = new SimpleDtObject();
+		actual.put("content", MappedUtil.toDirect(new ChildD(), null));
+		String json = toJson(serialEngine, actual);
+		Assert.assertEquals(toJson(serialEngine, expect), json);
+		DtObject item = serialEngine
+				.unserial(new ByteArrayInputStream(json.getBytes(Header.CHARSET_UTF8)), Header.CHARSET_UTF8)
+				.getObject("content");
+		Assert.assertEquals(2, item.getAttributeSize());
+	}
+
+	@Test
+	public void directMap() throws SerialException, IOException {
+		Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+		map.put(1, "a");
+		map.put("1", "b");
+		map.put(null, "c");
+		map.put("userName", "d");
+		map.put("user_name", "e");
+		List<Object> list = new ArrayList<Object>();
+		list.add(map);
+
+		JsonSerialEngine serialEngine = new JsonSerialEngine();
+		SimpleDtObject actual = new SimpleDtObject();
+		actual.put("content", MappedUtil.toDirect(list, null));
+		String json = toJson(serialEngine, actual);
+		DtObject item = (DtObject) serialEngine
+				.unserial(new ByteArrayInputStream(json.getBytes(Header.CHARSET_UTF8)), Header.CHARSET_UTF8)
+				.getList("content").getItem(0);
+		Assert.assertEquals(2, item.getAttributeSize());
+		Assert.assertEquals("a", item.getString("1").value());
+		// 键与toBase一样转换属性名，转换后相同的只输出首个
+		Assert.assertTrue(json.contains("\"user_name\":\"d\""));
+		Assert.assertFalse(json.contains("userName"));
+		Assert.assertEquals("d", item.getString("user_name").value());
+	}
+
+	@Test
+	public void stream() throws SerialException, IOException {
+		final List<ChildA> list = new ArrayList<ChildA>();
+		for (int i = 0; i < 100; i++) {
+			ChildA a = new ChildA();
+			a.setName("a" + i);
+			list.add(a);
+		}
+		final boolean[] closed = new boolean[1];
+		class ClosableItems implements Iterable<ChildA>, Closeable {
+			@Override
+			public Iterator<ChildA> iterator() {
+				return list.iterator();
+			}
+
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		}
+		JsonSerialEngine serialEngine = new JsonSerialEngine();
+		SimpleDtObject expect = new SimpleDtObject();
+		expect.put("content", MappedUtil.toBase(list, null));
+		SimpleDtObject actual = new SimpleDtObject();
+		actual.put("content", MappedUtil.toStream(new ClosableItems(), null));
+		Assert.assertFalse(closed[0]);
+		String json = toJson(serialEngine, actual);
+		Assert.assertTrue(closed[0]);
+		Assert.assertEquals(toJson(serialEngine, expect), json);
+		// 已输出的流不能再输出
+		try {
+			toJson(serialEngine, actual);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("已输出或关闭的流不能再输出", e.getMessage());
+		}
+		// 没有输出（如验证失败）时由使用方关闭
+		closed[0] = false;
+		MappedDtStream unused = (MappedDtStream) MappedUtil.toStream(new ClosableItems(), null);
+		unused.close();
+		Assert.assertTrue(closed[0]);
+
+		PageData page = PageData.valueOf(100, 1, 100, 1, list);
+		actual = new SimpleDtObject();
+		actual.put("content", MappedUtil.toStream(page, null));
+		json = toJson(serialEngine, actual);
+		DtObject content = serialEngine
+				.unserial(new ByteArrayInputStream(json.getBytes(Header.CHARSET_UTF8)), Header.CHARSET_UTF8)
+				.getObject("content");
+		Assert.assertEquals(100, content.getNumber("count").valueInt());
+		DtList items = content.getList("items");
+		Assert.assertEquals(100, items.size());
+		Assert.assertEquals("a99", ((DtObject) items.getItem(99)).getString("name").value());
+
+		// 输出前按DtList访问
+		DtList stream = (DtList) MappedUtil.toStream(list.iterator(), null);
+		Assert.assertEquals(100, stream.size());
+		actual = new SimpleDtObject();
+		actual.put("content", stream);
+		Assert.assertEquals(toJson(serialEngine, expect), toJson(serialEngine, actual));
+	}
+
+	@Test
+	public void binding() {
+		String json = "{\"children_count\":3, \"unknown\":{\"a\":[1,\"}\"]},"
+				+ "\"child_a\":{\"name\":\"a\\\"名\",\"brith_day\":\"1970-01-01T00:00:01.000Z\",\"summary\":null,"
+				+ "\"son\":{\"age\":7}},\"child_bs\":[{\"age\":1},{\"age\":2.0}]}";
+		Parent p = (Parent) MappedUtil.fromJson(Parent.class, new JsonDtObject(json), null);
+		Assert.assertEquals(3, p.getChildrenCount());
+		Assert.assertEquals("a\"名", p.getChildA().getName());
+		Assert.assertEquals(new Date(1000), p.getChildA().getBrithDay());
+		Assert.assertNull(p.getChildA().getSummary());
+		Assert.assertEquals(7, p.getChildA().getSon().getAge());
+		Assert.assertEquals(2, p.getChildBs().size());
+		Assert.assertEquals(2, p.getChildBs().get(1).getAge());
+
+		// 已解析的对象仍走DtObject转换
+		JsonDtObject parsed = new JsonDtObject(json);
+		parsed.getAttributeSize();
+		Parent p2 = MappedUtil.fromBase(Parent.class, parsed);
+		Assert.assertEquals(p.getChildrenCount(), p2.getChildrenCount());
+		Assert.assertEquals(p.getChildA().getName(), p2.getChildA().getName());
+		Assert.assertEquals(p.getChildBs().get(0).getAge(), p2.getChildBs().get(0).getAge());
+	}
+
+	@Test
+	public void bindingError() {
+		String[] jsons = { "{\"child_a\":{\"name\":12}}", "{\"child_a\":{\"name\":true}}",
+				"{\"child_a\":{\"brith_day\":\"x\"}}", "{\"child_a\":{\"son\":\"7\"}}",
+				"{\"child_a\":{\"son\":[1]}}", "{\"child_a\":{\"name\":{\"a\":1}}}",
+				"{\"child_bs\":{\"age\":1}}" };
+		for (String json : jsons) {
+			JsonDtObject parsed = new JsonDtObject(json);
+			parsed.getAttributeSize();
+			String expect = null;
+			try {
+				MappedUtil.fromBase(Parent.class, parsed);
+			} catch (UnsupportedOperationException e) {
+				expect = e.getMessage();
+			}
+			Assert.assertNotNull(json, expect);
+			try {
+				MappedUtil.fromJson(Parent.class, new JsonDtObject(json), null);
+				Assert.fail(json);
+			} catch (UnsupportedOperationException e) {
+				Assert.assertEquals(json, expect, e.getMessage());
+			}
+		}
+	}
+
+	static String toJson(JsonSerialEngine engine, DtObject obj) throws SerialException, IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		engine.serial(obj, Header.CHARSET_UTF8, output);
+		return new String(output.toByteArray(), Header.CHARSET_UTF8);
+	}
+
 	static void dump(DtObject obj, String indentation) {
 		indentation += "\t";
 		System.out.println(indentation + "{");
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import cn.weforward.common.Dictionary;
+import cn.weforward.common.DictionaryExt;
+import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.protocol.aio.http.HttpHeaderHelper;
+import cn.weforward.protocol.client.SingleServiceInvoker;
+import cn.weforward.protocol.datatype.DataType;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtDate;
+import cn.weforward.protocol.datatype.DtList;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.ext.Producer;
+import cn.weforward.protocol.serial.BinarySerialEngine;
+import cn.weforward.protocol.support.SimpleProducer;
+import cn.weforward.protocol.support.SimpleResponse;
+import cn.weforward.protocol.support.datatype.SimpleDtList;
+import cn.weforward.protocol.support.datatype.SimpleDtObject;
+
+public class BinarySerialTest {
+
+	@Test
+	public void roundTrip() throws Exception {
+		Date now = new Date();
+		SimpleDtObject obj = new SimpleDtObject(false);
+		obj.put("s", "中文𐐷abc");
+		obj.put("i", -123);
+		obj.put("l", Long.MIN_VALUE);
+		obj.put("d", 1.5);
+		obj.put("b", true);
+		obj.put("t", now);
+		obj.put("n", (DtBase) null);
+		obj.put("e", (String) null);
+		SimpleDtList list = new SimpleDtList();
+		for (int i = 0; i < 3; i++) {
+			SimpleDtObject item = new SimpleDtObject(false);
+			item.put("s", "v" + i);
+			list.addItem(item);
+		}
+		list.addItem(null);
+		obj.put("list", list);
+
+		BinarySerialEngine engine = new BinarySerialEngine();
+		BytesOutputStream out = new BytesOutputStream();
+		engine.serial(obj, Header.CHARSET_UTF8, out);
+		DtObject ret = engine.unserial(new ByteArrayInputStream(out.toByteArray()), Header.CHARSET_UTF8);
+		assertEquals("中文𐐷abc", ret.getString("s").value());
+		assertEquals(-123, ret.getNumber("i").valueInt());
+		assertTrue(ret.getNumber("i").isInt());
+		assertEquals(Long.MIN_VALUE, ret.getNumber("l").valueLong());
+		assertEquals(1.5, ret.getNumber("d").valueDouble(), 0);
+		assertTrue(ret.getBoolean("b").value());
+		assertEquals(now, ((DtDate) ret.getAttribute("t")).valueDate());
+		assertNull(ret.getAttribute("n"));
+		assertEquals("", ret.getString("e").value());
+		DtList list2 = ret.getList("list");
+		assertEquals(4, list2.size());
+		DtObject item = list2.getItem(2, DataType.OBJECT);
+		assertEquals("v2", item.getString("s").value());
+		assertNull(list2.getItem(3));
+	}
+
+	@Test
+	public void loneSurrogate() throws Exception {
+		BinarySerialEngine engine = new BinarySerialEngine();
+		for (String s : new String[] { "a\uD801", "a\uD801b", "\uDC37a", "\uD801\uD801\uDC37" }) {
+			SimpleDtObject obj = new SimpleDtObject(false);
+			obj.put("s", s);
+			try {
+				engine.serial(obj, Header.CHARSET_UTF8, new BytesOutputStream());
+				fail(s);
+			} catch (Exception e) {
+				// 单独的代理码元不能输出，而不是输出长度与内容不一致的报文
+			}
+		}
+	}
+
+	@Test
+	public void negotiate() throws Exception {
+		final AccessLoader loader = new AccessLoader.Single("H-0947f4f50120-0947f4f50120",
+				"30313233343536373839616263646566");
+		final SimpleProducer producer = new SimpleProducer(loader);
+		// 收到的请求内容格式
+		final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		// 为true时模拟旧版本的服务：不理会可接受的格式，解析不了的请求只响应400且内容为空
+		final AtomicBoolean old = new AtomicBoolean();
+		final ServerSocket server = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				while (!server.isClosed()) {
+					try (Socket socket = server.accept()) {
+						serve(socket, producer, received, old.get());
+					} catch (Exception e) {
+					}
+				}
+			}
+		};
+		thread.start();
+		try {
+			SingleServiceInvoker invoker = new SingleServiceInvoker("http://127.0.0.1:" + server.getLocalPort() + "/",
+					"test", producer);
+			invoker.setAccessId("H-0947f4f50120-0947f4f50120");
+			invoker.setContentType(Header.CONTENT_TYPE_BINARY);
+			// 旧版本的服务从不确认支持，一直以json提交
+			old.set(true);
+			assertEquals("m1", invoker.invoke("m1").getServiceResult().getString("content").value());
+			assertEquals("m2", invoker.invoke("m2").getServiceResult().getString("content").value());
+			assertEquals(Arrays.asList(Header.CONTENT_TYPE_JSON, Header.CONTENT_TYPE_JSON), received);
+			// 对方确认支持后才改用
+			old.set(false);
+			received.clear();
+			assertEquals("m3", invoker.invoke("m3").getServiceResult().getString("content").value());
+			assertEquals("m4", invoker.invoke("m4").getServiceResult().getString("content").value());
+			assertEquals(Arrays.asList(Header.CONTENT_TYPE_JSON, Header.CONTENT_TYPE_BINARY), received);
+			// 换成了旧版本的服务：以空内容的400拒绝后，以json重试，且之后不再使用
+			old.set(true);
+			received.clear();
+			assertEquals("m5", invoker.invoke("m5").getServiceResult().getString("content").value());
+			assertEquals("m6", invoker.invoke("m6").getServiceResult().getString("content").value());
+			assertEquals(Arrays.asList(Header.CONTENT_TYPE_BINARY, Header.CONTENT_TYPE_JSON, Header.CONTENT_TYPE_JSON),
+					received);
+		} finally {
+			server.close();
+			thread.join();
+		}
+	}
+
+	/**
+	 * 处理一个HTTP请求（响应后关闭连接）
+	 */
+	private static void serve(Socket socket, SimpleProducer producer, List<String> received, boolean old)
+			throws Exception {
+		InputStream in = socket.getInputStream();
+		final Map<String, String> hs = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		// 跳过请求行
+		readLine(in);
+		String line;
+		while (!(line = readLine(in)).isEmpty()) {
+			int idx = line.indexOf(':');
+			hs.put(line.substring(0, idx).trim(), line.substring(idx + 1).trim());
+		}
+		byte[] content = new byte[Integer.parseInt(hs.get("Content-Length"))];
+		new DataInputStream(in).readFully(content);
+		OutputStream out = socket.getOutputStream();
+		Header reqHeader = new Header("test");
+		HttpHeaderHelper.fromHttpHeaders(new Dictionary<String, String>() {
+			@Override
+			public String get(String key) {
+				return hs.get(key);
+			}
+		}, reqHeader);
+		received.add(reqHeader.getContentType());
+		if (old && !Header.CONTENT_TYPE_JSON.equals(reqHeader.getContentType())) {
+			out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+					.getBytes("ISO-8859-1"));
+			out.flush();
+			return;
+		}
+		Request request = producer.fetchRequest(reqHeader, new ByteArrayInputStream(content));
+		Header respHeader = new Header("test");
+		String accept = reqHeader.getAcceptContentType();
+		respHeader.setContentType(!old && null != accept ? accept : reqHeader.getContentType());
+		respHeader.setCharset(reqHeader.getCharset());
+		respHeader.setAuthType(reqHeader.getAuthType());
+		respHeader.setAccessId(reqHeader.getAccessId());
+		Response response = new SimpleResponse(respHeader);
+		SimpleDtObject result = new SimpleDtObject();
+		result.put("code", 0);
+		result.put("content", request.getServiceInvoke().getString("method").value());
+		response.setServiceResult(result);
+		final BytesOutputStream body = new BytesOutputStream();
+		final Header[] written = new Header[1];
+		producer.make(response, new Producer.Output() {
+			@Override
+			public void writeHeader(Header header) throws IOException {
+				written[0] = header;
+			}
+
+			@Override
+			public OutputStream getOutputStream() throws IOException {
+				return body;
+			}
+		});
+		byte[] data = body.toByteArray();
+		StringBuilder sb = new StringBuilder("HTTP/1.1 200 OK\r\n");
+		DictionaryExt<String, String> respHs = HttpHeaderHelper.toHttpHeaders(written[0]);
+		Enumeration<String> names = respHs.keys();
+		while (names.hasMoreElements()) {
+			String name = names.nextElement();
+			sb.append(name).append(": ").append(respHs.get(name)).append("\r\n");
+		}
+		sb.append("Content-Length: ").append(data.length).append("\r\nConnection: close\r\n\r\n");
+		out.write(sb.toString().getBytes("ISO-8859-1"));
+		out.write(data);
+		out.flush();
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int ch;
+		while ('\n' != (ch = in.read())) {
+			if (-1 == ch) {
+				throw new EOFException();
+			}
+			if ('\r' != ch) {
+				sb.append((char) ch);
+			}
+		}
+		return sb.toString();
+	}
+}
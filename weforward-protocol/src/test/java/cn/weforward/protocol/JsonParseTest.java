@@ -10,10 +10,35 @@
  */
 package cn.weforward.protocol;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
 import org.junit.Test;
 
+import cn.weforward.common.json.JsonNameCache;
+import cn.weforward.common.json.JsonUtil;
+import cn.weforward.protocol.client.SingleServiceInvoker;
+import cn.weforward.protocol.datatype.DataType;
+import cn.weforward.protocol.datatype.DtList;
 import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.datatype.DtString;
+import cn.weforward.protocol.exception.SerialException;
+import cn.weforward.protocol.exception.WeforwardException;
+import cn.weforward.protocol.ext.Producer;
+import cn.weforward.protocol.serial.JsonBytesSerialEngine;
 import cn.weforward.protocol.serial.JsonDtObject;
+import cn.weforward.protocol.serial.JsonIndexedDtObject;
+import cn.weforward.protocol.serial.JsonOverlayDtObject;
+import cn.weforward.protocol.serial.JsonSerialEngine;
+import cn.weforward.protocol.support.DeflateDictionary;
+import cn.weforward.protocol.support.SimpleProducer;
+import cn.weforward.protocol.support.SimpleRequest;
+import cn.weforward.protocol.support.SimpleResponse;
+import cn.weforward.protocol.support.datatype.SimpleDtObject;
 
 public class JsonParseTest {
 
@@ -24,4 +49,313 @@ public class JsonParseTest {
 		DtObject dtObj = obj.getAttribute("wf_req");
 		System.out.println(dtObj.getAttribute("client_access"));
 	}
+
+	@Test
+	public void numbers() throws IOException, SerialException {
+		long[] longs = { 0, 7, -7, 10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE };
+		SimpleDtObject obj = new SimpleDtObject(false);
+		for (int i = 0; i < longs.length; i++) {
+			obj.put("l" + i, longs[i]);
+		}
+		obj.put("d", -0.25);
+		JsonSerialEngine engine = new JsonSerialEngine();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		engine.serial(obj, "utf-8", out);
+		String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		for (int i = 0; i < longs.length; i++) {
+			Assert.assertTrue(json, json.contains("\"l" + i + "\":" + longs[i]));
+		}
+		Assert.assertTrue(json, json.contains("\"d\":-0.25"));
+		DtObject parsed = new JsonDtObject(json);
+		for (int i = 0; i < longs.length; i++) {
+			Assert.assertEquals(longs[i], parsed.getNumber("l" + i).valueLong());
+		}
+		Assert.assertEquals(-0.25, parsed.getNumber("d").valueDouble(), 0);
+		Assert.assertTrue(parsed.getNumber("l1").isInt());
+		Assert.assertTrue(parsed.getNumber("l4").isLong());
+	}
+
+	@Test
+	public void names() throws IOException, SerialException {
+		Assert.assertSame(JsonNameCache.register("名\"称"), JsonUtil._NamePool.intern(new StringBuilder("名\"称")));
+		SimpleDtObject obj = new SimpleDtObject(false);
+		obj.put(ResponseConstants.WF_CODE, 0);
+		obj.put("名\"称", "a");
+		obj.put("unregistered", 1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JsonSerialEngine().serial(obj, "utf-8", out);
+		DtObject parsed = new JsonDtObject(new String(out.toByteArray(), StandardCharsets.UTF_8));
+		Assert.assertEquals(0, parsed.getNumber(ResponseConstants.WF_CODE).valueInt());
+		Assert.assertEquals("a", parsed.getString("名\"称").value());
+		Assert.assertEquals(1, parsed.getNumber("unregistered").valueInt());
+	}
+
+	@Test
+	public void bytes() throws IOException, SerialException {
+		String json = "{\"wf_req\":{\"client_access\":\"aaa\"},\"invoke\":{method:'aa',\"params\":{\"s\":\"中文\\u0041\\\"\\n\","
+				+ "\"n\":-123,\"d\":1.5e3,\"b\":true,\"z\":null,\"l\":[1,\"x]}\",{\"k\":[]}] }},\"wf_req\":{}}";
+		byte[] data = json.getBytes(StandardCharsets.UTF_8);
+		JsonBytesSerialEngine engine = new JsonBytesSerialEngine();
+		DtObject obj = engine.unserial(new ByteArrayInputStream(data), "utf-8");
+		DtObject expect = new JsonDtObject(json);
+		Assert.assertEquals("aaa", obj.getObject("wf_req").getString("client_access").value());
+		DtObject invoke = obj.getObject("invoke");
+		Assert.assertEquals("aa", invoke.getString("method").value());
+		DtObject params = invoke.getObject("params");
+		DtObject expectParams = expect.getObject("invoke").getObject("params");
+		Assert.assertEquals(expectParams.getString("s").value(), params.getString("s").value());
+		Assert.assertEquals("中文A\"\n", params.getString("s").value());
+		Assert.assertEquals(-123, params.getNumber("n").valueInt());
+		Assert.assertEquals(1500d, params.getNumber("d").valueDouble(), 0);
+		Assert.assertTrue(params.getBoolean("b").value());
+		Assert.assertNull(params.getAttribute("z"));
+		DtList list = params.getList("l");
+		Assert.assertEquals(3, list.size());
+		Assert.assertEquals("x]}", ((DtString) list.getItem(1, DataType.STRING)).value());
+		// 未解析的节点原样输出
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JsonSerialEngine().serial(engine.unserial(new ByteArrayInputStream(data), "utf-8"), "utf-8", out);
+		Assert.assertEquals(json, new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void indexed() throws IOException, SerialException {
+		String json = "{\"wf_req\":{\"client_access\":\"aaa\"}, \"invoke\" : {method:'aa',\"params\":{\"s\":\"a\\u0041\","
+				+ "\"e\":\"\",\"n\":-123 ,\"d\":1.5,\"b\":true,\"z\":null,\"l\":[1,{\"k\":\"v\"}]}},\"wf_req\":{},\"x\":1,\"x\":2}";
+		JsonIndexedDtObject obj = new JsonIndexedDtObject(json);
+		Assert.assertEquals(3, obj.getAttributeSize());
+		Assert.assertEquals("aaa", obj.getObject("wf_req").getString("client_access").value());
+		Assert.assertEquals(2, obj.getNumber("x").valueInt());
+		DtObject params = obj.getObject("invoke").getObject("params");
+		Assert.assertTrue(params instanceof JsonIndexedDtObject);
+		Assert.assertEquals("aA", params.getString("s").value());
+		Assert.assertEquals("", params.getString("e").value());
+		Assert.assertEquals(-123, params.getNumber("n").valueInt());
+		Assert.assertEquals(1.5d, params.getNumber("d").valueDouble(), 0);
+		Assert.assertTrue(params.getBoolean("b").value());
+		Assert.assertNull(params.getAttribute("z"));
+		// 已解析的null（缓存为标记）再次读取仍是null
+		Assert.assertNull(params.getAttribute("z"));
+		Assert.assertNull(params.getAttribute("none"));
+		DtObject item = params.getList("l").getItem(1, DataType.OBJECT);
+		Assert.assertTrue(item instanceof JsonIndexedDtObject);
+		Assert.assertEquals("v", item.getString("k").value());
+		// 读取过后仍原样输出
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JsonSerialEngine().serial(obj, "utf-8", out);
+		Assert.assertEquals(json, new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void overlay() throws IOException, SerialException {
+		String json = "{\"a\":{\"x\":[1,2]}, \"b\" : \"s\\u0041\" ,\"c\":3}";
+		JsonSerialEngine engine = new JsonSerialEngine();
+		JsonOverlayDtObject obj = new JsonOverlayDtObject(new JsonDtObject(json));
+		Assert.assertEquals(json, serial(engine, obj));
+		obj.put("c", 4);
+		obj.put("d", "new");
+		Assert.assertNotNull(obj.remove("a"));
+		Assert.assertEquals(3, obj.getAttributeSize());
+		Assert.assertNull(obj.getAttribute("a"));
+		Assert.assertEquals("sA", obj.getString("b").value());
+		Assert.assertEquals(4, obj.getNumber("c").valueInt());
+		// 未修改的属性原样输出
+		Assert.assertEquals("{\"b\":\"s\\u0041\",\"c\":4,\"d\":\"new\"}", serial(engine, obj));
+
+		// 原对象已解析时逐个属性输出
+		JsonDtObject parsed = new JsonDtObject(json);
+		parsed.getAttributeSize();
+		obj = new JsonOverlayDtObject(parsed);
+		obj.put("c", 4);
+		DtObject result = new JsonDtObject(serial(engine, obj));
+		Assert.assertEquals(3, result.getAttributeSize());
+		Assert.assertEquals(4, result.getNumber("c").valueInt());
+		Assert.assertEquals("sA", result.getString("b").value());
+
+		// 原值为null的属性被置入后只输出一次
+		json = "{\"a\":null,\"b\":1}";
+		parsed = new JsonDtObject(json);
+		parsed.getAttributeSize();
+		JsonOverlayDtObject[] overlays = { new JsonOverlayDtObject(new JsonDtObject(json)),
+				new JsonOverlayDtObject(parsed) };
+		for (JsonOverlayDtObject overlay : overlays) {
+			overlay.put("a", 2);
+			Assert.assertEquals(2, overlay.getAttributeSize());
+			Assert.assertEquals("{\"a\":2,\"b\":1}", serial(engine, overlay));
+		}
+	}
+
+	@Test
+	public void envelope() throws IOException, SerialException {
+		JsonSerialEngine engine = new JsonSerialEngine();
+		SimpleDtObject result = new SimpleDtObject();
+		result.put("code", 0);
+		result.put("content", "内容");
+		SimpleResponse[] responses = new SimpleResponse[4];
+		for (int i = 0; i < responses.length; i++) {
+			responses[i] = new SimpleResponse();
+		}
+		responses[0].setServiceResult(result);
+		responses[1].setResponseCode(1001);
+		responses[1].setResponseMsg("错误\"信息");
+		responses[2].setResponseMsg("");
+		responses[2].setServiceResult(result);
+		responses[3].setResourceId("res");
+		responses[3].setServiceResult(result);
+		// 与逐个属性构造wf_resp节点时输出的结果一致
+		String[] expects = { "{\"wf_resp\":{\"wf_code\":0,\"wf_msg\":\"\"},\"result\":{\"code\":0,\"content\":\"内容\"}}",
+				"{\"wf_resp\":{\"wf_code\":1001,\"wf_msg\":\"错误\\\"信息\"},\"result\":null}",
+				"{\"wf_resp\":{\"wf_code\":0,\"wf_msg\":\"\"},\"result\":{\"code\":0,\"content\":\"内容\"}}",
+				"{\"wf_resp\":{\"wf_code\":0,\"wf_msg\":\"\",\"res_id\":\"res\",\"res_expire\":0},"
+						+ "\"result\":{\"code\":0,\"content\":\"内容\"}}" };
+		for (int i = 0; i < responses.length; i++) {
+			SimpleResponse response = responses[i];
+			String json = serial(engine, ENVELOPE.toDtObject(response));
+			Assert.assertEquals(expects[i], json);
+			DtObject parsed = new JsonDtObject(json);
+			Assert.assertEquals(response.getResponseCode(),
+					parsed.getObject(ResponseConstants.WF_RESP).getNumber(ResponseConstants.WF_CODE).valueInt());
+		}
+	}
+
+	@Test
+	public void dictionary() throws Exception {
+		SimpleDtObject content = new SimpleDtObject();
+		content.put("id", "User$0157a3e5");
+		content.put("name", "test");
+		content.put("create_time", 1571209458000L);
+		SimpleDtObject result = new SimpleDtObject();
+		result.put("code", 0);
+		result.put("msg", "");
+		result.put("content", content);
+		SimpleResponse response = new SimpleResponse();
+		response.setServiceResult(result);
+
+		byte[] plain = make(response, null, false);
+		byte[] packed = make(response, Header.CONTENT_ENCODING_DICT, false);
+		// 小报文借助字典也有明显的压缩
+		Assert.assertTrue(plain.length + " -> " + packed.length, packed.length * 2 < plain.length);
+		// 流式输出与缓存输出的结果一致
+		Assert.assertArrayEquals(packed, make(response, Header.CONTENT_ENCODING_DICT, true));
+
+		Header header = Header.valueOf("test");
+		header.setContentEncoding(Header.CONTENT_ENCODING_DICT);
+		Response parsed = ENVELOPE.fetchResponse(header, new ByteArrayInputStream(packed));
+		Assert.assertEquals("test",
+				parsed.getServiceResult().getObject("content").getString("name").value());
+		Assert.assertEquals(1571209458000L,
+				parsed.getServiceResult().getObject("content").getNumber("create_time").valueLong());
+
+		Assert.assertEquals(Header.CONTENT_ENCODING_DICT, DeflateDictionary.negotiate("gzip, wfd1"));
+		Assert.assertNull(DeflateDictionary.negotiate("gzip"));
+		Assert.assertNull(DeflateDictionary.negotiate(null));
+	}
+
+	@Test
+	public void inflateLimit() throws Exception {
+		StringBuilder sb = new StringBuilder(64 * 1024);
+		for (int i = 0; i < 64 * 1024; i++) {
+			sb.append('a');
+		}
+		SimpleDtObject result = new SimpleDtObject();
+		result.put("content", sb.toString());
+		SimpleResponse response = new SimpleResponse();
+		response.setServiceResult(result);
+		byte[] packed = make(response, Header.CONTENT_ENCODING_DICT, false);
+		Assert.assertTrue(packed.length < 1024);
+
+		Header header = Header.valueOf("test");
+		header.setContentEncoding(Header.CONTENT_ENCODING_DICT);
+		EnvelopeProducer producer = new EnvelopeProducer();
+		producer.setMaxInflateSize(128 * 1024);
+		Assert.assertEquals(64 * 1024, producer.fetchResponse(header, new ByteArrayInputStream(packed))
+				.getServiceResult().getString("content").value().length());
+		// 解压后超过限制的内容不再继续解压
+		producer.setMaxInflateSize(16 * 1024);
+		try {
+			producer.fetchResponse(header, new ByteArrayInputStream(packed));
+			Assert.fail();
+		} catch (SerialException e) {
+			Assert.assertTrue(e.getCause() instanceof DeflateDictionary.TooLargeException);
+		}
+	}
+
+	@Test
+	public void negotiate() {
+		class Invoker extends SingleServiceInvoker {
+			Invoker() {
+				super("http://127.0.0.1/", "test", null);
+			}
+
+			boolean negotiate(String sent, String accepted, int code) {
+				Header reqHeader = Header.valueOf("test");
+				reqHeader.setContentEncoding(sent);
+				Request request = new SimpleRequest();
+				request.setHeader(reqHeader);
+				Header respHeader = Header.valueOf("test");
+				respHeader.setContentEncoding(accepted);
+				SimpleResponse response = new SimpleResponse(respHeader);
+				response.setResponseCode(code);
+				boolean retry = negotiateEncoding(request, response);
+				Assert.assertEquals(retry, null == reqHeader.getContentEncoding() && null != sent);
+				return retry;
+			}
+
+			String encoding() {
+				return m_ContentEncoding;
+			}
+		}
+		Invoker invoker = new Invoker();
+		Assert.assertFalse(invoker.negotiate(null, Header.CONTENT_ENCODING_DICT, 0));
+		Assert.assertEquals(Header.CONTENT_ENCODING_DICT, invoker.encoding());
+		// 对方不再确认支持，之后不压缩
+		Assert.assertFalse(invoker.negotiate(Header.CONTENT_ENCODING_DICT, null, 0));
+		Assert.assertNull(invoker.encoding());
+		// 对方无法解析压缩的内容，不压缩重试
+		invoker.negotiate(null, Header.CONTENT_ENCODING_DICT, 0);
+		Assert.assertTrue(invoker.negotiate(Header.CONTENT_ENCODING_DICT, null, WeforwardException.CODE_SERIAL_ERROR));
+		Assert.assertNull(invoker.encoding());
+	}
+
+	static byte[] make(Response response, String encoding, boolean stream) throws Exception {
+		Header header = Header.valueOf("test");
+		header.setContentEncoding(encoding);
+		response.setHeader(header);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (!stream) {
+			ENVELOPE.make(response, out);
+			return out.toByteArray();
+		}
+		ENVELOPE.make(response, new Producer.Output() {
+
+			@Override
+			public void writeHeader(Header header) throws IOException {
+			}
+
+			@Override
+			public OutputStream getOutputStream() throws IOException {
+				return out;
+			}
+		});
+		return out.toByteArray();
+	}
+
+	static final EnvelopeProducer ENVELOPE = new EnvelopeProducer();
+
+	static class EnvelopeProducer extends SimpleProducer {
+		EnvelopeProducer() {
+			super(null);
+		}
+
+		@Override
+		protected DtObject toDtObject(Response response) {
+			return super.toDtObject(response);
+		}
+	}
+
+	static String serial(JsonSerialEngine engine, DtObject obj) throws IOException, SerialException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		engine.serial(obj, "utf-8", out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
 }
@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import cn.weforward.common.io.BytesOutputStream;
+import cn.weforward.protocol.aio.netty.ByteBufInput;
+import cn.weforward.protocol.aio.netty.ReceivingDigest;
+import cn.weforward.protocol.datatype.DataType;
+import cn.weforward.protocol.datatype.DtList;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.exception.AuthException;
+import cn.weforward.protocol.ext.Producer;
+import cn.weforward.protocol.support.SimpleProducer;
+import cn.weforward.protocol.support.SimpleRequest;
+import cn.weforward.protocol.support.SimpleResponse;
+import cn.weforward.protocol.support.datatype.SimpleDtList;
+import cn.weforward.protocol.support.datatype.SimpleDtObject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+public class ProducerTest {
+
+	static final AccessLoader LOADER = new AccessLoader.Single("H-0947f4f50120-0947f4f50120",
+			"30313233343536373839616263646566");
+
+	static Response newResponse(String authType) {
+		return newResponse(authType, Header.CONTENT_TYPE_JSON);
+	}
+
+	static Response newResponse(String authType, String contentType) {
+		Header header = new Header("test");
+		header.setAuthType(authType);
+		header.setAccessId("H-0947f4f50120-0947f4f50120");
+		header.setContentType(contentType);
+		header.setCharset(Header.CHARSET_UTF8);
+		Response response = new SimpleResponse(header);
+		SimpleDtObject content = new SimpleDtObject();
+		SimpleDtList list = new SimpleDtList();
+		for (int i = 0; i < 1000; i++) {
+			SimpleDtObject item = new SimpleDtObject();
+			item.put("id", i);
+			item.put("name", "名称" + i);
+			list.addItem(item);
+		}
+		content.put("items", list);
+		SimpleDtObject result = new SimpleDtObject();
+		result.put("code", 0);
+		result.put("content", content);
+		response.setServiceResult(result);
+		return response;
+	}
+
+	static class Output implements Producer.Output {
+		BytesOutputStream body = new BytesOutputStream();
+		Header header;
+		boolean writtenBeforeHeader;
+
+		@Override
+		public void writeHeader(Header header) throws IOException {
+			this.header = header;
+			writtenBeforeHeader = body.getBytes().getSize() > 0;
+		}
+
+		@Override
+		public OutputStream getOutputStream() throws IOException {
+			return body;
+		}
+	}
+
+	@Test
+	public void makeStreaming() throws Exception {
+		SimpleProducer producer = new SimpleProducer(LOADER);
+		for (String authType : new String[] { Header.AUTH_TYPE_SHA2, Header.AUTH_TYPE_NONE }) {
+			Response response = newResponse(authType);
+			Output out = new Output();
+			producer.make(response, out);
+			assertNotNull(out.header);
+			assertTrue(!out.writtenBeforeHeader);
+			byte[] data = out.body.toByteArray();
+			InputStream in = new ByteArrayInputStream(data);
+			Response response2 = producer.fetchResponse(Header.copy(out.header), in);
+			DtList items = response2.getServiceResult().getObject("content").getList("items");
+			assertEquals(1000, items.size());
+			DtObject item = items.getItem(999, DataType.OBJECT);
+			assertEquals("名称999", item.getString("name").value());
+		}
+	}
+
+	@Test
+	public void makeBatch() throws Exception {
+		SimpleProducer producer = new SimpleProducer(LOADER);
+		SimpleProducer.Batch batch = producer.openBatch();
+		String[] authTypes = { Header.AUTH_TYPE_SHA2, Header.AUTH_TYPE_SHA2, Header.AUTH_TYPE_AES,
+				Header.AUTH_TYPE_SHA2, Header.AUTH_TYPE_NONE, Header.AUTH_TYPE_SHA2 };
+		SimpleProducer.Prepared[] prepared = new SimpleProducer.Prepared[authTypes.length];
+		for (int i = 0; i < authTypes.length; i++) {
+			Header header = new Header("test");
+			header.setAuthType(authTypes[i]);
+			header.setAccessId("H-0947f4f50120-0947f4f50120");
+			header.setContentType(Header.CONTENT_TYPE_JSON);
+			header.setCharset(Header.CHARSET_UTF8);
+			Request request = new SimpleRequest(header);
+			SimpleDtObject invoke = new SimpleDtObject();
+			invoke.put("method", "notify" + i);
+			request.setServiceInvoke(invoke);
+			prepared[i] = batch.prepare(request);
+		}
+		// 全部生成后再逐个输出及校验
+		for (int i = 0; i < prepared.length; i++) {
+			Output out = new Output();
+			prepared[i].writeTo(out);
+			InputStream in = new ByteArrayInputStream(out.body.toByteArray());
+			Request request = producer.fetchRequest(Header.copy(out.header), in);
+			assertEquals("notify" + i, request.getServiceInvoke().getString("method").value());
+		}
+	}
+
+	@Test
+	public void makeBinary() throws Exception {
+		SimpleProducer producer = new SimpleProducer(LOADER);
+		Output json = new Output();
+		producer.make(newResponse(Header.AUTH_TYPE_SHA2), json);
+		Output out = new Output();
+		producer.make(newResponse(Header.AUTH_TYPE_SHA2, Header.CONTENT_TYPE_BINARY), out);
+		assertEquals(Header.CONTENT_TYPE_BINARY, out.header.getContentType());
+		assertTrue(out.body.getBytes().getSize() < json.body.getBytes().getSize());
+		InputStream in = new ByteArrayInputStream(out.body.toByteArray());
+		Response response = producer.fetchResponse(Header.copy(out.header), in);
+		DtList items = response.getServiceResult().getObject("content").getList("items");
+		assertEquals(1000, items.size());
+		DtObject item = items.getItem(999, DataType.OBJECT);
+		assertEquals("名称999", item.getString("name").value());
+		assertEquals(999, item.getNumber("id").valueInt());
+	}
+
+	@Test
+	public void fetchFromByteBuf() throws Exception {
+		SimpleProducer producer = new SimpleProducer(LOADER);
+		Output out = new Output();
+		producer.make(newResponse(Header.AUTH_TYPE_SHA2), out);
+		byte[] data = out.body.toByteArray();
+		// 模拟分多次收到的请求内容
+		CompositeByteBuf body = Unpooled.compositeBuffer();
+		int part = data.length / 3;
+		body.addComponent(true, Unpooled.directBuffer().writeBytes(data, 0, part));
+		body.addComponent(true, Unpooled.directBuffer().writeBytes(data, part, part));
+		body.addComponent(true, Unpooled.directBuffer().writeBytes(data, 2 * part, data.length - 2 * part));
+		ByteBufInput in = new ByteBufInput(body, true);
+		ByteBuffer[] view = in.nioBuffers();
+		assertEquals(3, view.length);
+		assertTrue(view[0].isReadOnly());
+		Response response = producer.fetchResponse(Header.copy(out.header), in);
+		DtList items = response.getServiceResult().getObject("content").getList("items");
+		assertEquals(1000, items.size());
+		DtObject item = items.getItem(999, DataType.OBJECT);
+		assertEquals("名称999", item.getString("name").value());
+		// 读取完即释放Netty的缓冲区
+		assertEquals(0, body.refCnt());
+	}
+
+	@Test
+	public void receivingDigest() throws Exception {
+		SimpleProducer producer = new SimpleProducer(LOADER);
+		Output out = new Output();
+		producer.make(newResponse(Header.AUTH_TYPE_SHA2), out);
+		byte[] data = out.body.toByteArray();
+		assertNotNull(out.header.getContentSign());
+		// 边接收边计算摘要
+		ReceivingDigest digest = new ReceivingDigest("SHA-256");
+		ByteBufInput in = new ByteBufInput(Unpooled.compositeBuffer(), false);
+		in.setDigest(digest);
+		int part = data.length / 2;
+		ByteBuf chunk = Unpooled.wrappedBuffer(data, 0, part);
+		digest.update(chunk);
+		in.readable(chunk);
+		chunk = Unpooled.wrappedBuffer(data, part, data.length - part);
+		digest.update(chunk);
+		in.readable(chunk);
+		digest.finish();
+		in.completed();
+		assertNotNull(in.getDigest("SHA-256", data.length));
+		assertEquals(null, in.getDigest("SHA-256", data.length - 1));
+		Response response = producer.fetchResponse(Header.copy(out.header), in);
+		assertEquals(1000, response.getServiceResult().getObject("content").getList("items").size());
+
+		// 使用的是接收时计算的摘要（与内容不符时校验失败）
+		digest = new ReceivingDigest("SHA-256");
+		digest.update(Unpooled.wrappedBuffer(new byte[data.length]));
+		digest.finish();
+		in = new ByteBufInput(Unpooled.wrappedBuffer(data), true);
+		in.setDigest(digest);
+		try {
+			producer.fetchResponse(Header.copy(out.header), in);
+			fail();
+		} catch (AuthException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("内容签名不一致"));
+		}
+	}
+
+	@Test
+	public void negotiateContentType() throws Exception {
+		SimpleProducer producer = new SimpleProducer(LOADER);
+		Output out = new Output();
+		producer.make(newResponse(Header.AUTH_TYPE_SHA2, "xml"), out);
+		// 不支持的格式回退为json
+		assertEquals(Header.CONTENT_TYPE_JSON, out.header.getContentType());
+		assertTrue(producer.isSupportContentType(Header.CONTENT_TYPE_BINARY));
+	}
+}
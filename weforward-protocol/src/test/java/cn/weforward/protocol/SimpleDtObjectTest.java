@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2019,2020 honintech
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the “Software”), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package cn.weforward.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cn.weforward.common.KvPair;
+import cn.weforward.protocol.datatype.DtBase;
+import cn.weforward.protocol.datatype.DtObject;
+import cn.weforward.protocol.datatype.VisitableDtObject;
+import cn.weforward.protocol.serial.JsonDtObject;
+import cn.weforward.protocol.serial.JsonIndexedDtObject;
+import cn.weforward.protocol.support.datatype.AbstractDtObject;
+import cn.weforward.protocol.support.datatype.AppendableDtObject;
+import cn.weforward.protocol.support.datatype.SimpleDtObject;
+
+public class SimpleDtObjectTest {
+
+	@Test
+	public void compact() {
+		SimpleDtObject obj = new SimpleDtObject();
+		obj.put("userName", "a");
+		obj.put("user_name", "b");
+		Assert.assertEquals(1, obj.getAttributeSize());
+		Assert.assertEquals("b", obj.getString("userName").value());
+		for (int i = 0; i < 30; i++) {
+			obj.put("att" + i, i);
+		}
+		Assert.assertEquals(31, obj.getAttributeSize());
+		Assert.assertEquals(29, obj.getNumber("att29").valueInt());
+		Assert.assertEquals("b", obj.getString("userName").value());
+		Assert.assertNotNull(obj.remove("userName"));
+		Assert.assertNull(obj.getAttribute("user_name"));
+	}
+
+	@Test
+	public void nullName() {
+		SimpleDtObject obj = new SimpleDtObject();
+		obj.put("b", 1);
+		obj.put(null, 2);
+		obj.put("a", 3);
+		Assert.assertEquals(3, obj.getAttributeSize());
+		Assert.assertEquals(2, obj.getNumber(null).valueInt());
+		Assert.assertEquals(3, obj.getNumber("a").valueInt());
+		obj.put(null, 4);
+		Assert.assertEquals(3, obj.getAttributeSize());
+		Assert.assertEquals(4, obj.getNumber(null).valueInt());
+
+		obj.setSortAttribute(true);
+		Assert.assertEquals("[null, a, b]", names(obj).toString());
+		Assert.assertNotNull(obj.remove(null));
+		Assert.assertNull(obj.getAttribute(null));
+		Assert.assertEquals(1, obj.getNumber("b").valueInt());
+	}
+
+	@Test
+	public void order() {
+		Comparator<String> comp = new Comparator<String>() {
+
+			@Override
+			public int compare(String o1, String o2) {
+				if ("head".equals(o1)) {
+					return -1;
+				}
+				if ("head".equals(o2)) {
+					return 1;
+				}
+				return 0;
+			}
+		};
+		SimpleDtObject obj = new SimpleDtObject(false);
+		obj.put("b", 1);
+		obj.setAttributeComparator(comp);
+		obj.put("a", 2);
+		obj.put("head", 3);
+		obj.put("c", 4);
+		Assert.assertEquals("[head, b, a, c]", names(obj).toString());
+
+		obj = new SimpleDtObject(false);
+		obj.setSortAttribute(true);
+		List<String> expect = new ArrayList<>();
+		for (int i = 20; i > 0; i--) {
+			obj.put("n" + i, i);
+			expect.add("n" + i);
+		}
+		Collections.sort(expect);
+		Assert.assertEquals(expect, names(obj));
+	}
+
+	@Test
+	public void forEach() {
+		SimpleDtObject small = new SimpleDtObject(false);
+		small.put("b", 1);
+		small.put("a", "x");
+		SimpleDtObject big = new SimpleDtObject(false);
+		big.setSortAttribute(true);
+		for (int i = 30; i > 0; i--) {
+			big.put("n" + i, i);
+		}
+		AppendableDtObject appendable = new AppendableDtObject(small, false);
+		appendable.put("a", "y");
+		appendable.put("c", 3);
+		// 追加的属性较多（已转为HashMap）且有序
+		AppendableDtObject sorted = new AppendableDtObject(small, false);
+		sorted.setSortAttribute(true);
+		for (int i = 20; i > 0; i--) {
+			sorted.put("m" + i, i);
+		}
+		DtObject[] objects = { small, big, appendable, sorted, new JsonIndexedDtObject("{\"k\":1,\"j\":[2]}"),
+				new JsonDtObject("{\"k\":1}") };
+		for (DtObject obj : objects) {
+			final List<String> visited = new ArrayList<>();
+			final List<DtBase> values = new ArrayList<>();
+			AbstractDtObject.forEach(obj, new VisitableDtObject.AttributeVisitor<RuntimeException>() {
+
+				@Override
+				public void visit(String name, DtBase value) {
+					visited.add(name);
+					values.add(value);
+				}
+			});
+			List<String> expect = new ArrayList<>();
+			Enumeration<KvPair<String, DtBase>> atts = obj.getAttributes();
+			for (int i = 0; atts.hasMoreElements(); i++) {
+				KvPair<String, DtBase> att = atts.nextElement();
+				expect.add(att.getKey());
+				Assert.assertEquals(att.getValue(), values.get(i));
+			}
+			Assert.assertEquals(expect, visited);
+			Assert.assertEquals(obj.getAttributeSize(), visited.size());
+		}
+		Assert.assertEquals("x", appendable.getString("a").value());
+	}
+
+	static List<String> names(SimpleDtObject obj) {
+		List<String> names = new ArrayList<>();
+		Enumeration<String> e = obj.getAttributeNames();
+		while (e.hasMoreElements()) {
+			names.add(e.nextElement());
+		}
+		return names;
+	}
+}